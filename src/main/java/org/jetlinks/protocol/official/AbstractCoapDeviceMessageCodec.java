@@ -27,10 +27,13 @@ public abstract class AbstractCoapDeviceMessageCodec implements DeviceMessageCod
     }
 
     protected String getDeviceId(CoapMessage message){
+        return getDeviceId(message, ParsedTopic.of(getPath(message)));
+    }
+
+    protected String getDeviceId(CoapMessage message, ParsedTopic path) {
         String deviceId = message.getStringOption(2100).orElse(null);
-        String[] paths = TopicMessageCodec.removeProductPath(getPath(message));
-        if (StringUtils.isEmpty(deviceId) && paths.length > 1) {
-            deviceId = paths[1];
+        if (StringUtils.isEmpty(deviceId) && path.size() > 2) {
+            deviceId = path.get(2);
         }
         return deviceId;
     }
@@ -1,13 +1,15 @@
 package org.jetlinks.protocol.official;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import lombok.SneakyThrows;
 import org.jetlinks.core.device.DeviceOperator;
 import org.jetlinks.core.message.DeviceMessage;
-import org.jetlinks.core.utils.TopicUtils;
 import org.jetlinks.protocol.official.functional.TimeSyncRequest;
 import org.jetlinks.protocol.official.functional.TimeSyncResponse;
 import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Optional;
@@ -23,13 +25,13 @@ public enum FunctionalTopicHandlers {
         @SneakyThrows
         @SuppressWarnings("all")
         Mono<DeviceMessage> doHandle(DeviceOperator device,
-                                          String[] topic,
-                                          byte[] payload,
+                                          ParsedTopic topic,
+                                          ByteBuf payload,
                                           ObjectMapper mapper,
                                           Function<TopicPayload, Mono<Void>> sender) {
             TopicPayload topicPayload = new TopicPayload();
-            topicPayload.setTopic(String.join("/", topic) + "/reply");
-            TimeSyncRequest msg = mapper.readValue(payload, TimeSyncRequest.class);
+            topicPayload.setTopic(topic + "/reply");
+            TimeSyncRequest msg = ObjectMappers.readValue(mapper, payload, TimeSyncRequest.class);
             TimeSyncResponse response = TimeSyncResponse.of(msg.getMessageId(), System.currentTimeMillis());
             topicPayload.setPayload(mapper.writeValueAsBytes(response));
             //直接回复给设备
@@ -45,9 +47,17 @@ public enum FunctionalTopicHandlers {
 
     private final String[] pattern;
 
+    private static final TopicRouter<FunctionalTopicHandlers> ROUTER = new TopicRouter<>();
+
+    static {
+        for (FunctionalTopicHandlers value : values()) {
+            ROUTER.register(value.pattern, value);
+        }
+    }
+
     abstract Publisher<DeviceMessage> doHandle(DeviceOperator device,
-                                               String[] topic,
-                                               byte[] payload,
+                                               ParsedTopic topic,
+                                               ByteBuf payload,
                                                ObjectMapper mapper,
                                                Function<TopicPayload, Mono<Void>> sender);
 
@@ -57,17 +67,30 @@ public enum FunctionalTopicHandlers {
                                                   byte[] payload,
                                                   ObjectMapper mapper,
                                                   Function<TopicPayload, Mono<Void>> sender) {
-        return Mono
-                .justOrEmpty(fromTopic(topic))
-                .flatMapMany(handler -> handler.doHandle(device, topic, payload, mapper, sender));
+        return handle(device, ParsedTopic.of(topic), payload, mapper, sender);
     }
 
-    static Optional<FunctionalTopicHandlers> fromTopic(String[] topic) {
-        for (FunctionalTopicHandlers value : values()) {
-            if (TopicUtils.match(value.pattern, topic)) {
-                return Optional.of(value);
-            }
+    public static Publisher<DeviceMessage> handle(DeviceOperator device,
+                                                  ParsedTopic topic,
+                                                  byte[] payload,
+                                                  ObjectMapper mapper,
+                                                  Function<TopicPayload, Mono<Void>> sender) {
+        return handle(device, topic, Unpooled.wrappedBuffer(payload), mapper, sender);
+    }
+
+    public static Publisher<DeviceMessage> handle(DeviceOperator device,
+                                                  ParsedTopic topic,
+                                                  ByteBuf payload,
+                                                  ObjectMapper mapper,
+                                                  Function<TopicPayload, Mono<Void>> sender) {
+        FunctionalTopicHandlers handler = ROUTER.match(topic);
+        if (handler == null) {
+            return Mono.empty();
         }
-        return Optional.empty();
+        return Flux.defer(() -> handler.doHandle(device, topic, payload, mapper, sender));
+    }
+
+    static Optional<FunctionalTopicHandlers> fromTopic(ParsedTopic topic) {
+        return Optional.ofNullable(ROUTER.match(topic));
     }
 }
@@ -1,16 +1,69 @@
 package org.jetlinks.protocol.official;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.SneakyThrows;
 import org.jetlinks.core.Value;
 import org.jetlinks.core.defaults.Authenticator;
 import org.jetlinks.core.device.*;
 import reactor.core.publisher.Mono;
 
 import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 public class JetLinksAuthenticator implements Authenticator {
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(JetLinksAuthenticator::createMd5);
+
+    //和设备时间差大于5分钟则认为无效
+    private static final long MAX_TIME_DIFF = TimeUnit.MINUTES.toMillis(5);
+
+    //设备ID -> 最近一次认证通过的用户名和密码,设备断线重连时使用相同的用户名密码可以直接认证通过
+    private final Cache<String, Credential> accepted;
+
+    private final Ticker ticker;
+
+    private final long revalidateNanos;
+
+    /**
+     * @param cacheSize  最多缓存的设备数量,小于等于0时不缓存
+     * @param ttl        缓存有效期
+     * @param revalidate 重新校验时间,修改密钥后未重新激活时,最多在此时间内仍可以使用旧密钥生成的密码认证
+     */
+    public JetLinksAuthenticator(long cacheSize, Duration ttl, Duration revalidate) {
+        this(cacheSize, ttl, revalidate, Ticker.systemTicker());
+    }
+
+    public JetLinksAuthenticator(long cacheSize, Duration ttl) {
+        this(cacheSize, ttl, ttl);
+    }
+
+    JetLinksAuthenticator(long cacheSize, Duration ttl, Duration revalidate, Ticker ticker) {
+        this.accepted = CacheBuilder
+                .newBuilder()
+                .maximumSize(Math.max(0, cacheSize))
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+        this.ticker = ticker;
+        this.revalidateNanos = revalidate.toNanos();
+    }
+
+    public JetLinksAuthenticator() {
+        this(100_000, Duration.ofMinutes(1));
+    }
+
+    @SneakyThrows
+    private static MessageDigest createMd5() {
+        return MessageDigest.getInstance("MD5");
+    }
+
     @Override
     public Mono<AuthenticationResponse> authenticate(@Nonnull AuthenticationRequest request, @Nonnull DeviceRegistry registry) {
         MqttAuthenticationRequest mqtt = ((MqttAuthenticationRequest) request);
@@ -28,35 +81,102 @@ public class JetLinksAuthenticator implements Authenticator {
             String username = mqtt.getUsername();
             // md5(secureId|timestamp|secureKey)
             String password = mqtt.getPassword();
-            String requestSecureId;
+
+            int index = username == null ? -1 : username.indexOf('|');
+            if (index < 0) {
+                return Mono.just(AuthenticationResponse.error(401, "用户名格式错误"));
+            }
+            String requestSecureId = username.substring(0, index);
+            int end = username.indexOf('|', index + 1);
+            long time;
             try {
-                String[] arr = username.split("[|]");
-                if (arr.length <= 1) {
-                    return Mono.just(AuthenticationResponse.error(401, "用户名格式错误"));
-                }
-                requestSecureId = arr[0];
-                long time = Long.parseLong(arr[1]);
-                //和设备时间差大于5分钟则认为无效
-                if (Math.abs(System.currentTimeMillis() - time) > TimeUnit.MINUTES.toMillis(5)) {
-                    return Mono.just(AuthenticationResponse.error(401, "设备时间不同步"));
-                }
-                return deviceOperation.getConfigs("secureId", "secureKey")
-                        .map(conf -> {
-                            String secureId =  conf.getValue("secureId").map(Value::asString).orElse(null);
-
-                            String secureKey = conf.getValue("secureKey").map(Value::asString).orElse(null);
-                            //签名
-                            String digest = DigestUtils.md5Hex(username + "|" + secureKey);
-                            if (requestSecureId.equals(secureId) && digest.equals(password)) {
-                                return AuthenticationResponse.success(deviceOperation.getDeviceId());
-                            } else {
-                                return AuthenticationResponse.error(401, "密钥错误");
-                            }
-                        });
+                time = Long.parseLong(username.substring(index + 1, end < 0 ? username.length() : end));
             } catch (NumberFormatException e) {
                 return Mono.just(AuthenticationResponse.error(401, "用户名格式错误"));
             }
+            if (Math.abs(System.currentTimeMillis() - time) > MAX_TIME_DIFF) {
+                return Mono.just(AuthenticationResponse.error(401, "设备时间不同步"));
+            }
+            String deviceId = deviceOperation.getDeviceId();
+            //重连时使用相同的用户名密码,不再获取配置和计算签名,超过重新校验时间后重新获取配置
+            Credential credential = accepted.getIfPresent(deviceId);
+            if (credential != null
+                    && ticker.read() - credential.acceptTime < revalidateNanos
+                    && credential.matches(username, password)) {
+                return Mono.just(AuthenticationResponse.success(deviceId));
+            }
+            return deviceOperation
+                    .getConfigs("secureId", "secureKey")
+                    .map(conf -> {
+                        String secureId = conf.getValue("secureId").map(Value::asString).orElse(null);
+
+                        String secureKey = conf.getValue("secureKey").map(Value::asString).orElse(null);
+                        //签名
+                        if (requestSecureId.equals(secureId) && verify(username, secureKey, password)) {
+                            accepted.put(deviceId, new Credential(username, password, ticker.read()));
+                            return AuthenticationResponse.success(deviceId);
+                        } else {
+                            return AuthenticationResponse.error(401, "密钥错误");
+                        }
+                    });
         }
         return Mono.just(AuthenticationResponse.error(400, "不支持的授权类型:" + request));
     }
+
+    /**
+     * 使设备的认证缓存失效,设备修改配置或者注销时调用
+     *
+     * @param deviceId 设备ID
+     */
+    public void invalidate(String deviceId) {
+        accepted.invalidate(deviceId);
+    }
+
+    /**
+     * 校验密码是否为md5(username|secureKey)的小写十六进制,比较时间与内容无关.
+     */
+    static boolean verify(String username, String secureKey, String password) {
+        if (password == null || password.length() != 32) {
+            return false;
+        }
+        MessageDigest md5 = MD5.get();
+        md5.update(username.getBytes(StandardCharsets.UTF_8));
+        md5.update((byte) '|');
+        md5.update(String.valueOf(secureKey).getBytes(StandardCharsets.UTF_8));
+        byte[] digest = md5.digest();
+
+        int diff = 0;
+        for (int i = 0; i < digest.length; i++) {
+            diff |= password.charAt(i * 2) ^ HEX[(digest[i] >> 4) & 0x0F];
+            diff |= password.charAt(i * 2 + 1) ^ HEX[digest[i] & 0x0F];
+        }
+        return diff == 0;
+    }
+
+    static boolean constantTimeEquals(String a, String b) {
+        if (a == null || b == null || a.length() != b.length()) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < a.length(); i++) {
+            diff |= a.charAt(i) ^ b.charAt(i);
+        }
+        return diff == 0;
+    }
+
+    private static class Credential {
+        private final String username;
+        private final String password;
+        private final long acceptTime;
+
+        private Credential(String username, String password, long acceptTime) {
+            this.username = username;
+            this.password = password;
+            this.acceptTime = acceptTime;
+        }
+
+        private boolean matches(String username, String password) {
+            return this.username.equals(username) && constantTimeEquals(this.password, password);
+        }
+    }
 }
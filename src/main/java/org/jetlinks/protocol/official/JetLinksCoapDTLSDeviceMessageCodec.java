@@ -46,7 +46,8 @@ public class JetLinksCoapDTLSDeviceMessageCodec extends AbstractCoapDeviceMessag
         }
         return Flux.defer(() -> {
             String path = getPath(message);
-            String deviceId = getDeviceId(message);
+            ParsedTopic topic = ParsedTopic.of(path);
+            String deviceId = getDeviceId(message, topic);
             String sign = message.getStringOption(2110).orElse(null);
             String token = message.getStringOption(2111).orElse(null);
             byte[] payload = message.payloadAsBytes();
@@ -102,11 +103,11 @@ public class JetLinksCoapDTLSDeviceMessageCodec extends AbstractCoapDeviceMessag
                                     return Mono.empty();
                                 }
                                 return TopicMessageCodec
-                                        .decode(objectMapper, TopicMessageCodec.removeProductPath(path), payload)
+                                        .decode(objectMapper, topic.removeProductPath(), payload)
                                         //如果不能直接解码，可能是其他设备功能
                                         .switchIfEmpty(FunctionalTopicHandlers
                                                                .handle(device,
-                                                                       path.split("/"),
+                                                                       topic,
                                                                        payload,
                                                                        objectMapper,
                                                                        reply -> Mono.fromRunnable(() -> response.accept(reply.getPayload()))));
@@ -1,6 +1,8 @@
 package org.jetlinks.protocol.official;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.OptionNumberRegistry;
@@ -32,14 +34,24 @@ public class JetLinksCoapDeviceMessageCodec extends AbstractCoapDeviceMessageCod
                     .addElement(EnumType.Element.of("AES", "AES加密(ECB,PKCS#5)", "加密模式:ECB,填充方式:PKCS#5")), DeviceConfigScope.product)
             .add("secureKey", "密钥", "16位密钥KEY", new PasswordType());
 
+    private final ByteBufAllocator allocator;
+
+    public JetLinksCoapDeviceMessageCodec(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public JetLinksCoapDeviceMessageCodec() {
+        this(ByteBufAllocator.DEFAULT);
+    }
+
     @Override
     public Transport getSupportTransport() {
         return DefaultTransport.CoAP;
     }
 
     protected Flux<DeviceMessage> decode(CoapMessage message, MessageDecodeContext context, Consumer<Object> response) {
-        String path = getPath(message);
-        String deviceId = getDeviceId(message);
+        ParsedTopic path = ParsedTopic.of(getPath(message));
+        String deviceId = getDeviceId(message, path);
         boolean cbor = message
                 .getStringOption(OptionNumberRegistry.CONTENT_FORMAT)
                 .map(MediaType::valueOf)
@@ -57,17 +69,19 @@ public class JetLinksCoapDeviceMessageCodec extends AbstractCoapDeviceMessageCod
                                     .flatMap(Ciphers::of)
                                     .orElse(Ciphers.AES);
                             String secureKey = configs.getValue("secureKey").map(Value::asString).orElse(null);
-                            byte[] payload = ciphers.decrypt(message.payloadAsBytes(), secureKey);
-                            //解码
-                            return TopicMessageCodec
-                                    .decode(objectMapper, TopicMessageCodec.removeProductPath(path), payload)
-                                    //如果不能直接解码，可能是其他设备功能
-                                    .switchIfEmpty(FunctionalTopicHandlers
-                                                           .handle(device,
-                                                                   path.split("/"),
-                                                                   payload,
-                                                                   objectMapper,
-                                                                   reply -> Mono.fromRunnable(() -> response.accept(reply.getPayload()))));
+                            //原始报文不属于编解码器,解密到新分配的ByteBuf中,解码完成后释放
+                            return Flux.using(
+                                    () -> ciphers.decrypt(message.getPayload(), secureKey, allocator),
+                                    payload -> TopicMessageCodec
+                                            .decode(objectMapper, path.removeProductPath(), payload)
+                                            //如果不能直接解码，可能是其他设备功能
+                                            .switchIfEmpty(FunctionalTopicHandlers
+                                                                   .handle(device,
+                                                                           path,
+                                                                           payload,
+                                                                           objectMapper,
+                                                                           reply -> Mono.fromRunnable(() -> response.accept(reply.getPayload())))),
+                                    ReferenceCountUtil::safeRelease);
                         }));
     }
 
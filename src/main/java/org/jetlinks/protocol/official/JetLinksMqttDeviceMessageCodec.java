@@ -3,9 +3,11 @@ package org.jetlinks.protocol.official;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.jetlinks.core.device.DeviceConfigKey;
 import org.jetlinks.core.message.DeviceMessage;
 import org.jetlinks.core.message.DisconnectDeviceMessage;
 import org.jetlinks.core.message.Message;
@@ -59,9 +61,30 @@ public class JetLinksMqttDeviceMessageCodec implements DeviceMessageCodec {
 
     private final ObjectMapper mapper;
 
-    public JetLinksMqttDeviceMessageCodec(Transport transport) {
+    private final ByteBufAllocator allocator;
+
+    private final TopicPrefixCache topicPrefixCache;
+
+    /**
+     * @param transport        传输协议
+     * @param allocator        编码时使用的ByteBufAllocator,编码后的ByteBuf在发送给设备后由网络层释放
+     * @param topicPrefixCache 下行topic前缀缓存
+     */
+    public JetLinksMqttDeviceMessageCodec(Transport transport,
+                                          ByteBufAllocator allocator,
+                                          TopicPrefixCache topicPrefixCache) {
         this.transport = transport;
         this.mapper = ObjectMappers.JSON_MAPPER;
+        this.allocator = allocator;
+        this.topicPrefixCache = topicPrefixCache;
+    }
+
+    public JetLinksMqttDeviceMessageCodec(Transport transport, ByteBufAllocator allocator) {
+        this(transport, allocator, new TopicPrefixCache());
+    }
+
+    public JetLinksMqttDeviceMessageCodec(Transport transport) {
+        this(transport, PooledByteBufAllocator.DEFAULT);
     }
 
     public JetLinksMqttDeviceMessageCodec() {
@@ -91,18 +114,18 @@ public class JetLinksMqttDeviceMessageCodec implements DeviceMessageCodec {
                 if (convertResult == null) {
                     return Mono.empty();
                 }
-                return Mono
-                        .justOrEmpty(deviceMessage.getHeader("productId").map(String::valueOf))
-                        .switchIfEmpty(context.getDevice(deviceMessage.getDeviceId())
-                                              .flatMap(device -> device.getSelfConfig(DeviceConfigKey.productId))
-                        )
-                        .defaultIfEmpty("null")
-                        .map(productId -> SimpleMqttMessage
+                Object productId = deviceMessage.getHeader("productId").orElse(null);
+                //优先使用消息头中的产品ID,否则使用缓存的topic前缀
+                Mono<String> topicPrefix = productId != null
+                        ? Mono.just("/".concat(String.valueOf(productId)))
+                        : topicPrefixCache.getPrefix(deviceMessage.getDeviceId(), context::getDevice);
+                return topicPrefix
+                        .map(prefix -> SimpleMqttMessage
                                 .builder()
                                 .clientId(deviceMessage.getDeviceId())
-                                .topic("/".concat(productId).concat(convertResult.getTopic()))
+                                .topic(prefix.concat(convertResult.getTopic()))
                                 .payloadType(MessagePayloadType.JSON)
-                                .payload(Unpooled.wrappedBuffer(convertResult.getPayload()))
+                                .payload(convertResult.getPayload(allocator))
                                 .build());
             } else {
                 return Mono.empty();
@@ -114,18 +137,23 @@ public class JetLinksMqttDeviceMessageCodec implements DeviceMessageCodec {
     @Override
     public Flux<DeviceMessage> decode(@Nonnull MessageDecodeContext context) {
         MqttMessage message = (MqttMessage) context.getMessage();
-        byte[] payload = message.payloadAsBytes();
-
-        return TopicMessageCodec
-                .decode(mapper, TopicMessageCodec.removeProductPath(message.getTopic()), payload)
-                //如果不能直接解码，可能是其他设备功能
-                .switchIfEmpty(FunctionalTopicHandlers
-                                       .handle(context.getDevice(),
-                                               message.getTopic().split("/"),
-                                               payload,
-                                               mapper,
-                                               reply -> doReply(context, reply)))
-                ;
+        //直接使用ByteBuf进行解码,避免复制消息体
+        ByteBuf payload = message.getPayload();
+        ParsedTopic topic = ParsedTopic.of(message.getTopic());
+
+        //订阅时保留消息体直到解码完成,未订阅或者取消时不会泄漏
+        return Flux.using(
+                payload::retain,
+                buf -> TopicMessageCodec
+                        .decode(mapper, topic.removeProductPath(), buf)
+                        //如果不能直接解码，可能是其他设备功能
+                        .switchIfEmpty(FunctionalTopicHandlers
+                                               .handle(context.getDevice(),
+                                                       topic,
+                                                       buf,
+                                                       mapper,
+                                                       reply -> doReply(context, reply))),
+                ReferenceCountUtil::safeRelease);
 
     }
 
@@ -137,7 +165,7 @@ public class JetLinksMqttDeviceMessageCodec implements DeviceMessageCodec {
                     .send(SimpleMqttMessage
                                   .builder()
                                   .topic(reply.getTopic())
-                                  .payload(reply.getPayload())
+                                  .payload(reply.getPayload(allocator))
                                   .build())
                     .then();
         } else if (context instanceof ToDeviceMessageContext) {
@@ -145,7 +173,7 @@ public class JetLinksMqttDeviceMessageCodec implements DeviceMessageCodec {
                     .sendToDevice(SimpleMqttMessage
                                           .builder()
                                           .topic(reply.getTopic())
-                                          .payload(reply.getPayload())
+                                          .payload(reply.getPayload(allocator))
                                           .build())
                     .then();
         }
@@ -1,5 +1,9 @@
 package org.jetlinks.protocol.official;
 
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.jetlinks.core.Value;
 import org.jetlinks.core.defaults.CompositeProtocolSupport;
 import org.jetlinks.core.message.codec.DefaultTransport;
 import org.jetlinks.core.metadata.DefaultConfigMetadata;
@@ -9,6 +13,10 @@ import org.jetlinks.core.route.HttpRoute;
 import org.jetlinks.core.route.WebsocketRoute;
 import org.jetlinks.core.spi.ProtocolSupportProvider;
 import org.jetlinks.core.spi.ServiceContext;
+import org.jetlinks.protocol.official.binary.AuthenticationCache;
+import org.jetlinks.protocol.official.binary.BinaryMessageType;
+import org.jetlinks.protocol.official.http.BatchMessageDecoder;
+import org.jetlinks.protocol.official.http.BearerTokenCache;
 import org.jetlinks.protocol.official.http.JetLinksHttpDeviceMessageCodec;
 import org.jetlinks.protocol.official.tcp.TcpDeviceMessageCodec;
 import org.jetlinks.protocol.official.udp.UDPDeviceMessageCodec;
@@ -17,6 +25,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Objects;
@@ -35,10 +44,172 @@ public class JetLinksProtocolSupportProvider implements ProtocolSupportProvider
             .add("secureId", "secureId", "密钥ID", new StringType())
             .add("secureKey", "secureKey", "密钥KEY", new PasswordType());
 
+    /**
+     * 编码时使用的ByteBufAllocator配置,可选值: pooled(默认),unpooled
+     */
+    public static final String CONFIG_KEY_ALLOCATOR = "jetlinks.protocol.allocator";
+
+    /**
+     * 获取编解码器编码时使用的ByteBufAllocator.
+     * 优先使用上下文中提供的{@link ByteBufAllocator}服务,其次根据配置{@link #CONFIG_KEY_ALLOCATOR},
+     * 默认使用{@link PooledByteBufAllocator#DEFAULT}.
+     *
+     * @param context 服务上下文
+     * @return ByteBufAllocator
+     */
+    static ByteBufAllocator getAllocator(ServiceContext context) {
+        if (context == null) {
+            return PooledByteBufAllocator.DEFAULT;
+        }
+        return context
+                .getService(ByteBufAllocator.class)
+                .orElseGet(() -> context
+                        .getConfig(CONFIG_KEY_ALLOCATOR)
+                        .map(Value::asString)
+                        .filter("unpooled"::equalsIgnoreCase)
+                        .<ByteBufAllocator>map(ignore -> UnpooledByteBufAllocator.DEFAULT)
+                        .orElse(PooledByteBufAllocator.DEFAULT));
+    }
+
+    /**
+     * TCP每个设备最大未回复的指令数量,默认16,不能超过{@link BinaryMessageType#CONFIG_KEY_SEQUENCE_CAPACITY}
+     */
+    public static final String CONFIG_KEY_TCP_MAX_IN_FLIGHT = "jetlinks.protocol.tcp.max-in-flight";
+
+    static int getTcpMaxInFlight(ServiceContext context) {
+        if (context == null) {
+            return TcpDeviceMessageCodec.DEFAULT_MAX_IN_FLIGHT;
+        }
+
+    /**
+     * 每个设备最多记录的未回复指令数量,默认与TCP最大未回复的指令数量一致,最小{@link BinaryMessageType#DEFAULT_SEQUENCE_CAPACITY}
+     *
+     * @see BinaryMessageType#CONFIG_KEY_SEQUENCE_CAPACITY
+     */
+    static int getSequenceCapacity(ServiceContext context) {
+        int capacity = Math.max(BinaryMessageType.DEFAULT_SEQUENCE_CAPACITY, getTcpMaxInFlight(context));
+        if (context == null) {
+            return capacity;
+        }
+        return context
+                .getConfig(BinaryMessageType.CONFIG_KEY_SEQUENCE_CAPACITY)
+                .map(Value::asInt)
+                .orElse(capacity);
+    }
+        return context
+                .getConfig(CONFIG_KEY_TCP_MAX_IN_FLIGHT)
+                .map(Value::asInt)
+                .orElse(TcpDeviceMessageCodec.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * TCP,UDP,HTTP(WebSocket)认证缓存的最大设备数量,默认100000,为0时不缓存
+     */
+    public static final String CONFIG_KEY_AUTH_CACHE_SIZE = "jetlinks.protocol.auth-cache.size";
+
+    /**
+     * TCP,UDP,HTTP(WebSocket)认证缓存的有效期(秒),默认600
+     */
+    public static final String CONFIG_KEY_AUTH_CACHE_TTL = "jetlinks.protocol.auth-cache.ttl";
+
+    /**
+     * 认证缓存的重新校验时间(秒),默认与缓存有效期一致.
+     * 修改设备密钥后未重新激活时,旧密钥最多在此时间内仍可以认证通过,设置得越短,获取配置的次数越多
+     */
+    public static final String CONFIG_KEY_AUTH_CACHE_REVALIDATE = "jetlinks.protocol.auth-cache.revalidate";
+
+    static Duration getAuthCacheRevalidate(ServiceContext context, Duration ttl) {
+        if (context == null) {
+            return ttl;
+        }
+        return context
+                .getConfig(CONFIG_KEY_AUTH_CACHE_REVALIDATE)
+                .map(Value::asLong)
+                .map(Duration::ofSeconds)
+                .orElse(ttl);
+    }
+
+    static AuthenticationCache createAuthenticationCache(ServiceContext context) {
+        if (context == null) {
+            return new AuthenticationCache();
+        }
+        Duration ttl = Duration.ofSeconds(context.getConfig(CONFIG_KEY_AUTH_CACHE_TTL).map(Value::asLong).orElse(600L));
+        return new AuthenticationCache(
+                context.getConfig(CONFIG_KEY_AUTH_CACHE_SIZE).map(Value::asLong).orElse(100_000L),
+                ttl,
+                getAuthCacheRevalidate(context, ttl)
+        );
+    }
+
+    /**
+     * UDP会话模式下会话的超时时间(秒),默认1800
+     */
+    public static final String CONFIG_KEY_UDP_SESSION_TIMEOUT = "jetlinks.protocol.udp.session-timeout";
+
+    static Duration getUdpSessionTimeout(ServiceContext context) {
+        if (context == null) {
+            return Duration.ofMinutes(30);
+        }
+        return Duration.ofSeconds(context
+                                          .getConfig(CONFIG_KEY_UDP_SESSION_TIMEOUT)
+                                          .map(Value::asLong)
+                                          .orElse(1800L));
+    }
+
+    static BearerTokenCache createBearerTokenCache(ServiceContext context) {
+        if (context == null) {
+            return new BearerTokenCache();
+        }
+        Duration ttl = Duration.ofSeconds(context.getConfig(CONFIG_KEY_AUTH_CACHE_TTL).map(Value::asLong).orElse(600L));
+        return new BearerTokenCache(
+                context.getConfig(CONFIG_KEY_AUTH_CACHE_SIZE).map(Value::asLong).orElse(100_000L),
+                ttl,
+                getAuthCacheRevalidate(context, ttl)
+        );
+    }
+
+    /**
+     * HTTP批量上报单个请求最多包含的消息数量,默认1000
+     */
+    public static final String CONFIG_KEY_HTTP_BATCH_MAX_MESSAGES = "jetlinks.protocol.http.batch.max-messages";
+
+    /**
+     * HTTP批量上报请求体的最大字节数,默认1048576.在请求体聚合后校验,需要同时在HTTP服务中限制请求体大小
+     */
+    public static final String CONFIG_KEY_HTTP_BATCH_MAX_BODY_SIZE = "jetlinks.protocol.http.batch.max-body-size";
+
+    static BatchMessageDecoder createBatchMessageDecoder(ServiceContext context) {
+        if (context == null) {
+            return new BatchMessageDecoder();
+        }
+        return new BatchMessageDecoder(
+                context.getConfig(CONFIG_KEY_HTTP_BATCH_MAX_MESSAGES).map(Value::asInt).orElse(BatchMessageDecoder.DEFAULT_MAX_MESSAGES),
+                context.getConfig(CONFIG_KEY_HTTP_BATCH_MAX_BODY_SIZE).map(Value::asInt).orElse(BatchMessageDecoder.DEFAULT_MAX_BODY_SIZE)
+        );
+    }
+
+    /**
+     * MQTT下行topic前缀缓存的最大设备数量,默认100000,为0时不缓存
+     */
+    public static final String CONFIG_KEY_TOPIC_CACHE_SIZE = "jetlinks.protocol.mqtt.topic-cache.size";
+
+    static TopicPrefixCache createTopicPrefixCache(ServiceContext context) {
+        if (context == null) {
+            return new TopicPrefixCache();
+        }
+        return new TopicPrefixCache(
+                context.getConfig(CONFIG_KEY_TOPIC_CACHE_SIZE).map(Value::asLong).orElse(100_000L),
+                Duration.ofMinutes(30)
+        );
+    }
+
     @Override
     public Mono<CompositeProtocolSupport> create(ServiceContext context) {
         return Mono.defer(() -> {
             CompositeProtocolSupport support = new CompositeProtocolSupport();
+            ByteBufAllocator allocator = getAllocator(context);
+            //TCP,UDP共用消息序号表,需要在创建编解码器前设置
+            BinaryMessageType.setSequenceCapacity(getSequenceCapacity(context));
 
             support.setId("jetlinks.v3.0");
             support.setName("JetLinks V3.0");
@@ -72,39 +243,77 @@ public class JetLinksProtocolSupportProvider implements ProtocolSupportProvider
                             .build())
                     .collect(Collectors.toList())
             );
+            support.addRoutes(DefaultTransport.HTTP, Collections.singletonList(
+                    HttpRoute
+                            .builder()
+                            .address("/{productId:产品ID}/{deviceId:设备ID}/" + BatchMessageDecoder.BATCH_PATH)
+                            .group("批量上报")
+                            .contentType(BatchMessageDecoder.CONTENT_TYPE)
+                            .method(HttpMethod.POST)
+                            .description("使用换行分隔的JSON批量上报消息,每行一条消息.所有消息解码成功后才返回成功," +
+                                                 "请求体大小在接收完整个请求体后校验")
+                            .example("{\"topic\":\"/properties/report\",\"message\":{\"properties\":{\"temp\":36.5}}}\n" +
+                                             "{\"topic\":\"/event/fire_alarm\",\"message\":{\"data\":{\"level\":1}}}")
+                            .build()
+            ));
 
             support.setDocument(DefaultTransport.HTTP,
                                 "document-http.md",
                                 JetLinksProtocolSupportProvider.class.getClassLoader());
 
 
-            support.addAuthenticator(DefaultTransport.MQTT, new JetLinksAuthenticator());
+            JetLinksAuthenticator authenticator = new JetLinksAuthenticator(100_000,
+                                                                            Duration.ofMinutes(1),
+                                                                            getAuthCacheRevalidate(context, Duration.ofMinutes(1)));
+            support.addAuthenticator(DefaultTransport.MQTT, authenticator);
 
             support.setMetadataCodec(new JetLinksDeviceMetadataCodec());
 
             support.addConfigMetadata(DefaultTransport.MQTT, mqttConfig);
 
 
+            //TCP,UDP共用认证缓存,HTTP,WebSocket共用Token缓存,与MQTT认证缓存,topic前缀缓存一起在设备重新注册(修改配置后重新激活)或者注销时失效
+            AuthenticationCache authenticationCache = createAuthenticationCache(context);
+            BearerTokenCache tokenCache = createBearerTokenCache(context);
+            TopicPrefixCache topicPrefixCache = createTopicPrefixCache(context);
+            support.doOnDeviceRegister(device -> Mono.fromRunnable(() -> {
+                authenticationCache.invalidate(device.getDeviceId());
+                tokenCache.invalidate(device.getDeviceId());
+                authenticator.invalidate(device.getDeviceId());
+                topicPrefixCache.invalidate(device.getDeviceId());
+            }));
+            support.doOnDeviceUnRegister(device -> Mono.fromRunnable(() -> {
+                authenticationCache.invalidate(device.getDeviceId());
+                tokenCache.invalidate(device.getDeviceId());
+                authenticator.invalidate(device.getDeviceId());
+                topicPrefixCache.invalidate(device.getDeviceId());
+            }));
+            support.doOnProductRegister(product -> Mono.fromRunnable(() -> topicPrefixCache.invalidateProduct(product.getId())));
+            support.doOnProductUnRegister(product -> Mono.fromRunnable(() -> topicPrefixCache.invalidateProduct(product.getId())));
+
             //TCP
             support.addConfigMetadata(DefaultTransport.TCP, TcpDeviceMessageCodec.tcpConfig);
-            support.addMessageCodecSupport(new TcpDeviceMessageCodec());
+            support.addMessageCodecSupport(new TcpDeviceMessageCodec(allocator, getTcpMaxInFlight(context), authenticationCache));
             support.setDocument(DefaultTransport.TCP,
                                 "document-tcp.md",
                                 JetLinksProtocolSupportProvider.class.getClassLoader());
 
             //UDP
             support.addConfigMetadata(DefaultTransport.UDP, UDPDeviceMessageCodec.udpConfig);
-            support.addMessageCodecSupport(new UDPDeviceMessageCodec());
+            support.addMessageCodecSupport(new UDPDeviceMessageCodec(allocator, authenticationCache, getUdpSessionTimeout(context)));
 
             //MQTT
-            support.addMessageCodecSupport(new JetLinksMqttDeviceMessageCodec());
+            support.addMessageCodecSupport(new JetLinksMqttDeviceMessageCodec(DefaultTransport.MQTT, allocator, topicPrefixCache));
 
             //HTTP
             support.addConfigMetadata(DefaultTransport.HTTP, JetLinksHttpDeviceMessageCodec.httpConfig);
-            support.addMessageCodecSupport(new JetLinksHttpDeviceMessageCodec());
+            support.addMessageCodecSupport(new JetLinksHttpDeviceMessageCodec(DefaultTransport.HTTP,
+                                                                              allocator,
+                                                                              tokenCache,
+                                                                              createBatchMessageDecoder(context)));
 
             //Websocket
-            JetLinksHttpDeviceMessageCodec codec = new JetLinksHttpDeviceMessageCodec(DefaultTransport.WebSocket);
+            JetLinksHttpDeviceMessageCodec codec = new JetLinksHttpDeviceMessageCodec(DefaultTransport.WebSocket, allocator, tokenCache);
             support.addMessageCodecSupport(codec);
             support.addAuthenticator(DefaultTransport.WebSocket, codec);
 
@@ -4,8 +4,16 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 public class ObjectMappers {
 
     public static final ObjectMapper JSON_MAPPER;
@@ -25,4 +33,50 @@ public class ObjectMappers {
                 .setSerializationInclusion(JsonInclude.Include.NON_NULL);
     }
 
+    /**
+     * 直接从ByteBuf中读取数据,不会复制ByteBuf中的数据,也不会修改ByteBuf的readerIndex.
+     * <p>
+     * 堆内存的ByteBuf直接使用底层数组进行解析,堆外内存则通过{@link ByteBufInputStream}进行解析.
+     *
+     * @param mapper  ObjectMapper
+     * @param payload 数据
+     * @param type    类型
+     * @param <T>     类型
+     * @return 解析结果
+     * @throws IOException 解析失败时
+     */
+    public static <T> T readValue(ObjectMapper mapper, ByteBuf payload, Class<T> type) throws IOException {
+        if (payload.hasArray()) {
+            return mapper.readValue(payload.array(),
+                                    payload.arrayOffset() + payload.readerIndex(),
+                                    payload.readableBytes(),
+                                    type);
+        }
+        try (InputStream stream = new ByteBufInputStream(payload.duplicate())) {
+            return mapper.readValue(stream, type);
+        }
+    }
+
+    /**
+     * 直接序列化到使用allocator分配的ByteBuf中,不会创建中间的字符串或者byte数组.
+     * <p>
+     * 返回的ByteBuf由调用者负责释放,序列化失败时会释放已分配的ByteBuf.
+     *
+     * @param mapper    ObjectMapper
+     * @param allocator ByteBufAllocator
+     * @param value     数据
+     * @return 序列化结果
+     * @throws IOException 序列化失败时
+     */
+    public static ByteBuf writeValue(ObjectMapper mapper, ByteBufAllocator allocator, Object value) throws IOException {
+        ByteBuf buf = allocator.buffer();
+        try {
+            mapper.writeValue((OutputStream) new ByteBufOutputStream(buf), value);
+            return buf;
+        } catch (Throwable e) {
+            buf.release();
+            throw e;
+        }
+    }
+
 }
@@ -0,0 +1,161 @@
+package org.jetlinks.protocol.official;
+
+/**
+ * 解析后的topic,只记录每一层在原始topic中的位置,不会创建分割后的数组以及子字符串.
+ * <p>
+ * 第0层固定为空字符串,与<code>"/a/b".split("/")</code>的结果保持一致,不以/开头的topic会按以/开头处理.
+ * 通过{@link #sub(int)}可以在不复制数据的情况下得到从指定层级开始的子topic,如子设备消息中的topic.
+ *
+ * <pre>
+ *     ParsedTopic topic = ParsedTopic.of("/product/device/properties/report");
+ *     topic.get(1); // product
+ *     topic.removeProductPath().get(1); // device
+ * </pre>
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public final class ParsedTopic {
+
+    private final String topic;
+
+    //每一层(不包含第0层)在topic中的起止位置: [start1,end1,start2,end2...]
+    private final int[] bounds;
+
+    //当前第0层在原始topic中的层级
+    private final int offset;
+
+    private final int size;
+
+    private ParsedTopic(String topic, int[] bounds, int offset, int size) {
+        this.topic = topic;
+        this.bounds = bounds;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public static ParsedTopic of(String topic) {
+        int start = !topic.isEmpty() && topic.charAt(0) == '/' ? 1 : 0;
+        int end = topic.length();
+        //忽略末尾的空层级,与String.split的行为一致
+        while (end > start && topic.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (end == start) {
+            return new ParsedTopic(topic, new int[0], 0, 1);
+        }
+        int levels = 1;
+        for (int i = start; i < end; i++) {
+            if (topic.charAt(i) == '/') {
+                levels++;
+            }
+        }
+        int[] bounds = new int[levels * 2];
+        int index = 0, levelStart = start;
+        for (int i = start; i < end; i++) {
+            if (topic.charAt(i) == '/') {
+                bounds[index++] = levelStart;
+                bounds[index++] = i;
+                levelStart = i + 1;
+            }
+        }
+        bounds[index++] = levelStart;
+        bounds[index] = end;
+        return new ParsedTopic(topic, bounds, 0, levels + 1);
+    }
+
+    public static ParsedTopic of(String[] topic) {
+        return of(String.join("/", topic));
+    }
+
+    /**
+     * @return 层级数量, 包含第0层
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 获取指定层级的内容,会创建新的字符串,只在需要使用层级内容时调用.
+     *
+     * @param level 层级
+     * @return 层级内容
+     */
+    public String get(int level) {
+        if (level == 0) {
+            checkLevel(level);
+            return "";
+        }
+        int index = boundIndex(level);
+        return topic.substring(bounds[index], bounds[index + 1]);
+    }
+
+    /**
+     * 判断指定层级的内容是否与字符串相同,不会创建新的对象.
+     *
+     * @param level 层级
+     * @param value 字符串
+     * @return 是否相同
+     */
+    public boolean levelEquals(int level, String value) {
+        if (level == 0) {
+            checkLevel(level);
+            return value.isEmpty();
+        }
+        int index = boundIndex(level);
+        int start = bounds[index];
+        int len = bounds[index + 1] - start;
+        return len == value.length() && topic.regionMatches(start, value, 0, len);
+    }
+
+    /**
+     * 获取从指定层级开始的子topic,指定的层级将作为子topic的第0层.
+     *
+     * @param level 层级
+     * @return 子topic
+     */
+    public ParsedTopic sub(int level) {
+        if (level == 0) {
+            return this;
+        }
+        checkLevel(level);
+        return new ParsedTopic(topic, bounds, offset + level, size - level);
+    }
+
+    /**
+     * 移除topic中的产品信息,topic第一个层为产品ID,在解码时不需要此信息.
+     *
+     * @return 移除后的topic
+     * @see TopicMessageCodec#removeProductPath(String)
+     */
+    public ParsedTopic removeProductPath() {
+        return sub(1);
+    }
+
+    public String[] toArray() {
+        String[] arr = new String[size];
+        for (int i = 0; i < size; i++) {
+            arr[i] = get(i);
+        }
+        return arr;
+    }
+
+    private int boundIndex(int level) {
+        checkLevel(level);
+        return (offset + level - 1) * 2;
+    }
+
+    private void checkLevel(int level) {
+        if (level < 0 || level >= size) {
+            throw new IndexOutOfBoundsException("level: " + level + ", size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (size == 1) {
+            return "";
+        }
+        return "/" + topic.substring(bounds[offset * 2], bounds[bounds.length - 1]);
+    }
+}
@@ -1,8 +1,11 @@
 package org.jetlinks.protocol.official;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import lombok.SneakyThrows;
-import org.hswebframework.web.bean.FastBeanCopier;
+import org.jetlinks.core.device.DeviceThingType;
 import org.jetlinks.core.message.*;
 import org.jetlinks.core.message.event.EventMessage;
 import org.jetlinks.core.message.firmware.*;
@@ -12,13 +15,13 @@ import org.jetlinks.core.message.property.*;
 import org.jetlinks.core.message.state.DeviceStateCheckMessage;
 import org.jetlinks.core.message.state.DeviceStateCheckMessageReply;
 import org.jetlinks.core.route.MqttRoute;
-import org.jetlinks.core.utils.TopicUtils;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.StringJoiner;
 import java.util.function.Function;
@@ -84,8 +87,8 @@ public enum TopicMessageCodec {
         }
 
         @Override
-        Publisher<DeviceMessage> doDecode(ObjectMapper mapper, String[] topic, byte[] payload) {
-            String event = topic[topic.length - 1];
+        Publisher<DeviceMessage> doDecode(ObjectMapper mapper, ParsedTopic topic, ByteBuf payload) {
+            String event = topic.get(topic.size() - 1);
 
             return Mono.from(super.doDecode(mapper, topic, payload))
                        .cast(EventMessage.class)
@@ -137,14 +140,14 @@ public enum TopicMessageCodec {
         }
 
         @Override
-        public Publisher<DeviceMessage> doDecode(ObjectMapper mapper, String[] topic, byte[] payload) {
-            String[] _topic = Arrays.copyOfRange(topic, 2, topic.length);
-            _topic[0] = "";// topic以/开头所有第一位是空白
+        public Publisher<DeviceMessage> doDecode(ObjectMapper mapper, ParsedTopic topic, ByteBuf payload) {
+            String deviceId = topic.get(1);
+            //从child开始作为子设备的topic,第0层为空白
             return TopicMessageCodec
-                    .decode(mapper, _topic, payload)
+                    .decode(mapper, topic.sub(2), payload)
                     .map(childMsg -> {
                         ChildDeviceMessage msg = new ChildDeviceMessage();
-                        msg.setDeviceId(topic[1]);
+                        msg.setDeviceId(deviceId);
                         msg.setChildDeviceMessage(childMsg);
                         msg.setTimestamp(childMsg.getTimestamp());
                         msg.setMessageId(childMsg.getMessageId());
@@ -185,14 +188,14 @@ public enum TopicMessageCodec {
         }
 
         @Override
-        public Publisher<DeviceMessage> doDecode(ObjectMapper mapper, String[] topic, byte[] payload) {
-            String[] _topic = Arrays.copyOfRange(topic, 2, topic.length);
-            _topic[0] = "";// topic以/开头所有第一位是空白
+        public Publisher<DeviceMessage> doDecode(ObjectMapper mapper, ParsedTopic topic, ByteBuf payload) {
+            String deviceId = topic.get(1);
+            //从child开始作为子设备的topic,第0层为空白
             return TopicMessageCodec
-                    .decode(mapper, _topic, payload)
+                    .decode(mapper, topic.sub(2), payload)
                     .map(childMsg -> {
                         ChildDeviceMessageReply msg = new ChildDeviceMessageReply();
-                        msg.setDeviceId(topic[1]);
+                        msg.setDeviceId(deviceId);
                         msg.setChildDeviceMessage(childMsg);
                         msg.setTimestamp(childMsg.getTimestamp());
                         msg.setMessageId(childMsg.getMessageId());
@@ -252,10 +255,10 @@ public enum TopicMessageCodec {
     //透传设备消息
     direct("/*/direct", DirectDeviceMessage.class) {
         @Override
-        public Publisher<DeviceMessage> doDecode(ObjectMapper mapper, String[] topic, byte[] payload) {
+        public Publisher<DeviceMessage> doDecode(ObjectMapper mapper, ParsedTopic topic, ByteBuf payload) {
             DirectDeviceMessage message = new DirectDeviceMessage();
-            message.setDeviceId(topic[1]);
-            message.setPayload(payload);
+            message.setDeviceId(topic.get(1));
+            message.setPayload(ByteBufUtil.getBytes(payload));
             return Mono.just(message);
         }
     },
@@ -284,6 +287,7 @@ public enum TopicMessageCodec {
                       Class<? extends DeviceMessage> type,
                       Function<MqttRoute.Builder, MqttRoute.Builder> routeCustom) {
         this.pattern = topic.split("/");
+        this.topicSuffix = createTopicSuffix(pattern);
         this.type = type;
         this.route = routeCustom.apply(toRoute()).build();
     }
@@ -291,18 +295,82 @@ public enum TopicMessageCodec {
     TopicMessageCodec(String topic,
                       Class<? extends DeviceMessage> type) {
         this.pattern = topic.split("/");
+        this.topicSuffix = createTopicSuffix(pattern);
         this.type = type;
         this.route = null;
     }
 
     private final String[] pattern;
+    //设备ID之后固定的topic,如/properties/read,编码时直接拼接.topic中有通配符时为null
+    private final String topicSuffix;
     private final MqttRoute route;
     private final Class<? extends DeviceMessage> type;
 
+    private static final TopicRouter<TopicMessageCodec> ROUTER = new TopicRouter<>();
+
+    static {
+        for (TopicMessageCodec value : values()) {
+            ROUTER.register(value.pattern, value);
+        }
+    }
+
+    //消息类型 -> 消息类,用于根据消息中的messageType直接解码
+    private static final Map<String, Class<? extends DeviceMessage>> MESSAGE_TYPES = new HashMap<>();
+
+    static {
+        for (TopicMessageCodec value : values()) {
+            //子设备消息,透传消息需要根据topic解码,无法直接将消息体解码为消息类
+            if (value == child || value == childReply || value == direct) {
+                continue;
+            }
+            try {
+                MessageType messageType = value.type.getConstructor().newInstance().getMessageType();
+                MESSAGE_TYPES.putIfAbsent(messageType.name(), value.type);
+            } catch (ReflectiveOperationException ignore) {
+                //无法创建的消息类不支持直接解码
+            }
+        }
+    }
+
+    /**
+     * 根据消息类型获取对应的消息类,与MQTT等通过topic解码时使用的消息类一致.
+     * 解码依赖topic的消息(子设备消息,透传消息)不支持直接解码,返回null.
+     *
+     * @param messageType 消息类型,如: REPORT_PROPERTY
+     * @return 消息类, 不支持的类型返回null
+     */
+    public static Class<? extends DeviceMessage> getMessageClass(String messageType) {
+        return MESSAGE_TYPES.get(messageType);
+    }
+
+    //根据消息类型查找编解码器,每个类型只查找一次
+    private static final ClassValue<Optional<TopicMessageCodec>> CODECS = new ClassValue<Optional<TopicMessageCodec>>() {
+        @Override
+        protected Optional<TopicMessageCodec> computeValue(Class<?> type) {
+            for (TopicMessageCodec value : values()) {
+                if (value.type == type) {
+                    return Optional.of(value);
+                }
+            }
+            return Optional.empty();
+        }
+    };
+
     protected void transMqttTopic(String[] topic) {
 
     }
 
+    private static String createTopicSuffix(String[] pattern) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 2; i < pattern.length; i++) {
+            if (pattern[i].startsWith("*")) {
+                return null;
+            }
+            builder.append('/').append(pattern[i]);
+        }
+        return builder.toString();
+    }
+
     @SneakyThrows
     private MqttRoute.Builder toRoute() {
         String[] topics = new String[pattern.length];
@@ -323,14 +391,37 @@ public enum TopicMessageCodec {
         return route;
     }
 
+    String[] getPattern() {
+        return pattern;
+    }
+
+    public static Flux<DeviceMessage> decode(ObjectMapper mapper, ParsedTopic topic, byte[] payload) {
+        return decode(mapper, topic, Unpooled.wrappedBuffer(payload));
+    }
+
+    /**
+     * 直接从ByteBuf中解码消息,解码时不会复制ByteBuf中的数据,也不会修改ByteBuf的readerIndex.
+     * 调用方需要保证在解码完成前ByteBuf不会被释放.
+     *
+     * @param mapper  ObjectMapper
+     * @param topic   移除了产品信息的topic
+     * @param payload 消息体
+     * @return 设备消息
+     */
+    public static Flux<DeviceMessage> decode(ObjectMapper mapper, ParsedTopic topic, ByteBuf payload) {
+        TopicMessageCodec codec = ROUTER.match(topic);
+        if (codec == null) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> codec.doDecode(mapper, topic, payload));
+    }
+
     public static Flux<DeviceMessage> decode(ObjectMapper mapper, String[] topics, byte[] payload) {
-        return Mono
-                .justOrEmpty(fromTopic(topics))
-                .flatMapMany(topicMessageCodec -> topicMessageCodec.doDecode(mapper, topics, payload));
+        return decode(mapper, ParsedTopic.of(topics), payload);
     }
 
     public static Flux<DeviceMessage> decode(ObjectMapper mapper, String topic, byte[] payload) {
-        return decode(mapper, topic.split("/"), payload);
+        return decode(mapper, ParsedTopic.of(topic), payload);
     }
 
     public static TopicPayload encode(ObjectMapper mapper, DeviceMessage message) {
@@ -340,42 +431,36 @@ public enum TopicMessageCodec {
                 .doEncode(mapper, message);
     }
 
-    static Optional<TopicMessageCodec> fromTopic(String[] topic) {
-        for (TopicMessageCodec value : values()) {
-            if (TopicUtils.match(value.pattern, topic)) {
-                return Optional.of(value);
-            }
-        }
-        return Optional.empty();
+    static Optional<TopicMessageCodec> fromTopic(ParsedTopic topic) {
+        return Optional.ofNullable(ROUTER.match(topic));
     }
 
     static Optional<TopicMessageCodec> fromMessage(DeviceMessage message) {
-        for (TopicMessageCodec value : values()) {
-            if (value.type == message.getClass()) {
-                return Optional.of(value);
-            }
-        }
-        return Optional.empty();
+        return CODECS.get(message.getClass());
     }
 
-    Publisher<DeviceMessage> doDecode(ObjectMapper mapper, String[] topic, byte[] payload) {
+    Publisher<DeviceMessage> doDecode(ObjectMapper mapper, ParsedTopic topic, ByteBuf payload) {
         return Mono
                 .fromCallable(() -> {
-                    DeviceMessage message = mapper.readValue(payload, type);
-                    FastBeanCopier.copy(Collections.singletonMap("deviceId", topic[1]), message);
+                    DeviceMessage message = ObjectMappers.readValue(mapper, payload, type);
+                    //设备ID以topic中的为准
+                    message.thingId(DeviceThingType.device, topic.get(1));
 
                     return message;
                 });
     }
 
-    @SneakyThrows
     TopicPayload doEncode(ObjectMapper mapper, String[] topics, DeviceMessage message) {
         refactorTopic(topics, message);
-        return TopicPayload.of(String.join("/", topics), mapper.writeValueAsBytes(message));
+        //在获取消息体时才进行序列化,可直接序列化到ByteBuf中
+        return TopicPayload.of(String.join("/", topics), mapper, message);
     }
 
     @SneakyThrows
     TopicPayload doEncode(ObjectMapper mapper, DeviceMessage message) {
+        if (topicSuffix != null) {
+            return TopicPayload.of("/".concat(message.getDeviceId()).concat(topicSuffix), mapper, message);
+        }
         String[] topics = Arrays.copyOf(pattern, pattern.length);
         return doEncode(mapper, topics, message);
     }
@@ -389,6 +474,7 @@ public enum TopicMessageCodec {
      *
      * @param topic topic
      * @return 移除后的topic
+     * @see ParsedTopic#removeProductPath()
      */
     public static String[] removeProductPath(String topic) {
         if (!topic.startsWith("/")) {
@@ -1,17 +1,72 @@
 package org.jetlinks.protocol.official;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import lombok.SneakyThrows;
 
 @Getter
 @Setter
-@AllArgsConstructor(staticName = "of")
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 @NoArgsConstructor
 public class TopicPayload {
 
     private String topic;
 
     private byte[] payload;
+
+    //未序列化的消息体,在获取消息体时才进行序列化
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient ObjectMapper mapper;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Object body;
+
+    public static TopicPayload of(String topic, byte[] payload) {
+        return new TopicPayload(topic, payload, null, null);
+    }
+
+    /**
+     * 创建延迟序列化的消息体,在获取消息体时才使用mapper进行序列化.
+     *
+     * @param topic  topic
+     * @param mapper ObjectMapper
+     * @param body   消息体
+     * @return TopicPayload
+     * @see #getPayload(ByteBufAllocator)
+     */
+    public static TopicPayload of(String topic, ObjectMapper mapper, Object body) {
+        return new TopicPayload(topic, null, mapper, body);
+    }
+
+    @SneakyThrows
+    public byte[] getPayload() {
+        if (payload == null && body != null) {
+            payload = mapper.writeValueAsBytes(body);
+        }
+        return payload;
+    }
+
+    /**
+     * 获取消息体,未序列化的消息体将直接序列化到使用allocator分配的ByteBuf中,不会创建中间的byte数组.
+     * <p>
+     * 返回的ByteBuf由调用者负责释放,通常在发送给设备后由网络层释放.
+     *
+     * @param allocator ByteBufAllocator
+     * @return 消息体
+     */
+    @SneakyThrows
+    public ByteBuf getPayload(ByteBufAllocator allocator) {
+        if (payload != null || body == null) {
+            return payload == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(payload);
+        }
+        return ObjectMappers.writeValue(mapper, allocator, body);
+    }
 }
@@ -0,0 +1,96 @@
+package org.jetlinks.protocol.official;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jetlinks.core.device.DeviceConfigKey;
+import org.jetlinks.core.device.DeviceOperator;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * MQTT下行topic前缀缓存,缓存设备对应的/{productId},向大量设备下发指令时不再每条消息都从设备注册中心获取产品ID.
+ * <p>
+ * 缓存有数量上限,超过有效期未访问自动失效.设备重新注册(如修改产品后重新激活)或者注销时需要调用{@link #invalidate(String)},
+ * 产品注销时需要调用{@link #invalidateProduct(String)}.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class TopicPrefixCache {
+
+    //未获取到产品ID时使用的前缀,不缓存
+    static final String UNKNOWN_PREFIX = "/null";
+
+    //设备ID -> /{productId}
+    private final Cache<String, String> cache;
+
+    /**
+     * @param maximumSize 最大缓存设备数量,小于等于0时不缓存
+     * @param ttl         缓存有效期,超过有效期未访问则失效
+     */
+    public TopicPrefixCache(long maximumSize, Duration ttl) {
+        this(maximumSize, ttl, Ticker.systemTicker());
+    }
+
+    TopicPrefixCache(long maximumSize, Duration ttl, Ticker ticker) {
+        this.cache = CacheBuilder
+                .newBuilder()
+                .maximumSize(Math.max(0, maximumSize))
+                .expireAfterAccess(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    public TopicPrefixCache() {
+        this(100_000, Duration.ofMinutes(30));
+    }
+
+    /**
+     * 获取设备的topic前缀
+     *
+     * @param deviceId     设备ID
+     * @param deviceGetter 缓存未命中时获取设备
+     * @return /{productId}, 设备不存在或者未配置产品ID时返回/null
+     */
+    public Mono<String> getPrefix(String deviceId, Function<String, Mono<DeviceOperator>> deviceGetter) {
+        String prefix = cache.getIfPresent(deviceId);
+        if (prefix != null) {
+            return Mono.just(prefix);
+        }
+        return deviceGetter
+                .apply(deviceId)
+                .flatMap(device -> device.getSelfConfig(DeviceConfigKey.productId))
+                .map(productId -> {
+                    String value = "/".concat(productId);
+                    cache.put(deviceId, value);
+                    return value;
+                })
+                .defaultIfEmpty(UNKNOWN_PREFIX);
+    }
+
+    public void invalidate(String deviceId) {
+        cache.invalidate(deviceId);
+    }
+
+    /**
+     * 使产品下所有设备的缓存失效
+     *
+     * @param productId 产品ID
+     */
+    public void invalidateProduct(String productId) {
+        String prefix = "/".concat(productId);
+        cache.asMap().values().removeIf(prefix::equals);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,123 @@
+package org.jetlinks.protocol.official;
+
+import java.util.Arrays;
+
+/**
+ * 基于topic层级构造的前缀树,用于根据topic快速查找对应的处理器,查找时间复杂度只和topic层级数有关.
+ * <p>
+ * 支持的通配符:
+ * <ul>
+ *     <li>* : 匹配任意一个层级</li>
+ *     <li>** : 匹配剩余的任意层级,只能出现在最后一层</li>
+ * </ul>
+ * 当多个规则都能匹配时,返回最先注册的规则,与按顺序逐个调用{@link org.jetlinks.core.utils.TopicUtils#match(String[], String[])}的结果一致.
+ *
+ * @param <T> 处理器类型
+ * @author zhouhao
+ * @since 3.0.0
+ */
+class TopicRouter<T> {
+
+    private final Node<T> root = new Node<>();
+
+    private int order;
+
+    /**
+     * 注册topic规则,在类初始化时调用,注册完成后不应该再修改.
+     *
+     * @param pattern 按/分割后的topic规则
+     * @param value   处理器
+     */
+    void register(String[] pattern, T value) {
+        Node<T> node = root;
+        for (int i = 0; i < pattern.length; i++) {
+            String part = pattern[i];
+            if ("**".equals(part)) {
+                if (i != pattern.length - 1) {
+                    throw new IllegalArgumentException("'**' must be the last level of topic pattern");
+                }
+                if (node.multi == null) {
+                    node.multi = new Node<>();
+                }
+                node = node.multi;
+            } else if ("*".equals(part)) {
+                if (node.single == null) {
+                    node.single = new Node<>();
+                }
+                node = node.single;
+            } else {
+                node = node.literalChild(part);
+            }
+        }
+        if (node.value == null) {
+            node.value = value;
+            node.order = order++;
+        }
+    }
+
+    /**
+     * 根据topic查找处理器,查找过程中不会创建新的对象.
+     *
+     * @param topic topic
+     * @return 处理器, 未匹配时返回<code>null</code>
+     */
+    T match(ParsedTopic topic) {
+        Node<T> node = root.match(topic, 0, null);
+        return node == null ? null : node.value;
+    }
+
+    private static class Node<T> {
+        //字面量子节点,同一层级的字面量数量很少,直接按顺序比较
+        private String[] literals = new String[0];
+        @SuppressWarnings("unchecked")
+        private Node<T>[] literalNodes = new Node[0];
+        // * 子节点
+        private Node<T> single;
+        // ** 子节点
+        private Node<T> multi;
+
+        private T value;
+        private int order;
+
+        private Node<T> literalChild(String literal) {
+            for (int i = 0; i < literals.length; i++) {
+                if (literals[i].equals(literal)) {
+                    return literalNodes[i];
+                }
+            }
+            Node<T> node = new Node<>();
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            literalNodes = Arrays.copyOf(literalNodes, literalNodes.length + 1);
+            literals[literals.length - 1] = literal;
+            literalNodes[literalNodes.length - 1] = node;
+            return node;
+        }
+
+        private Node<T> match(ParsedTopic topic, int index, Node<T> matched) {
+            // ** 匹配剩余的任意层级
+            if (multi != null) {
+                matched = prior(matched, multi);
+            }
+            if (index == topic.size()) {
+                return value == null ? matched : prior(matched, this);
+            }
+            for (int i = 0; i < literals.length; i++) {
+                if (topic.levelEquals(index, literals[i])) {
+                    matched = literalNodes[i].match(topic, index + 1, matched);
+                    break;
+                }
+            }
+            if (single != null) {
+                matched = single.match(topic, index + 1, matched);
+            }
+            return matched;
+        }
+
+        private static <T> Node<T> prior(Node<T> matched, Node<T> node) {
+            if (node.value == null) {
+                return matched;
+            }
+            return matched == null || node.order < matched.order ? node : matched;
+        }
+    }
+}
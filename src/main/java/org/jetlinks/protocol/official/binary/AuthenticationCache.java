@@ -0,0 +1,177 @@
+package org.jetlinks.protocol.official.binary;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AllArgsConstructor;
+import org.jetlinks.core.device.DeviceOperator;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * TCP,UDP认证缓存,缓存设备的密钥配置,已认证过的设备再次认证时不再从设备注册中心获取配置.
+ * <p>
+ * 缓存有数量上限,写入后超过有效期自动失效.设备重新注册(如修改配置后重新激活)或者注销时需要调用{@link #invalidate(String)}.
+ * 密钥不匹配时会重新获取配置,因此修改密钥后设备使用新密钥可以立即认证通过.
+ * 修改配置后未重新注册时,缓存超过重新校验时间后会重新获取配置,旧密钥最多在此时间内仍可以认证通过.
+ * 重新校验时间默认与缓存有效期一致,设置得越短旧密钥失效越快,但是上报间隔大于此时间的设备将无法命中缓存.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class AuthenticationCache {
+
+    public static final String CONFIG_KEY_SECURE_KEY = "secureKey";
+
+    private static final Mono<Boolean> SUCCESS = Mono.just(true), FAILED = Mono.just(false);
+
+    //设备ID -> 密钥
+    private final Cache<String, Entry> cache;
+
+    private final Ticker ticker;
+
+    private final long revalidateNanos;
+
+    /**
+     * @param maximumSize 最大缓存设备数量,小于等于0时不缓存
+     * @param ttl         缓存有效期
+     * @param revalidate  重新校验时间,缓存写入超过此时间后重新获取配置,不超过缓存有效期时才有意义
+     */
+    public AuthenticationCache(long maximumSize, Duration ttl, Duration revalidate) {
+        this(maximumSize, ttl, revalidate, Ticker.systemTicker());
+    }
+
+    public AuthenticationCache(long maximumSize, Duration ttl) {
+        this(maximumSize, ttl, ttl);
+    }
+
+    AuthenticationCache(long maximumSize, Duration ttl, Duration revalidate, Ticker ticker) {
+        this.cache = CacheBuilder
+                .newBuilder()
+                .maximumSize(Math.max(0, maximumSize))
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+        this.ticker = ticker;
+        this.revalidateNanos = revalidate.toNanos();
+    }
+
+    public AuthenticationCache() {
+        this(100_000, Duration.ofMinutes(10));
+    }
+
+    //未超过重新校验时间的密钥
+    private String getCached(String deviceId) {
+        Entry entry = cache.getIfPresent(deviceId);
+        if (entry == null || ticker.read() - entry.loadTime >= revalidateNanos) {
+            return null;
+        }
+        return entry.secureKey;
+    }
+
+    /**
+     * 校验设备密钥
+     *
+     * @param deviceId     设备ID
+     * @param token        设备上报的密钥
+     * @param deviceGetter 缓存未命中时获取设备
+     * @return 是否认证通过, 设备不存在或者未配置密钥时返回false
+     */
+    public Mono<Boolean> authenticate(String deviceId,
+                                      String token,
+                                      Function<String, Mono<DeviceOperator>> deviceGetter) {
+        if (deviceId == null || token == null) {
+            return FAILED;
+        }
+        String secureKey = getCached(deviceId);
+        if (secureKey != null && constantTimeEquals(secureKey, token)) {
+            return SUCCESS;
+        }
+        return load(deviceId, deviceGetter)
+                .map(key -> constantTimeEquals(key, token))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * 使用设备密钥校验,如校验签名
+     *
+     * @param deviceId     设备ID
+     * @param verifier     校验密钥
+     * @param deviceGetter 缓存未命中时获取设备
+     * @return 校验通过时返回设备密钥, 否则返回{@link Mono#empty()}
+     */
+    public Mono<String> authenticate(String deviceId,
+                                     Predicate<String> verifier,
+                                     Function<String, Mono<DeviceOperator>> deviceGetter) {
+        if (deviceId == null) {
+            return Mono.empty();
+        }
+        String secureKey = getCached(deviceId);
+        if (secureKey != null && verifier.test(secureKey)) {
+            return Mono.just(secureKey);
+        }
+        return load(deviceId, deviceGetter).filter(verifier);
+    }
+
+    /**
+     * 获取设备密钥,如下发指令时签名
+     *
+     * @param deviceId     设备ID
+     * @param deviceGetter 缓存未命中时获取设备
+     * @return 设备密钥
+     */
+    public Mono<String> getSecureKey(String deviceId, Function<String, Mono<DeviceOperator>> deviceGetter) {
+        String secureKey = getCached(deviceId);
+        if (secureKey != null) {
+            return Mono.just(secureKey);
+        }
+        return load(deviceId, deviceGetter);
+    }
+
+    private Mono<String> load(String deviceId, Function<String, Mono<DeviceOperator>> deviceGetter) {
+        return deviceGetter
+                .apply(deviceId)
+                .flatMap(device -> device.getConfig(CONFIG_KEY_SECURE_KEY))
+                .flatMap(config -> Mono.justOrEmpty(config.asString()))
+                .doOnNext(key -> cache.put(deviceId, new Entry(key, ticker.read())))
+                //已删除密钥配置
+                .switchIfEmpty(Mono.fromRunnable(() -> cache.invalidate(deviceId)));
+    }
+
+    /**
+     * 使设备的认证缓存失效
+     *
+     * @param deviceId 设备ID
+     */
+    public void invalidate(String deviceId) {
+        cache.invalidate(deviceId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    //比较时间与内容无关,避免通过响应时间猜测密钥
+    static boolean constantTimeEquals(String a, String b) {
+        int len = a.length();
+        int diff = len ^ b.length();
+        for (int i = 0, bLen = b.length(); i < len; i++) {
+            diff |= a.charAt(i) ^ (bLen == 0 ? 0 : b.charAt(i % bLen));
+        }
+        return diff == 0;
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final String secureKey;
+        private final long loadTime;
+    }
+}
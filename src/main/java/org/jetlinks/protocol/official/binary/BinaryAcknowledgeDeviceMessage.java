@@ -23,11 +23,16 @@ public class BinaryAcknowledgeDeviceMessage implements BinaryMessage<Acknowledge
     }
 
     @Override
-    public void write(ByteBuf buf) {
+    public void write(ByteBuf buf, boolean compact) {
         AckCode code = AckCode.valueOf(this.message.getHeaderOrDefault(codeHeader));
         buf.writeByte(code.ordinal());
     }
 
+    @Override
+    public int size(boolean compact) {
+        return 1;
+    }
+
     @Override
     public void setMessage(AcknowledgeDeviceMessage message) {
         this.message = message;
@@ -0,0 +1,109 @@
+package org.jetlinks.protocol.official.binary;
+
+import io.netty.buffer.ByteBuf;
+import org.jetlinks.core.device.DeviceThingType;
+import org.jetlinks.core.message.DeviceMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 批量消息,一个报文中包含同一个设备的多条消息,用于设备缓存数据后批量上报.
+ * <p>
+ * 设备ID和消息序号使用报文头中的值,报文头中的时间戳为第一条消息的时间戳.消息格式:
+ * <pre>
+ * [消息数量:UINT16,[消息类型:INT8,时间戳增量:INT32,消息内容]...]
+ * </pre>
+ * 时间戳增量为与上一条消息的时间差,单位毫秒.
+ * <p>
+ * 所有消息共用报文头中的消息序号,因此只支持不需要对应平台指令的上报类消息,见{@link #SUPPORTED_TYPES}.
+ * 回复类消息需要通过各自的消息序号获取平台下发的消息ID,只能单独上报.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class BinaryBatchMessage {
+
+    //一个报文中最多包含的消息数量
+    public static final int MAX_MESSAGES = 0xFFFF;
+
+    //批量报文中支持的消息类型
+    public static final Set<BinaryMessageType> SUPPORTED_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            BinaryMessageType.reportProperty,
+            BinaryMessageType.reportPropertyIndexed,
+            BinaryMessageType.event
+    ));
+
+    private final List<BinaryMessage<DeviceMessage>> messages;
+
+    BinaryBatchMessage(List<? extends DeviceMessage> messages) {
+        if (messages.isEmpty() || messages.size() > MAX_MESSAGES) {
+            throw new IllegalArgumentException("batch size must be between 1 and " + MAX_MESSAGES);
+        }
+        this.messages = new ArrayList<>(messages.size());
+        for (DeviceMessage message : messages) {
+            this.messages.add(checkType(BinaryMessageType.lookup(message)).create(message));
+        }
+    }
+
+    /**
+     * @return 第一条消息的时间戳
+     */
+    long getTimestamp() {
+        return messages.get(0).getMessage().getTimestamp();
+    }
+
+    int size() {
+        //消息数量(2)+每条消息的类型(1)和时间戳增量(4)
+        int size = 2 + messages.size() * 5;
+        for (BinaryMessage<DeviceMessage> message : messages) {
+            size += message.size();
+        }
+        return size;
+    }
+
+    void write(ByteBuf buf) {
+        buf.writeShort(messages.size());
+        long last = getTimestamp();
+        for (BinaryMessage<DeviceMessage> message : messages) {
+            long timestamp = message.getMessage().getTimestamp();
+            long delta = timestamp - last;
+            if (delta < Integer.MIN_VALUE || delta > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("timestamp delta out of range: " + delta);
+            }
+            buf.writeByte(message.getType().ordinal());
+            buf.writeInt((int) delta);
+            message.write(buf);
+            last = timestamp;
+        }
+    }
+
+    static List<DeviceMessage> read(ByteBuf buf, String deviceId, long timestamp, int msgId, PropertyDictionary dictionary) {
+        int size = buf.readUnsignedShort();
+        List<DeviceMessage> messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            BinaryMessageType type = checkType(BinaryMessageType.of(buf.readByte()));
+            timestamp += buf.readInt();
+
+            BinaryMessage<DeviceMessage> tcp = type.create();
+            tcp.read(buf, dictionary);
+
+            DeviceMessage message = tcp.getMessage();
+            message.thingId(DeviceThingType.device, deviceId);
+            message.timestamp(timestamp);
+            message.addHeader(BinaryMessageType.HEADER_MSG_SEQ, msgId);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static BinaryMessageType checkType(BinaryMessageType type) {
+        if (!SUPPORTED_TYPES.contains(type)) {
+            throw new IllegalArgumentException("unsupported message type in batch: " + type);
+        }
+        return type;
+    }
+}
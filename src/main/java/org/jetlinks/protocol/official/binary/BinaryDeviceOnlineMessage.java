@@ -25,13 +25,18 @@ public class BinaryDeviceOnlineMessage implements BinaryMessage<DeviceOnlineMess
     }
 
     @Override
-    public void write(ByteBuf buf) {
+    public void write(ByteBuf buf, boolean compact) {
         DataType.STRING
                 .write(
                         buf, message.getHeader(loginToken).orElse("")
                 );
     }
 
+    @Override
+    public int size(boolean compact) {
+        return DataType.STRING.size(message.getHeader(loginToken).orElse(""));
+    }
+
     @Override
     public void setMessage(DeviceOnlineMessage message) {
         this.message = message;
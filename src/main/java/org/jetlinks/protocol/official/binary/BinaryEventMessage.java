@@ -28,9 +28,14 @@ public class BinaryEventMessage implements BinaryMessage<EventMessage> {
     }
 
     @Override
-    public void write(ByteBuf buf) {
+    public void write(ByteBuf buf, boolean compact) {
         DataType.STRING.write(buf,message.getEvent());
-        DataType.OBJECT.write(buf, message.getData());
+        DataType.OBJECT.write(buf, message.getData(), compact);
+    }
+
+    @Override
+    public int size(boolean compact) {
+        return DataType.STRING.size(message.getEvent()) + DataType.OBJECT.size(message.getData(), compact);
     }
 
     @Override
@@ -10,6 +10,9 @@ import java.util.stream.Collectors;
 public class BinaryFunctionInvokeMessage implements BinaryMessage<FunctionInvokeMessage> {
     private FunctionInvokeMessage message;
 
+    //计算长度时转换的参数,写出时直接使用,避免重复转换
+    private Map<String, Object> inputs;
+
     @Override
     public BinaryMessageType getType() {
         return BinaryMessageType.function;
@@ -33,14 +36,27 @@ public class BinaryFunctionInvokeMessage implements BinaryMessage<FunctionInvoke
     }
 
     @Override
-    public void write(ByteBuf buf) {
+    public void write(ByteBuf buf, boolean compact) {
         DataType.STRING.write(buf,message.getFunctionId());
-        DataType.OBJECT.write(buf,message.inputsToMap());
+        DataType.OBJECT.write(buf, inputs(), compact);
+    }
+
+    @Override
+    public int size(boolean compact) {
+        return DataType.STRING.size(message.getFunctionId()) + DataType.OBJECT.size(inputs(), compact);
+    }
+
+    private Map<String, Object> inputs() {
+        if (inputs == null) {
+            inputs = message.inputsToMap();
+        }
+        return inputs;
     }
 
     @Override
     public void setMessage(FunctionInvokeMessage message) {
         this.message = message;
+        this.inputs = null;
     }
 
     @Override
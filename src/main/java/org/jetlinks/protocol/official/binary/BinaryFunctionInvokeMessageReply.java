@@ -31,9 +31,14 @@ public class BinaryFunctionInvokeMessageReply extends BinaryReplyMessage<Functio
     }
 
     @Override
-    protected void doWriteSuccess(FunctionInvokeMessageReply msg, ByteBuf buf) {
-        DataType.writeTo(getMessage().getFunctionId(), buf);
-        DataType.writeTo(msg.getOutput(), buf);
+    protected void doWriteSuccess(FunctionInvokeMessageReply msg, ByteBuf buf, boolean compact) {
+        DataType.writeTo(getMessage().getFunctionId(), buf, compact);
+        DataType.writeTo(msg.getOutput(), buf, compact);
+    }
+
+    @Override
+    protected int doSizeSuccess(FunctionInvokeMessageReply msg, boolean compact) {
+        return DataType.sizeOf(msg.getFunctionId(), compact) + DataType.sizeOf(msg.getOutput(), compact);
     }
 
 
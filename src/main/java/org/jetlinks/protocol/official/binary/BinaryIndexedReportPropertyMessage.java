@@ -0,0 +1,93 @@
+package org.jetlinks.protocol.official.binary;
+
+import io.netty.buffer.ByteBuf;
+import lombok.NoArgsConstructor;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+
+import java.util.Map;
+
+/**
+ * 使用{@link PropertyDictionary}压缩属性ID的属性上报.
+ * <p>
+ * 消息格式: [字典指纹:INT32,属性数量:变长整型,[属性序号:变长整型,属性值:动态类型]...],
+ * 字典指纹见{@link PropertyDictionary#getFingerprint()},与平台的字典不一致时报文将被拒绝.
+ * 属性序号为字典中的序号+1,为0时表示属性不在字典中,后面紧跟属性ID(变长整型长度+UTF8内容).
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+@NoArgsConstructor
+public class BinaryIndexedReportPropertyMessage implements BinaryMessage<ReportPropertyMessage> {
+
+    private PropertyDictionary dictionary;
+
+    private ReportPropertyMessage message;
+
+    /**
+     * @param dictionary 编码时使用的属性字典
+     * @param message    消息
+     */
+    public BinaryIndexedReportPropertyMessage(PropertyDictionary dictionary, ReportPropertyMessage message) {
+        this.dictionary = dictionary;
+        this.message = message;
+    }
+
+    @Override
+    public BinaryMessageType getType() {
+        return BinaryMessageType.reportPropertyIndexed;
+    }
+
+    @Override
+    public void read(ByteBuf buf) {
+        read(buf, dictionary);
+    }
+
+    @Override
+    public void read(ByteBuf buf, PropertyDictionary dictionary) {
+        message = new ReportPropertyMessage();
+        message.setProperties(PropertiesVisitor.readIndexed(buf, dictionary));
+    }
+
+    @Override
+    public void write(ByteBuf buf, boolean compact) {
+        Map<String, Object> properties = message.getProperties();
+        buf.writeInt(dictionary == null ? PropertyDictionary.fingerprint() : dictionary.getFingerprint());
+        DataType.writeVarInt(buf, properties.size());
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            int index = indexOf(entry.getKey());
+            DataType.writeVarInt(buf, index + 1);
+            if (index < 0) {
+                DataType.writeVarString(buf, entry.getKey());
+            }
+            DataType.writeTo(entry.getValue(), buf, compact);
+        }
+    }
+
+    @Override
+    public int size(boolean compact) {
+        Map<String, Object> properties = message.getProperties();
+        int size = 4 + DataType.varIntSize(properties.size());
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            int index = indexOf(entry.getKey());
+            size += DataType.varIntSize(index + 1) + DataType.sizeOf(entry.getValue(), compact);
+            if (index < 0) {
+                size += DataType.varStringSize(entry.getKey());
+            }
+        }
+        return size;
+    }
+
+    private int indexOf(String key) {
+        return dictionary == null ? -1 : dictionary.indexOf(key);
+    }
+
+    @Override
+    public void setMessage(ReportPropertyMessage message) {
+        this.message = message;
+    }
+
+    @Override
+    public ReportPropertyMessage getMessage() {
+        return message;
+    }
+}
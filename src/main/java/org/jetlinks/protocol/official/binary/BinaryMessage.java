@@ -10,7 +10,40 @@ public interface BinaryMessage<T extends DeviceMessage> {
 
     void read(ByteBuf buf);
 
-    void write(ByteBuf buf);
+    /**
+     * 使用属性字典读取,只有使用序号代替属性ID的消息需要字典.
+     *
+     * @param buf        数据
+     * @param dictionary 属性字典,可能为<code>null</code>
+     * @see PropertyDictionary
+     */
+    default void read(ByteBuf buf, PropertyDictionary dictionary) {
+        read(buf);
+    }
+
+    default void write(ByteBuf buf) {
+        write(buf, false);
+    }
+
+    /**
+     * 写出消息
+     *
+     * @param buf     缓冲区
+     * @param compact 是否使用紧凑编码,只能在确认接收方支持时使用,见{@link DataType#writeTo(Object, ByteBuf, boolean)}
+     */
+    void write(ByteBuf buf, boolean compact);
+
+    default int size() {
+        return size(false);
+    }
+
+    /**
+     * 计算{@link #write(ByteBuf, boolean)}写出的字节数,用于在编码前一次性分配缓冲区.
+     *
+     * @param compact 是否使用紧凑编码
+     * @return 字节数
+     */
+    int size(boolean compact);
 
     void setMessage(T message);
 
@@ -1,8 +1,9 @@
 package org.jetlinks.protocol.official.binary;
 
-import com.google.common.cache.CacheBuilder;
 import io.netty.buffer.ByteBuf;
-import lombok.SneakyThrows;
+import io.netty.buffer.ByteBufAllocator;
+import org.jetlinks.core.Value;
+import org.jetlinks.core.device.DeviceOperator;
 import org.jetlinks.core.device.DeviceThingType;
 import org.jetlinks.core.message.AcknowledgeDeviceMessage;
 import org.jetlinks.core.message.DeviceMessage;
@@ -12,9 +13,13 @@ import org.jetlinks.core.message.event.EventMessage;
 import org.jetlinks.core.message.function.FunctionInvokeMessage;
 import org.jetlinks.core.message.function.FunctionInvokeMessageReply;
 import org.jetlinks.core.message.property.*;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
@@ -44,7 +49,13 @@ public enum BinaryMessageType {
 
     functionReply(FunctionInvokeMessageReply.class, BinaryFunctionInvokeMessageReply::new),
 
-    event(EventMessage.class, BinaryEventMessage::new);
+    event(EventMessage.class, BinaryEventMessage::new),
+
+    //0x0b 批量消息,见BinaryBatchMessage
+    batch(null, null),
+
+    //0x0c 使用属性字典的属性上报,只用于设备上报,需要使用BinaryIndexedReportPropertyMessage编码
+    reportPropertyIndexed(null, BinaryIndexedReportPropertyMessage::new);
 
     private final Class<? extends DeviceMessage> forDevice;
 
@@ -52,8 +63,31 @@ public enum BinaryMessageType {
 
     private static final BinaryMessageType[] VALUES = values();
 
+    //根据消息类型查找对应的二进制消息类型,每个类型只查找一次
+    private static final ClassValue<Optional<BinaryMessageType>> TYPES = new ClassValue<Optional<BinaryMessageType>>() {
+        @Override
+        protected Optional<BinaryMessageType> computeValue(Class<?> type) {
+            for (BinaryMessageType value : VALUES) {
+                if (value.forDevice != null && value.forDevice.isAssignableFrom(type)) {
+                    return Optional.of(value);
+                }
+            }
+            return Optional.empty();
+        }
+    };
+
+    //消息类型(1)+时间戳(8)+消息序号(2)
+    private static final int HEADER_SIZE = 11;
+
     public static final HeaderKey<Integer> HEADER_MSG_SEQ = HeaderKey.of("_seq", 0, Integer.class);
 
+    /**
+     * 设备是否支持紧凑编码的配置,在产品或者设备中配置为true时平台下发的数据使用紧凑编码,默认不使用
+     *
+     * @see DataType#writeTo(Object, ByteBuf, boolean)
+     */
+    public static final String CONFIG_KEY_COMPACT = "binaryCompact";
+
 
     @SuppressWarnings("all")
     BinaryMessageType(Class<? extends DeviceMessage> forDevice,
@@ -62,50 +96,133 @@ public enum BinaryMessageType {
         this.forTcp = (Supplier) forTcp;
     }
 
-    private static final Map<String, MsgIdHolder> cache = CacheBuilder
-            .newBuilder()
-            .expireAfterWrite(Duration.ofHours(1))
-            .<String, MsgIdHolder>build()
-            .asMap();
+    /**
+     * 每个设备最多记录的未回复消息数量,默认为TCP最大未回复的指令数量(最小16),最大65536.
+     * 超过时新下发的消息不再记录消息ID,设备回复时将无法对应
+     */
+    public static final String CONFIG_KEY_SEQUENCE_CAPACITY = "jetlinks.protocol.binary.sequence-capacity";
 
-    private static class MsgIdHolder {
-        private int msgId = 0;
-        private final Map<Integer, String> cached = CacheBuilder
-                .newBuilder()
-                .expireAfterWrite(Duration.ofSeconds(30))
-                .<Integer, String>build()
-                .asMap();
+    public static final int DEFAULT_SEQUENCE_CAPACITY = 16;
 
-        public int next(String id) {
-            if (id == null) {
-                return -1;
-            }
-            do {
-                if (msgId++ < 0) {
-                    msgId = 0;
-                }
-            } while (cached.putIfAbsent(msgId, id) != null);
+    //记录下发消息的消息序号与消息ID的对应关系,消息ID有效期30秒,设备1小时没有下发消息后移除
+    private static volatile MessageSequenceTable sequences = createSequenceTable(DEFAULT_SEQUENCE_CAPACITY);
+
+    private static MessageSequenceTable createSequenceTable(int capacity) {
+        return new MessageSequenceTable(capacity, Duration.ofSeconds(30), Duration.ofHours(1))
+                .startSweeper(Duration.ofSeconds(10));
+    }
 
-            return msgId;
+    /**
+     * 设置每个设备最多记录的未回复消息数量,需要在创建编解码器前调用,修改后已记录的消息序号将失效.
+     *
+     * @param capacity 每个设备最多记录的未回复消息数量,会调整为2的幂
+     * @see #CONFIG_KEY_SEQUENCE_CAPACITY
+     */
+    public static void setSequenceCapacity(int capacity) {
+        MessageSequenceTable table = createSequenceTable(capacity);
+        if (table.getCapacity() != sequences.getCapacity()) {
+            sequences = table;
         }
+    }
 
-        public String getAndRemove(int id) {
-            if (id < 0) {
-                return null;
-            }
-            return cached.remove(id);
+    public static ByteBuf write(DeviceMessage message, ByteBuf data) {
+        int msgId = nextMsgId(message);
+        try {
+            return write(message, msgId, data);
+        } catch (Throwable error) {
+            releaseMsgId(message, msgId);
+            throw error;
         }
+    }
 
+    /**
+     * 编码消息到新分配的缓冲区,编码前先计算消息长度,只分配一次缓冲区.
+     * <p>
+     * 缓冲区前<code>reserved</code>个字节为预留字节,用于由调用者回填长度字段等信息.
+     *
+     * @param message   消息
+     * @param allocator 缓冲区分配器
+     * @param reserved  预留字节数
+     * @return 缓冲区
+     */
+    public static ByteBuf write(DeviceMessage message, ByteBufAllocator allocator, int reserved) {
+        return write(message, false, allocator, reserved);
     }
 
-    @SneakyThrows
-    private static MsgIdHolder takeHolder(String deviceId) {
-        return cache.computeIfAbsent(deviceId, (ignore) -> new MsgIdHolder());
+    public static ByteBuf write(DeviceMessage message, boolean compact, ByteBufAllocator allocator, int reserved) {
+        int msgId = nextMsgId(message);
+        try {
+            return write(message, msgId, compact, allocator, reserved);
+        } catch (Throwable error) {
+            releaseMsgId(message, msgId);
+            throw error;
+        }
     }
 
-    public static ByteBuf write(DeviceMessage message, ByteBuf data) {
-        int msgId = message.getHeaderOrElse(HEADER_MSG_SEQ, () -> takeHolder(message.getDeviceId()).next(message.getMessageId()));
-        return write(message, msgId, data);
+    public static ByteBuf write(DeviceMessage message, int msgId, ByteBufAllocator allocator, int reserved) {
+        return write(message, msgId, false, allocator, reserved);
+    }
+
+    /**
+     * 编码消息到新分配的缓冲区
+     *
+     * @param message   消息
+     * @param msgId     消息序号
+     * @param compact   是否使用紧凑编码,只有设备支持时才能使用,见{@link #isCompact(DeviceOperator)}
+     * @param allocator 缓冲区分配器
+     * @param reserved  预留字节数
+     * @return 缓冲区
+     */
+    public static ByteBuf write(DeviceMessage message, int msgId, boolean compact, ByteBufAllocator allocator, int reserved) {
+        BinaryMessageType type = lookup(message);
+        BinaryMessage<DeviceMessage> tcp = type.create(message);
+
+        ByteBuf data = allocator.buffer(reserved + HEADER_SIZE + DataType.STRING.size(message.getDeviceId()) + tcp.size(compact));
+        try {
+            data.writeZero(reserved);
+            return write(type, tcp, msgId, compact, data);
+        } catch (Throwable error) {
+            data.release();
+            throw error;
+        }
+    }
+
+    /**
+     * 获取设备是否支持紧凑编码,见{@link #CONFIG_KEY_COMPACT}
+     *
+     * @param device 设备
+     * @return 是否支持紧凑编码
+     */
+    public static Mono<Boolean> isCompact(DeviceOperator device) {
+        if (device == null) {
+            return Mono.just(false);
+        }
+        return device
+                .getConfig(CONFIG_KEY_COMPACT)
+                .map(Value::asBoolean)
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * 编码指定的二进制消息到新分配的缓冲区,用于编码需要额外信息的消息,如{@link BinaryIndexedReportPropertyMessage}.
+     *
+     * @param tcp       二进制消息
+     * @param msgId     消息序号
+     * @param allocator 缓冲区分配器
+     * @param reserved  预留字节数
+     * @return 缓冲区
+     */
+    @SuppressWarnings("all")
+    public static ByteBuf write(BinaryMessage<? extends DeviceMessage> tcp, int msgId, ByteBufAllocator allocator, int reserved) {
+        DeviceMessage message = tcp.getMessage();
+        ByteBuf data = allocator.buffer(reserved + HEADER_SIZE + DataType.STRING.size(message.getDeviceId()) + tcp.size());
+        try {
+            data.writeZero(reserved);
+            return write(tcp.getType(), (BinaryMessage) tcp, msgId, false, data);
+        } catch (Throwable error) {
+            data.release();
+            throw error;
+        }
     }
 
     public static ByteBuf write(BinaryMessageType type, ByteBuf data) {
@@ -119,25 +236,131 @@ public enum BinaryMessageType {
 
     public static ByteBuf write(DeviceMessage message, int msgId, ByteBuf data) {
         BinaryMessageType type = lookup(message);
+        return write(type, type.create(message), msgId, false, data);
+    }
+
+    private static ByteBuf write(BinaryMessageType type, BinaryMessage<DeviceMessage> tcp, int msgId, boolean compact, ByteBuf data) {
+        DeviceMessage message = tcp.getMessage();
+        writeHeader(type, message.getTimestamp(), msgId, message.getDeviceId(), data);
+
+        //写出数据到ByteBuf
+        tcp.write(data, compact);
+        return data;
+    }
+
+    private static void writeHeader(BinaryMessageType type, long timestamp, int msgId, String deviceId, ByteBuf data) {
         // 第0个字节是消息类型
         data.writeByte(type.ordinal());
         // 第1-8字节 时间戳
-        data.writeLong(message.getTimestamp());
+        data.writeLong(timestamp);
 
         // 9-11字节 消息序号
         data.writeShort(msgId);
 
         // 12... 字节 设备ID
-        DataType.STRING.write(data, message.getDeviceId());
+        DataType.STRING.write(data, deviceId);
+    }
 
-        // 创建消息对象
-        BinaryMessage<DeviceMessage> tcp = type.forTcp.get();
+    /**
+     * 将同一个设备的多条消息编码为一个批量报文,见{@link BinaryBatchMessage}.
+     *
+     * @param deviceId  设备ID
+     * @param messages  消息,时间戳相邻的消息时间差不能超过{@link Integer#MAX_VALUE}毫秒
+     * @param msgId     消息序号
+     * @param allocator 缓冲区分配器
+     * @param reserved  预留字节数
+     * @return 缓冲区
+     */
+    public static ByteBuf writeBatch(String deviceId,
+                                     List<? extends DeviceMessage> messages,
+                                     int msgId,
+                                     ByteBufAllocator allocator,
+                                     int reserved) {
+        BinaryBatchMessage tcp = new BinaryBatchMessage(messages);
+
+        ByteBuf data = allocator.buffer(reserved + HEADER_SIZE + DataType.STRING.size(deviceId) + tcp.size());
+        try {
+            data.writeZero(reserved);
+            writeHeader(batch, tcp.getTimestamp(), msgId, deviceId, data);
+            tcp.write(data);
+        } catch (Throwable error) {
+            data.release();
+            throw error;
+        }
+        return data;
+    }
+
+    private static int nextMsgId(DeviceMessage message) {
+        return message.getHeaderOrElse(HEADER_MSG_SEQ, () -> sequences.next(message.getDeviceId(), message.getMessageId()));
+    }
 
+    /**
+     * 为下发的消息分配消息序号,设备未回复的消息数量达到<code>maxInFlight</code>时返回{@link MessageSequenceTable#REJECTED},
+     * 未回复的消息在30秒后自动释放.
+     *
+     * @param message     消息
+     * @param maxInFlight 最大未回复的消息数量,最大为{@link #getSequenceCapacity()},小于等于0时为{@link #getSequenceCapacity()}
+     * @return 消息序号
+     * @see MessageSequenceTable#tryNext(String, String, int)
+     */
+    public static int nextMsgId(DeviceMessage message, int maxInFlight) {
+        return message.getHeaderOrElse(HEADER_MSG_SEQ,
+                                       () -> sequences.tryNext(message.getDeviceId(), message.getMessageId(), maxInFlight));
+    }
+
+    /**
+     * 释放通过{@link #nextMsgId(DeviceMessage, int)}分配的消息序号,如消息编码失败时,避免序号一直占用直到过期.
+     * <p>
+     * 消息头中已指定{@link #HEADER_MSG_SEQ}时,序号不是由平台分配的,不会释放.
+     *
+     * @param message 消息
+     * @param msgId   消息序号
+     */
+    public static void releaseMsgId(DeviceMessage message, int msgId) {
+        if (message.getHeader(HEADER_MSG_SEQ).isPresent()) {
+            return;
+        }
+        sequences.take(message.getDeviceId(), msgId);
+    }
+
+    /**
+     * @return 每个设备最多记录的未回复消息数量
+     * @see #CONFIG_KEY_SEQUENCE_CAPACITY
+     */
+    public static int getSequenceCapacity() {
+        return sequences.getCapacity();
+    }
+
+    /**
+     * @param deviceId 设备ID
+     * @return 设备未回复的消息数量
+     */
+    public static int inFlight(String deviceId) {
+        return sequences.inFlight(deviceId);
+    }
+
+    /**
+     * 释放设备全部未回复的消息,如设备断开连接时.
+     *
+     * @param deviceId 设备ID
+     */
+    public static void release(String deviceId) {
+        sequences.remove(deviceId);
+    }
+
+    // 创建消息对象
+    BinaryMessage<DeviceMessage> create(DeviceMessage message) {
+        BinaryMessage<DeviceMessage> tcp = forTcp.get();
         tcp.setMessage(message);
+        return tcp;
+    }
 
-        //写出数据到ByteBuf
-        tcp.write(data);
-        return data;
+    BinaryMessage<DeviceMessage> create() {
+        return forTcp == null ? null : forTcp.get();
+    }
+
+    static BinaryMessageType of(byte type) {
+        return VALUES[type];
     }
 
     public static DeviceMessage read(ByteBuf data) {
@@ -147,6 +370,13 @@ public enum BinaryMessageType {
     public static <T> T read(ByteBuf data,
                              String deviceIdMaybe,
                              BiFunction<DeviceMessage, Integer, T> handler) {
+        return read(data, deviceIdMaybe, null, handler);
+    }
+
+    private static <T> T read(ByteBuf data,
+                              String deviceIdMaybe,
+                              PropertyDictionary dictionary,
+                              BiFunction<DeviceMessage, Integer, T> handler) {
         //第0个字节是消息类型
         BinaryMessageType type = VALUES[data.readByte()];
         if (type.forTcp == null) {
@@ -158,7 +388,7 @@ public enum BinaryMessageType {
         int msgId = data.readUnsignedShort();
         // 12... 字节 设备ID
         String deviceId = (String) DataType.STRING.read(data);
-        if (deviceId == null) {
+        if (deviceId.isEmpty()) {
             deviceId = deviceIdMaybe;
         }
 
@@ -166,7 +396,7 @@ public enum BinaryMessageType {
         BinaryMessage<DeviceMessage> tcp = type.forTcp.get();
 
         //从ByteBuf读取
-        tcp.read(data);
+        tcp.read(data, dictionary);
 
         DeviceMessage message = tcp.getMessage();
         message.thingId(DeviceThingType.device, deviceId);
@@ -178,30 +408,120 @@ public enum BinaryMessageType {
         return handler.apply(message, msgId);
     }
 
+    /**
+     * 读取报文中的全部消息,批量报文返回其中的每一条消息,其他报文返回单条消息.
+     *
+     * @param data          报文
+     * @param deviceIdMaybe 报文中没有设备ID时使用的设备ID
+     * @return 消息
+     */
+    public static List<DeviceMessage> readAll(ByteBuf data, String deviceIdMaybe) {
+        return readAll(data, deviceIdMaybe, null);
+    }
+
+    /**
+     * 使用属性字典读取报文中的全部消息
+     *
+     * @param data          报文
+     * @param deviceIdMaybe 报文中没有设备ID时使用的设备ID
+     * @param dictionary    属性字典
+     * @return 消息
+     * @see #isDictionaryRequired(ByteBuf)
+     */
+    public static List<DeviceMessage> readAll(ByteBuf data, String deviceIdMaybe, PropertyDictionary dictionary) {
+        if (data.getByte(data.readerIndex()) != batch.ordinal()) {
+            DeviceMessage message = read(data, deviceIdMaybe, dictionary, BinaryMessageType::resolveMessageId);
+            return message == null ? Collections.emptyList() : Collections.singletonList(message);
+        }
+        data.skipBytes(1);
+        long timestamp = data.readLong();
+        int msgId = data.readUnsignedShort();
+        String deviceId = (String) DataType.STRING.read(data);
+        if (deviceId.isEmpty()) {
+            deviceId = deviceIdMaybe;
+        }
+        return BinaryBatchMessage.read(data, deviceId, timestamp, msgId, dictionary);
+    }
+
+    /**
+     * 判断报文是否可能需要属性字典才能读取,不会修改读取位置.
+     *
+     * @param data 报文
+     * @return 是否需要属性字典
+     */
+    public static boolean isDictionaryRequired(ByteBuf data) {
+        byte type = data.getByte(data.readerIndex());
+        return type == reportPropertyIndexed.ordinal() || type == batch.ordinal();
+    }
+
+    /**
+     * 获取报文中的设备ID,不会修改读取位置.
+     *
+     * @param data 报文
+     * @return 设备ID
+     */
+    public static String peekDeviceId(ByteBuf data) {
+        int index = data.readerIndex() + HEADER_SIZE;
+        int len = data.getUnsignedShort(index);
+        return data.toString(index + 2, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 获取报文头中的消息序号,不会修改读取位置.
+     *
+     * @param data 报文
+     * @return 消息序号
+     */
+    public static int peekMsgId(ByteBuf data) {
+        return data.getUnsignedShort(data.readerIndex() + 9);
+    }
+
+    /**
+     * 获取属性字典,设备未配置物模型时返回错误,避免需要属性字典的报文被忽略.
+     *
+     * @param device 设备
+     * @return 属性字典
+     */
+    public static Mono<PropertyDictionary> getDictionary(DeviceOperator device) {
+        return device
+                .getMetadata()
+                .map(PropertyDictionary::of)
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException(
+                        "device [" + device.getDeviceId() + "] has no metadata, can not read indexed properties")));
+    }
+
+    /**
+     * 获取报文头中的时间戳,不会修改读取位置.
+     *
+     * @param data 报文
+     * @return 时间戳
+     */
+    public static long peekTimestamp(ByteBuf data) {
+        return data.getLong(data.readerIndex() + 1);
+    }
+
     public static DeviceMessage read(ByteBuf data, String deviceIdMaybe) {
-        return read(data, deviceIdMaybe, (message, msgId) -> {
-            String messageId = null;
-            if (message.getDeviceId() != null) {
-                //获取实际平台下发的消息ID
-                MsgIdHolder holder = cache.get(message.getDeviceId());
-                if (holder != null) {
-                    messageId = holder.getAndRemove(msgId);
-                }
-            }
+        return read(data, deviceIdMaybe, BinaryMessageType::resolveMessageId);
+    }
 
-            if (messageId == null && msgId > 0) {
-                messageId = String.valueOf(msgId);
-            }
-            message.messageId(messageId);
-            return message;
-        });
+    private static DeviceMessage resolveMessageId(DeviceMessage message, int msgId) {
+        String messageId = null;
+        if (message.getDeviceId() != null) {
+            //获取实际平台下发的消息ID
+            messageId = sequences.take(message.getDeviceId(), msgId);
+        }
+
+        if (messageId == null && msgId > 0) {
+            messageId = String.valueOf(msgId);
+        }
+        message.messageId(messageId);
+        return message;
     }
 
     public static BinaryMessageType lookup(DeviceMessage message) {
-        for (BinaryMessageType value : VALUES) {
-            if (value.forDevice != null && value.forDevice.isInstance(message)) {
-                return value;
-            }
+        Optional<BinaryMessageType> type = TYPES.get(message.getClass());
+        if (type.isPresent()) {
+            return type.get();
         }
         throw new UnsupportedOperationException("unsupported device message " + message.getMessageType());
     }
@@ -33,8 +33,13 @@ public class BinaryReadPropertyMessage implements BinaryMessage<ReadPropertyMess
     }
 
     @Override
-    public void write(ByteBuf buf) {
-        DataType.ARRAY.write(buf, message.getProperties());
+    public void write(ByteBuf buf, boolean compact) {
+        DataType.ARRAY.write(buf, message.getProperties(), compact);
+    }
+
+    @Override
+    public int size(boolean compact) {
+        return DataType.ARRAY.size(message.getProperties(), compact);
     }
 
     @Override
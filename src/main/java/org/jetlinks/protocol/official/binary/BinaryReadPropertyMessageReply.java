@@ -25,8 +25,13 @@ public class BinaryReadPropertyMessageReply extends BinaryReplyMessage<ReadPrope
     }
 
     @Override
-    protected void doWriteSuccess(ReadPropertyMessageReply msg, ByteBuf buf) {
-        DataType.OBJECT.write(buf, msg.getProperties());
+    protected void doWriteSuccess(ReadPropertyMessageReply msg, ByteBuf buf, boolean compact) {
+        DataType.OBJECT.write(buf, msg.getProperties(), compact);
+    }
+
+    @Override
+    protected int doSizeSuccess(ReadPropertyMessageReply msg, boolean compact) {
+        return DataType.OBJECT.size(msg.getProperties(), compact);
     }
 
     @Override
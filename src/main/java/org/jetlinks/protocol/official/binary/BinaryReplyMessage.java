@@ -26,18 +26,28 @@ public abstract class BinaryReplyMessage<T extends DeviceMessageReply> implement
 
     protected abstract void doReadSuccess(T msg, ByteBuf buf);
 
-    protected abstract void doWriteSuccess(T msg, ByteBuf buf);
+    protected abstract void doWriteSuccess(T msg, ByteBuf buf, boolean compact);
+
+    protected abstract int doSizeSuccess(T msg, boolean compact);
 
     @Override
-    public final void write(ByteBuf buf) {
+    public final void write(ByteBuf buf, boolean compact) {
         buf.writeBoolean(message.isSuccess());
 
         if (message.isSuccess()) {
-            doWriteSuccess(message, buf);
+            doWriteSuccess(message, buf, compact);
         } else {
-            DataType.writeTo(message.getCode(), buf);
-            DataType.writeTo(message.getMessage(), buf);
+            DataType.writeTo(message.getCode(), buf, compact);
+            DataType.writeTo(message.getMessage(), buf, compact);
+        }
+    }
+
+    @Override
+    public final int size(boolean compact) {
+        if (message.isSuccess()) {
+            return 1 + doSizeSuccess(message, compact);
         }
+        return 1 + DataType.sizeOf(message.getCode(), compact) + DataType.sizeOf(message.getMessage(), compact);
     }
 
     @Override
@@ -5,7 +5,6 @@ import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import org.jetlinks.core.message.property.ReportPropertyMessage;
 
-import java.util.Map;
 
 /**
  * @author zhouhao
@@ -25,14 +24,18 @@ public class BinaryReportPropertyMessage implements BinaryMessage<ReportProperty
     @Override
     public void read(ByteBuf buf) {
         message = new ReportPropertyMessage();
-        @SuppressWarnings("all")
-        Map<String, Object> map = (Map<String, Object>) DataType.OBJECT.read(buf);
-        message.setProperties(map);
+        //属性值使用原始类型存储,避免装箱
+        message.setProperties(PropertiesVisitor.read(buf));
     }
 
     @Override
-    public void write(ByteBuf buf) {
-        DataType.OBJECT.write(buf, message.getProperties());
+    public void write(ByteBuf buf, boolean compact) {
+        DataType.OBJECT.write(buf, message.getProperties(), compact);
+    }
+
+    @Override
+    public int size(boolean compact) {
+        return DataType.OBJECT.size(message.getProperties(), compact);
     }
 
     @Override
@@ -32,8 +32,13 @@ public class BinaryWritePropertyMessage implements BinaryMessage<WritePropertyMe
     }
 
     @Override
-    public void write(ByteBuf buf) {
-        DataType.OBJECT.write(buf, message.getProperties());
+    public void write(ByteBuf buf, boolean compact) {
+        DataType.OBJECT.write(buf, message.getProperties(), compact);
+    }
+
+    @Override
+    public int size(boolean compact) {
+        return DataType.OBJECT.size(message.getProperties(), compact);
     }
 
     @Override
@@ -32,8 +32,13 @@ public class BinaryWritePropertyMessageReply extends BinaryReplyMessage<WritePro
     }
 
     @Override
-    protected void doWriteSuccess(WritePropertyMessageReply msg, ByteBuf buf) {
-        DataType.OBJECT.write(buf, msg.getProperties());
+    protected void doWriteSuccess(WritePropertyMessageReply msg, ByteBuf buf, boolean compact) {
+        DataType.OBJECT.write(buf, msg.getProperties(), compact);
+    }
+
+    @Override
+    protected int doSizeSuccess(WritePropertyMessageReply msg, boolean compact) {
+        return DataType.OBJECT.size(msg.getProperties(), compact);
     }
 
 
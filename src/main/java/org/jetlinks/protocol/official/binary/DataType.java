@@ -2,6 +2,7 @@ package org.jetlinks.protocol.official.binary;
 
 import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import org.jetlinks.protocol.official.ObjectMappers;
 
@@ -19,10 +20,20 @@ public enum DataType {
             return null;
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onNull();
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
 
         }
+
+        @Override
+        public int size(Object value) {
+            return 0;
+        }
     },
     //0x01
     BOOLEAN {
@@ -31,10 +42,20 @@ public enum DataType {
             return buf.readBoolean();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onBoolean(buf.readBoolean());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeBoolean((Boolean) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 1;
+        }
     },
     //0x02
     INT8 {
@@ -43,10 +64,20 @@ public enum DataType {
             return buf.readByte();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onInt8(buf.readByte());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeByte((Byte) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 1;
+        }
     },
     //0x03
     INT16 {
@@ -55,10 +86,20 @@ public enum DataType {
             return buf.readShort();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onInt16(buf.readShort());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeShort((Short) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 2;
+        }
     },
     //0x04
     INT32 {
@@ -67,10 +108,20 @@ public enum DataType {
             return buf.readInt();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onInt32(buf.readInt());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeInt((Integer) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 4;
+        }
     },
     //0x05
     INT64 {
@@ -79,10 +130,20 @@ public enum DataType {
             return buf.readLong();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onInt64(buf.readLong());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeLong((Long) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 8;
+        }
     },
     //0x06
     UINT8 {
@@ -91,10 +152,20 @@ public enum DataType {
             return buf.readUnsignedByte();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onUInt8(buf.readUnsignedByte());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeByte((Byte) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 1;
+        }
     },
     //0x07
     UINT16 {
@@ -103,10 +174,20 @@ public enum DataType {
             return buf.readUnsignedShort();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onUInt16(buf.readUnsignedShort());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeShort((Short) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 2;
+        }
     },
     //0x08
     UINT32 {
@@ -115,10 +196,20 @@ public enum DataType {
             return buf.readUnsignedInt();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onUInt32(buf.readUnsignedInt());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeInt((Integer) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 4;
+        }
     },
     //0x09
     FLOAT {
@@ -127,10 +218,20 @@ public enum DataType {
             return buf.readFloat();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onFloat(buf.readFloat());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeFloat((Float) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 4;
+        }
     },
     //0x0A
     DOUBLE {
@@ -139,10 +240,20 @@ public enum DataType {
             return buf.readDouble();
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onDouble(buf.readDouble());
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             buf.writeDouble((Double) value);
         }
+
+        @Override
+        public int size(Object value) {
+            return 8;
+        }
     },
     //0x0B
     STRING {
@@ -154,12 +265,23 @@ public enum DataType {
             return new String(bytes, StandardCharsets.UTF_8);
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onString((String) read(buf));
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
+            //先占用长度字段,写出后再回填,避免创建byte数组
+            int index = buf.writerIndex();
+            buf.writeShort(0);
+            int len = ByteBufUtil.writeUtf8(buf, (String) value);
+            buf.setShort(index, len);
+        }
 
-            byte[] bytes = ((String) value).getBytes();
-            buf.writeShort(bytes.length);
-            buf.writeBytes(bytes);
+        @Override
+        public int size(Object value) {
+            return 2 + ByteBufUtil.utf8Bytes((String) value);
         }
     },
     //0x0C
@@ -172,12 +294,23 @@ public enum DataType {
             return bytes;
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            int len = buf.readUnsignedShort();
+            visitor.onBinary(buf.readSlice(len));
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
             byte[] bytes = (byte[]) value;
             buf.writeShort(bytes.length);
             buf.writeBytes(bytes);
         }
+
+        @Override
+        public int size(Object value) {
+            return 2 + ((byte[]) value).length;
+        }
     },
     //0x0D
     ARRAY {
@@ -191,13 +324,42 @@ public enum DataType {
             return array;
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            int len = buf.readUnsignedShort();
+            visitor.onArrayStart(len);
+            for (int i = 0; i < len; i++) {
+                readFrom(buf, visitor);
+            }
+            visitor.onArrayEnd();
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
+            write(buf, value, false);
+        }
+
+        @Override
+        void write(ByteBuf buf, Object value, boolean compact) {
             Collection<Object> array = (Collection<Object>) value;
             buf.writeShort(array.size());
             for (Object o : array) {
-                writeTo(o, buf);
+                writeTo(o, buf, compact);
+            }
+        }
+
+        @Override
+        public int size(Object value) {
+            return size(value, false);
+        }
+
+        @Override
+        int size(Object value, boolean compact) {
+            int size = 2;
+            for (Object o : (Collection<Object>) value) {
+                size += sizeOf(o, compact);
             }
+            return size;
         }
     },
     //0x0E
@@ -212,35 +374,357 @@ public enum DataType {
             return data;
         }
 
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            int len = buf.readUnsignedShort();
+            visitor.onObjectStart(len);
+            for (int i = 0; i < len; i++) {
+                visitor.onKey((String) STRING.read(buf));
+                readFrom(buf, visitor);
+            }
+            visitor.onObjectEnd();
+        }
+
         @Override
         public void write(ByteBuf buf, Object value) {
-            Map<String, Object> data = value instanceof Map ? ((Map) value) : ObjectMappers.JSON_MAPPER.convertValue(value, Map.class);
+            write(buf, value, false);
+        }
+
+        @Override
+        void write(ByteBuf buf, Object value, boolean compact) {
+            Map<String, Object> data = toMap(value);
             buf.writeShort(data.size());
 
             for (Map.Entry<String, Object> entry : data.entrySet()) {
                 STRING.write(buf, entry.getKey());
-                writeTo(entry.getValue(), buf);
+                writeTo(entry.getValue(), buf, compact);
             }
         }
+
+        @Override
+        public int size(Object value) {
+            return size(value, false);
+        }
+
+        @Override
+        int size(Object value, boolean compact) {
+            int size = 2;
+            for (Map.Entry<String, Object> entry : toMap(value).entrySet()) {
+                size += STRING.size(entry.getKey()) + sizeOf(entry.getValue(), compact);
+            }
+            return size;
+        }
+    },
+    //以下为紧凑编码,见writeTo(Object, ByteBuf, boolean)
+    //0x0F 使用zig-zag编码的变长int
+    VARINT32 {
+        @Override
+        public Object read(ByteBuf buf) {
+            return decodeZigZag(readVarInt(buf));
+        }
+
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onInt32(decodeZigZag(readVarInt(buf)));
+        }
+
+        @Override
+        public void write(ByteBuf buf, Object value) {
+            writeVarInt(buf, encodeZigZag((Integer) value));
+        }
+
+        @Override
+        public int size(Object value) {
+            return varIntSize(encodeZigZag((Integer) value));
+        }
+    },
+    //0x10 使用zig-zag编码的变长long
+    VARINT64 {
+        @Override
+        public Object read(ByteBuf buf) {
+            return decodeZigZag(readVarLong(buf));
+        }
+
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onInt64(decodeZigZag(readVarLong(buf)));
+        }
+
+        @Override
+        public void write(ByteBuf buf, Object value) {
+            writeVarLong(buf, encodeZigZag((Long) value));
+        }
+
+        @Override
+        public int size(Object value) {
+            return varLongSize(encodeZigZag((Long) value));
+        }
+    },
+    //0x11 2字节 IEEE 754半精度浮点数,只用于可以无损转换的float
+    FLOAT16 {
+        @Override
+        public Object read(ByteBuf buf) {
+            return halfToFloat(buf.readUnsignedShort());
+        }
+
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onFloat(halfToFloat(buf.readUnsignedShort()));
+        }
+
+        @Override
+        public void write(ByteBuf buf, Object value) {
+            buf.writeShort(floatToHalf((Float) value));
+        }
+
+        @Override
+        public int size(Object value) {
+            return 2;
+        }
+    },
+    //0x12 长度为变长整型的STRING
+    VSTRING {
+        @Override
+        public Object read(ByteBuf buf) {
+            return readVarString(buf);
+        }
+
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onString(readVarString(buf));
+        }
+
+        @Override
+        public void write(ByteBuf buf, Object value) {
+            writeVarString(buf, (String) value);
+        }
+
+        @Override
+        public int size(Object value) {
+            return varStringSize((String) value);
+        }
+    },
+    //0x13 长度为变长整型的BINARY
+    VBINARY {
+        @Override
+        public Object read(ByteBuf buf) {
+            byte[] bytes = new byte[readVarInt(buf)];
+            buf.readBytes(bytes);
+            return bytes;
+        }
+
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            visitor.onBinary(buf.readSlice(readVarInt(buf)));
+        }
+
+        @Override
+        public void write(ByteBuf buf, Object value) {
+            byte[] bytes = (byte[]) value;
+            writeVarInt(buf, bytes.length);
+            buf.writeBytes(bytes);
+        }
+
+        @Override
+        public int size(Object value) {
+            int len = ((byte[]) value).length;
+            return varIntSize(len) + len;
+        }
+    },
+    //0x14 长度为变长整型的ARRAY
+    VARRAY {
+        @Override
+        public Object read(ByteBuf buf) {
+            int len = readVarInt(buf);
+            List<Object> array = new ArrayList<>(len);
+            for (int i = 0; i < len; i++) {
+                array.add(readFrom(buf));
+            }
+            return array;
+        }
+
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            int len = readVarInt(buf);
+            visitor.onArrayStart(len);
+            for (int i = 0; i < len; i++) {
+                readFrom(buf, visitor);
+            }
+            visitor.onArrayEnd();
+        }
+
+        @Override
+        public void write(ByteBuf buf, Object value) {
+            write(buf, value, true);
+        }
+
+        @Override
+        void write(ByteBuf buf, Object value, boolean compact) {
+            Collection<Object> array = (Collection<Object>) value;
+            writeVarInt(buf, array.size());
+            for (Object o : array) {
+                writeTo(o, buf, compact);
+            }
+        }
+
+        @Override
+        public int size(Object value) {
+            return size(value, true);
+        }
+
+        @Override
+        int size(Object value, boolean compact) {
+            Collection<Object> array = (Collection<Object>) value;
+            int size = varIntSize(array.size());
+            for (Object o : array) {
+                size += sizeOf(o, compact);
+            }
+            return size;
+        }
+    },
+    //0x15 长度为变长整型的OBJECT,key使用VSTRING编码(不包含类型标识)
+    VOBJECT {
+        @Override
+        public Object read(ByteBuf buf) {
+            int len = readVarInt(buf);
+            Map<String, Object> data = Maps.newLinkedHashMapWithExpectedSize(len);
+            for (int i = 0; i < len; i++) {
+                data.put(readVarString(buf), readFrom(buf));
+            }
+            return data;
+        }
+
+        @Override
+        public void read(ByteBuf buf, DataTypeVisitor visitor) {
+            int len = readVarInt(buf);
+            visitor.onObjectStart(len);
+            for (int i = 0; i < len; i++) {
+                visitor.onKey(readVarString(buf));
+                readFrom(buf, visitor);
+            }
+            visitor.onObjectEnd();
+        }
+
+        @Override
+        public void write(ByteBuf buf, Object value) {
+            write(buf, value, true);
+        }
+
+        @Override
+        void write(ByteBuf buf, Object value, boolean compact) {
+            Map<String, Object> data = toMap(value);
+            writeVarInt(buf, data.size());
+            for (Map.Entry<String, Object> entry : data.entrySet()) {
+                writeVarString(buf, entry.getKey());
+                writeTo(entry.getValue(), buf, compact);
+            }
+        }
+
+        @Override
+        public int size(Object value) {
+            return size(value, true);
+        }
+
+        @Override
+        int size(Object value, boolean compact) {
+            Map<String, Object> data = toMap(value);
+            int size = varIntSize(data.size());
+            for (Map.Entry<String, Object> entry : data.entrySet()) {
+                size += varStringSize(entry.getKey()) + sizeOf(entry.getValue(), compact);
+            }
+            return size;
+        }
     };
 
+    //变长长度字段1个字节可以表示的最大值
+    private static final int VAR_LENGTH_1 = 0x7F;
+
     private final static DataType[] VALUES = values();
 
     public abstract Object read(ByteBuf buf);
 
+    /**
+     * 流式读取数据,数值类型不会被装箱
+     *
+     * @param buf     数据
+     * @param visitor 访问器
+     */
+    public abstract void read(ByteBuf buf, DataTypeVisitor visitor);
+
     public abstract void write(ByteBuf buf, Object value);
 
+    /**
+     * 计算写出数据需要的字节数,不包含类型标识,用于在编码前一次性分配缓冲区.
+     *
+     * @param value 数据
+     * @return 字节数
+     */
+    public abstract int size(Object value);
+
+    //写出数据,数组和对象中的元素根据compact选择编码方式
+    void write(ByteBuf buf, Object value, boolean compact) {
+        write(buf, value);
+    }
+
+    int size(Object value, boolean compact) {
+        return size(value);
+    }
+
     public static Object readFrom(ByteBuf buf) {
         return VALUES[buf.readUnsignedByte()].read(buf);
     }
 
+    /**
+     * 流式读取带类型的数据,数值类型不会被装箱,对象和数组也不会被构造为Map和List.
+     *
+     * @param buf     数据
+     * @param visitor 访问器
+     */
+    public static void readFrom(ByteBuf buf, DataTypeVisitor visitor) {
+        VALUES[buf.readUnsignedByte()].read(buf, visitor);
+    }
+
     public static void writeTo(Object data, ByteBuf buf) {
-        DataType type = loopUpType(data);
+        writeTo(data, buf, false);
+    }
+
+    /**
+     * 写出带类型的数据
+     * <p>
+     * 使用紧凑编码时根据数据的大小自动选择更短的编码,如较小的整数使用{@link #VARINT32},
+     * 可以无损转换的float使用{@link #FLOAT16},长度小于128的字符串,数组,对象使用变长的长度字段.
+     * 读取时始终支持全部类型,但是不支持紧凑编码的设备无法读取,因此平台下发时只有设备配置了支持紧凑编码才会使用.
+     *
+     * @param data    数据
+     * @param buf     缓冲区
+     * @param compact 是否使用紧凑编码
+     */
+    public static void writeTo(Object data, ByteBuf buf, boolean compact) {
+        DataType type = loopUpType(data, compact);
         buf.writeByte(type.ordinal());
-        type.write(buf, data);
+        type.write(buf, data, compact);
+    }
+
+    /**
+     * 计算使用{@link #writeTo(Object, ByteBuf)}写出数据需要的字节数,包含类型标识.
+     *
+     * @param data 数据
+     * @return 字节数
+     */
+    public static int sizeOf(Object data) {
+        return sizeOf(data, false);
     }
 
-    private static DataType loopUpType(Object data) {
+    public static int sizeOf(Object data, boolean compact) {
+        return 1 + loopUpType(data, compact).size(data, compact);
+    }
+
+    @SuppressWarnings("all")
+    private static Map<String, Object> toMap(Object value) {
+        return value instanceof Map ? ((Map) value) : ObjectMappers.JSON_MAPPER.convertValue(value, Map.class);
+    }
+
+    private static DataType loopUpType(Object data, boolean compact) {
         if (data == null) {
             return NULL;
         } else if (data instanceof Boolean) {
@@ -250,32 +734,187 @@ public enum DataType {
         } else if (data instanceof Short) {
             return INT16;
         } else if (data instanceof Integer) {
-            return INT32;
+            //小于4个字节时使用变长编码
+            return compact && varIntSize(encodeZigZag((Integer) data)) < 4 ? VARINT32 : INT32;
         } else if (data instanceof Long) {
-            return INT64;
+            return compact && varLongSize(encodeZigZag((Long) data)) < 8 ? VARINT64 : INT64;
         } else if (data instanceof Float) {
-            return FLOAT;
+            return compact && floatToHalf((Float) data) >= 0 ? FLOAT16 : FLOAT;
         } else if (data instanceof Double) {
             return DOUBLE;
         } else if (data instanceof String) {
-            return STRING;
+            return compact && isShortString((String) data) ? VSTRING : STRING;
         } else if (data instanceof byte[]) {
-            return BINARY;
+            return compact && isShortLength(((byte[]) data).length) ? VBINARY : BINARY;
         } else if (data instanceof Collection) {
-            return ARRAY;
+            return compact && isShortLength(((Collection<?>) data).size()) ? VARRAY : ARRAY;
         } else if (data instanceof Map) {
-            return OBJECT;
+            return compact && isShortLength(((Map<?, ?>) data).size()) ? VOBJECT : OBJECT;
         } else {
             throw new IllegalArgumentException("Unsupported data type: " + data.getClass());
         }
     }
 
+    //变长长度字段比2字节的长度字段更短,或者超过了2字节的长度
+    private static boolean isShortLength(int length) {
+        return length <= VAR_LENGTH_1 || length > 0xFFFF;
+    }
+
+    private static boolean isShortString(String value) {
+        int len = value.length();
+        //每个字符最多3个字节,较短的字符串不需要计算UTF-8长度
+        if (len <= VAR_LENGTH_1 / 3) {
+            return true;
+        }
+        if (len <= VAR_LENGTH_1 || len > 0xFFFF / 3) {
+            return isShortLength(ByteBufUtil.utf8Bytes(value));
+        }
+        return false;
+    }
+
+    static int encodeZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int decodeZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 写出无符号变长整型,每个字节低7位为数据,最高位为1表示后续还有字节.
+     */
+    static void writeVarInt(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    static int readVarInt(ByteBuf buf) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buf.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    static int varIntSize(int value) {
+        return (38 - Integer.numberOfLeadingZeros(value | 1)) / 7;
+    }
+
+    static void writeVarLong(ByteBuf buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+
+    static long readVarLong(ByteBuf buf) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    static int varLongSize(long value) {
+        return (70 - Long.numberOfLeadingZeros(value | 1)) / 7;
+    }
+
+    static String readVarString(ByteBuf buf) {
+        int len = readVarInt(buf);
+        byte[] bytes = new byte[len];
+        buf.readBytes(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarString(ByteBuf buf, String value) {
+        if (value.length() <= VAR_LENGTH_1 / 3) {
+            //长度只占1个字节,先占用长度字段,写出后再回填
+            int index = buf.writerIndex();
+            buf.writeByte(0);
+            buf.setByte(index, ByteBufUtil.writeUtf8(buf, value));
+        } else {
+            writeVarInt(buf, ByteBufUtil.utf8Bytes(value));
+            ByteBufUtil.writeUtf8(buf, value);
+        }
+    }
+
+    static int varStringSize(String value) {
+        int len = ByteBufUtil.utf8Bytes(value);
+        return varIntSize(len) + len;
+    }
+
+    static float halfToFloat(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0) {
+            //0或者非规格化数
+            float value = mantissa * 0x1p-24F;
+            return sign == 0 ? value : -value;
+        }
+        if (exponent == 0x1F) {
+            //无穷大或者NaN
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * 转换为半精度浮点数
+     *
+     * @param value float
+     * @return 半精度浮点数, 不能无损转换时返回-1
+     */
+    static int floatToHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent == 0xFF) {
+            return mantissa == 0 ? sign | 0x7C00 : 0x7E00;
+        }
+        if (exponent == 0 && mantissa == 0) {
+            return sign;
+        }
+        int halfExponent = exponent - 112;
+        if (halfExponent >= 0x1F || halfExponent < -10) {
+            return -1;
+        }
+        if (halfExponent <= 0) {
+            //非规格化数
+            int shift = 14 - halfExponent;
+            mantissa |= 0x800000;
+            return (mantissa & ((1 << shift) - 1)) == 0 ? sign | (mantissa >>> shift) : -1;
+        }
+        return (mantissa & 0x1FFF) == 0 ? sign | (halfExponent << 10) | (mantissa >>> 13) : -1;
+    }
+
     public static void main(String[] args) {
         System.out.println("| Byte | Type |");
         System.out.println("|  ----  | ----  |");
         for (DataType value : DataType.values()) {
             System.out.print("|");
-            System.out.print("0x0"+Integer.toString(value.ordinal(),16));
+            System.out.print("0x"+(value.ordinal() < 16 ? "0" : "")+Integer.toString(value.ordinal(),16));
             System.out.print("|");
             System.out.print(value.name());
             System.out.print("|");
@@ -0,0 +1,57 @@
+package org.jetlinks.protocol.official.binary;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 流式读取{@link DataType}编码的数据,读取过程中按顺序回调对应的方法,数值类型不会被装箱.
+ * <p>
+ * 对象的读取顺序为: onObjectStart,[onKey,值]...,onObjectEnd;
+ * 数组的读取顺序为: onArrayStart,[值]...,onArrayEnd.
+ *
+ * @author zhouhao
+ * @see DataType#readFrom(ByteBuf, DataTypeVisitor)
+ * @since 3.0.0
+ */
+public interface DataTypeVisitor {
+
+    void onNull();
+
+    void onBoolean(boolean value);
+
+    void onInt8(byte value);
+
+    void onInt16(short value);
+
+    void onInt32(int value);
+
+    void onInt64(long value);
+
+    void onUInt8(short value);
+
+    void onUInt16(int value);
+
+    void onUInt32(long value);
+
+    void onFloat(float value);
+
+    void onDouble(double value);
+
+    void onString(String value);
+
+    /**
+     * 读取到二进制数据
+     *
+     * @param value 与原始报文共享内存的数据,只在回调中有效
+     */
+    void onBinary(ByteBuf value);
+
+    void onArrayStart(int size);
+
+    void onArrayEnd();
+
+    void onObjectStart(int size);
+
+    void onKey(String key);
+
+    void onObjectEnd();
+}
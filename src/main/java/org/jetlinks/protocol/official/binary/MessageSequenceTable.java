@@ -0,0 +1,313 @@
+package org.jetlinks.protocol.official.binary;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 记录平台下发消息的消息序号与消息ID的对应关系,用于在设备回复时获取原始的消息ID.
+ * <p>
+ * 每个设备使用一个固定大小的环形表,消息序号对表大小取模作为下标,每个位置使用一个long同时记录过期时间和消息序号,
+ * 分配和查找消息序号都不需要加锁.未过期的记录不会被覆盖,当表中的位置都在使用中时,{@link #next(String, String)}不再记录新的消息ID,
+ * {@link #tryNext(String, String, int)}则限制每个设备未回复的消息数量,超过限制时返回{@link #REJECTED},由调用者进行背压处理.
+ * <p>
+ * 过期的记录以及长时间没有下发消息的设备由全局的清理线程定时清理,见{@link #startSweeper(Duration)}.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class MessageSequenceTable {
+
+    //消息序号为16位无符号整数,0表示不记录消息ID
+    public static final int MAX_SEQUENCE = 0xFFFF;
+
+    //未回复的消息数量达到限制
+    public static final int REJECTED = -1;
+
+    private static final long EMPTY = 0, LOCKED = -1;
+
+    //全局的清理线程
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jetlinks-message-sequence-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Ring> devices = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    //可以使用的位置数量,消息序号不会为0,表大小为65536时下标0的位置无法使用
+    private final int usable;
+
+    private final long timeout;
+
+    private final long idleTimeout;
+
+    private final LongSupplier clock;
+
+    /**
+     * @param capacity    每个设备最多记录的消息数量,会调整为2的幂
+     * @param timeout     消息ID的有效期
+     * @param idleTimeout 设备多久没有下发消息后移除设备的记录
+     */
+    public MessageSequenceTable(int capacity, Duration timeout, Duration idleTimeout) {
+        this(capacity, timeout.toMillis(), idleTimeout.toMillis(), System::currentTimeMillis);
+    }
+
+    MessageSequenceTable(int capacity, long timeout, long idleTimeout, LongSupplier clock) {
+        if (capacity <= 0 || capacity > MAX_SEQUENCE + 1) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + (MAX_SEQUENCE + 1));
+        }
+        int size = Integer.highestOneBit(capacity);
+        this.capacity = size == capacity ? size : size << 1;
+        this.usable = Math.min(this.capacity, MAX_SEQUENCE);
+        this.timeout = timeout;
+        this.idleTimeout = idleTimeout;
+        this.clock = clock;
+    }
+
+    /**
+     * 使用全局的清理线程定时清理过期的记录,清理任务不会阻止当前对象被回收.
+     *
+     * @param interval 清理间隔
+     * @return this
+     */
+    public MessageSequenceTable startSweeper(Duration interval) {
+        Sweeper sweeper = new Sweeper(this);
+        sweeper.future = SWEEPER.scheduleWithFixedDelay(sweeper, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * 为下发给设备的消息分配消息序号并记录消息ID.
+     *
+     * @param deviceId  设备ID
+     * @param messageId 消息ID
+     * @return 消息序号, 消息ID为<code>null</code>或者表中的位置都在使用中时返回0
+     */
+    public int next(String deviceId, String messageId) {
+        int seq = tryNext(deviceId, messageId, 0);
+        return seq == REJECTED ? 0 : seq;
+    }
+
+    /**
+     * 为下发给设备的消息分配消息序号并记录消息ID,设备未回复的消息数量达到<code>maxInFlight</code>时返回{@link #REJECTED}.
+     * <p>
+     * 未回复的消息超过有效期后将自动释放占用的位置.
+     *
+     * @param deviceId    设备ID
+     * @param messageId   消息ID
+     * @param maxInFlight 最大未回复的消息数量,不能超过表中可以使用的位置数量,小于等于0时为表中可以使用的位置数量
+     * @return 消息序号, 消息ID为<code>null</code>时返回0
+     */
+    public int tryNext(String deviceId, String messageId, int maxInFlight) {
+        if (messageId == null) {
+            return 0;
+        }
+        long now = clock.getAsLong();
+        return devices
+                .computeIfAbsent(deviceId, ignore -> new Ring(capacity, now))
+                .next(messageId, now, now + timeout, maxInFlight <= 0 ? usable : Math.min(maxInFlight, usable));
+    }
+
+    /**
+     * @return 每个设备最多记录的消息数量
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 获取设备未回复的消息数量,包含已过期但还未清理的消息
+     *
+     * @param deviceId 设备ID
+     * @return 未回复的消息数量
+     */
+    public int inFlight(String deviceId) {
+        Ring ring = devices.get(deviceId);
+        return ring == null ? 0 : ring.used;
+    }
+
+    /**
+     * 移除设备的全部记录,如设备断开连接时.
+     *
+     * @param deviceId 设备ID
+     */
+    public void remove(String deviceId) {
+        devices.remove(deviceId);
+    }
+
+    /**
+     * 获取并移除消息序号对应的消息ID.
+     *
+     * @param deviceId 设备ID
+     * @param sequence 消息序号
+     * @return 消息ID, 不存在或者已过期时返回<code>null</code>
+     */
+    public String take(String deviceId, int sequence) {
+        if (sequence <= 0 || sequence > MAX_SEQUENCE) {
+            return null;
+        }
+        Ring ring = devices.get(deviceId);
+        return ring == null ? null : ring.take(sequence, clock.getAsLong());
+    }
+
+    /**
+     * 清理过期的记录以及长时间没有下发消息的设备
+     */
+    public void sweep() {
+        long now = clock.getAsLong();
+        for (Map.Entry<String, Ring> entry : devices.entrySet()) {
+            Ring ring = entry.getValue();
+            //移除时如果有并发的下发,该消息回复时将无法获取到原始的消息ID,设备已长时间没有下发消息,可以忽略
+            if (ring.lastWrite + idleTimeout <= now) {
+                devices.remove(entry.getKey(), ring);
+            } else {
+                ring.sweep(now);
+            }
+        }
+    }
+
+    /**
+     * @return 当前记录的设备数量
+     */
+    public int size() {
+        return devices.size();
+    }
+
+    private static long expireAt(long state) {
+        return state >>> 16;
+    }
+
+    private static class Ring {
+        private static final AtomicIntegerFieldUpdater<Ring> SEQUENCE =
+                AtomicIntegerFieldUpdater.newUpdater(Ring.class, "sequence");
+        private static final AtomicIntegerFieldUpdater<Ring> USED =
+                AtomicIntegerFieldUpdater.newUpdater(Ring.class, "used");
+
+        //高48位为过期时间,低16位为消息序号
+        private final AtomicLongArray states;
+        private final AtomicReferenceArray<String> messageIds;
+
+        private volatile int sequence;
+        //使用中的位置数量
+        private volatile int used;
+        private volatile long lastWrite;
+
+        private Ring(int capacity, long now) {
+            this.states = new AtomicLongArray(capacity);
+            this.messageIds = new AtomicReferenceArray<>(capacity);
+            this.lastWrite = now;
+        }
+
+        private int nextSequence() {
+            int seq;
+            do {
+                seq = SEQUENCE.incrementAndGet(this) & MAX_SEQUENCE;
+            } while (seq == 0);
+            return seq;
+        }
+
+        private int next(String messageId, long now, long expireAt, int limit) {
+            lastWrite = now;
+            int size = states.length();
+            //先预留位置,预留失败时未回复的消息数量已达到限制
+            if (!reserve(now, limit)) {
+                return REJECTED;
+            }
+            for (; ; ) {
+                int seq = nextSequence();
+                int index = seq & (size - 1);
+                long state = states.get(index);
+                //查找空闲或者已过期的位置,未过期的记录不会被覆盖
+                if (state == LOCKED || (state != EMPTY && expireAt(state) > now)) {
+                    continue;
+                }
+                if (states.compareAndSet(index, state, LOCKED)) {
+                    if (state != EMPTY) {
+                        //使用了已过期的位置,释放预留
+                        USED.decrementAndGet(this);
+                    }
+                    messageIds.set(index, messageId);
+                    states.set(index, expireAt << 16 | seq);
+                    return seq;
+                }
+            }
+        }
+
+        private boolean reserve(long now, int limit) {
+            for (; ; ) {
+                int used = this.used;
+                if (used >= limit) {
+                    //释放已过期的位置后重试
+                    if (sweep(now) == 0) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (USED.compareAndSet(this, used, used + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private String take(int seq, long now) {
+            int index = seq & (states.length() - 1);
+            long state = states.get(index);
+            if (state == EMPTY || state == LOCKED || (state & MAX_SEQUENCE) != seq) {
+                return null;
+            }
+            if (!states.compareAndSet(index, state, LOCKED)) {
+                return null;
+            }
+            String messageId = messageIds.get(index);
+            messageIds.set(index, null);
+            states.set(index, EMPTY);
+            USED.decrementAndGet(this);
+            return expireAt(state) > now ? messageId : null;
+        }
+
+        private int sweep(long now) {
+            int released = 0;
+            for (int i = 0, size = states.length(); i < size; i++) {
+                long state = states.get(i);
+                if (state != EMPTY && state != LOCKED && expireAt(state) <= now
+                        && states.compareAndSet(i, state, LOCKED)) {
+                    messageIds.set(i, null);
+                    states.set(i, EMPTY);
+                    USED.decrementAndGet(this);
+                    released++;
+                }
+            }
+            return released;
+        }
+    }
+
+    private static class Sweeper implements Runnable {
+        private final WeakReference<MessageSequenceTable> table;
+        private volatile ScheduledFuture<?> future;
+
+        private Sweeper(MessageSequenceTable table) {
+            this.table = new WeakReference<>(table);
+        }
+
+        @Override
+        public void run() {
+            MessageSequenceTable table = this.table.get();
+            if (table == null) {
+                ScheduledFuture<?> future = this.future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            table.sweep();
+        }
+    }
+}
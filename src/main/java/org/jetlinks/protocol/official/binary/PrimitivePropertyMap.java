@@ -0,0 +1,282 @@
+package org.jetlinks.protocol.official.binary;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * 使用数组存储属性的Map,数值类型以原始类型存储,只在获取值时才装箱,保持写入顺序.
+ * <p>
+ * 根据key查找时按顺序比较,适用于属性数量不多并且主要通过遍历使用的场景,如设备上报的属性数据.
+ *
+ * @author zhouhao
+ * @see PropertiesVisitor
+ * @since 3.0.0
+ */
+public class PrimitivePropertyMap extends AbstractMap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte OBJECT = 0, BOOLEAN = 1, BYTE = 2, SHORT = 3, INT = 4, LONG = 5, FLOAT = 6, DOUBLE = 7;
+
+    private String[] keys;
+
+    private byte[] kinds;
+
+    private long[] primitives;
+
+    private Object[] objects;
+
+    private int size;
+
+    private transient Set<Entry<String, Object>> entrySet;
+
+    public PrimitivePropertyMap(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        keys = new String[capacity];
+        kinds = new byte[capacity];
+        primitives = new long[capacity];
+    }
+
+    public PrimitivePropertyMap() {
+        this(8);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        set(key, BOOLEAN, value ? 1 : 0, null);
+    }
+
+    public void putByte(String key, byte value) {
+        set(key, BYTE, value, null);
+    }
+
+    public void putShort(String key, short value) {
+        set(key, SHORT, value, null);
+    }
+
+    public void putInt(String key, int value) {
+        set(key, INT, value, null);
+    }
+
+    public void putLong(String key, long value) {
+        set(key, LONG, value, null);
+    }
+
+    public void putFloat(String key, float value) {
+        set(key, FLOAT, Float.floatToRawIntBits(value), null);
+    }
+
+    public void putDouble(String key, double value) {
+        set(key, DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int index = indexOf(key);
+        Object old = index < 0 ? null : valueAt(index);
+        set(key, OBJECT, 0, value);
+        return old;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        Object old = valueAt(index);
+        removeAt(index);
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        if (objects != null) {
+            Arrays.fill(objects, 0, size, null);
+        }
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(keys[i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void set(String key, byte kind, long primitive, Object object) {
+        int index = indexOf(key);
+        if (index < 0) {
+            if (size == keys.length) {
+                grow();
+            }
+            index = size++;
+            keys[index] = key;
+        }
+        kinds[index] = kind;
+        primitives[index] = primitive;
+        if (object != null && objects == null) {
+            objects = new Object[keys.length];
+        }
+        if (objects != null) {
+            objects[index] = object;
+        }
+    }
+
+    private void grow() {
+        int capacity = keys.length + (keys.length >> 1) + 1;
+        keys = Arrays.copyOf(keys, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        primitives = Arrays.copyOf(primitives, capacity);
+        if (objects != null) {
+            objects = Arrays.copyOf(objects, capacity);
+        }
+    }
+
+    private void removeAt(int index) {
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(kinds, index + 1, kinds, index, moved);
+            System.arraycopy(primitives, index + 1, primitives, index, moved);
+            if (objects != null) {
+                System.arraycopy(objects, index + 1, objects, index, moved);
+            }
+        }
+        size--;
+        keys[size] = null;
+        if (objects != null) {
+            objects[size] = null;
+        }
+    }
+
+    private Object valueAt(int index) {
+        long primitive = primitives[index];
+        switch (kinds[index]) {
+            case BOOLEAN:
+                return primitive != 0;
+            case BYTE:
+                return (byte) primitive;
+            case SHORT:
+                return (short) primitive;
+            case INT:
+                return (int) primitive;
+            case LONG:
+                return primitive;
+            case FLOAT:
+                return Float.intBitsToFloat((int) primitive);
+            case DOUBLE:
+                return Double.longBitsToDouble(primitive);
+            default:
+                return objects == null ? null : objects[index];
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Entry<String, Object>> {
+
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new Iterator<Entry<String, Object>>() {
+                private int next;
+                private int last = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public Entry<String, Object> next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next++;
+                    return new PropertyEntry(last);
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    removeAt(last);
+                    next = last;
+                    last = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private class PropertyEntry implements Entry<String, Object> {
+        private final int index;
+
+        private PropertyEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public Object getValue() {
+            return valueAt(index);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return put(keys[index], value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
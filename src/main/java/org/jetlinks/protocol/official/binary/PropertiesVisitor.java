@@ -0,0 +1,239 @@
+package org.jetlinks.protocol.official.binary;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 读取{@link DataType#OBJECT}格式的属性数据到{@link PrimitivePropertyMap},
+ * 第一层的数值类型属性不会被装箱,嵌套的对象和数组使用{@link ValueBuilder}构造.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+class PropertiesVisitor implements DataTypeVisitor {
+
+    private PrimitivePropertyMap properties;
+
+    private String key;
+
+    //当前所在的层级,1为属性所在的层级
+    private int depth;
+
+    private ValueBuilder nested;
+
+    static PrimitivePropertyMap read(ByteBuf buf) {
+        PropertiesVisitor visitor = new PropertiesVisitor();
+        DataType.OBJECT.read(buf, visitor);
+        return visitor.properties;
+    }
+
+    /**
+     * 读取{@link BinaryIndexedReportPropertyMessage}格式的属性数据
+     *
+     * @param buf        数据
+     * @param dictionary 属性字典
+     * @return 属性
+     */
+    static PrimitivePropertyMap readIndexed(ByteBuf buf, PropertyDictionary dictionary) {
+        int fingerprint = buf.readInt();
+        int expected = dictionary == null ? PropertyDictionary.fingerprint() : dictionary.getFingerprint();
+        //设备与平台的物模型不一致,序号对应的属性可能已经变化
+        if (fingerprint != expected) {
+            throw new IllegalArgumentException("property dictionary mismatch, expected fingerprint "
+                                                       + Integer.toHexString(expected) + " but was " + Integer.toHexString(fingerprint));
+        }
+        int size = DataType.readVarInt(buf);
+        PropertiesVisitor visitor = new PropertiesVisitor();
+        visitor.onObjectStart(size);
+        for (int i = 0; i < size; i++) {
+            int index = DataType.readVarInt(buf);
+            if (index == 0) {
+                visitor.onKey(DataType.readVarString(buf));
+            } else if (dictionary == null) {
+                throw new IllegalStateException("property dictionary required");
+            } else {
+                visitor.onKey(dictionary.getKey(index - 1));
+            }
+            DataType.readFrom(buf, visitor);
+        }
+        visitor.onObjectEnd();
+        return visitor.properties;
+    }
+
+    private boolean isNested() {
+        return depth > 1;
+    }
+
+    private void startNested() {
+        if (depth++ == 1) {
+            nested = new ValueBuilder();
+        }
+    }
+
+    private void endNested() {
+        if (--depth == 1) {
+            properties.put(key, nested.getValue());
+            nested = null;
+        }
+    }
+
+    @Override
+    public void onNull() {
+        if (isNested()) {
+            nested.onNull();
+        } else {
+            properties.put(key, null);
+        }
+    }
+
+    @Override
+    public void onBoolean(boolean value) {
+        if (isNested()) {
+            nested.onBoolean(value);
+        } else {
+            properties.putBoolean(key, value);
+        }
+    }
+
+    @Override
+    public void onInt8(byte value) {
+        if (isNested()) {
+            nested.onInt8(value);
+        } else {
+            properties.putByte(key, value);
+        }
+    }
+
+    @Override
+    public void onInt16(short value) {
+        if (isNested()) {
+            nested.onInt16(value);
+        } else {
+            properties.putShort(key, value);
+        }
+    }
+
+    @Override
+    public void onInt32(int value) {
+        if (isNested()) {
+            nested.onInt32(value);
+        } else {
+            properties.putInt(key, value);
+        }
+    }
+
+    @Override
+    public void onInt64(long value) {
+        if (isNested()) {
+            nested.onInt64(value);
+        } else {
+            properties.putLong(key, value);
+        }
+    }
+
+    @Override
+    public void onUInt8(short value) {
+        if (isNested()) {
+            nested.onUInt8(value);
+        } else {
+            properties.putShort(key, value);
+        }
+    }
+
+    @Override
+    public void onUInt16(int value) {
+        if (isNested()) {
+            nested.onUInt16(value);
+        } else {
+            properties.putInt(key, value);
+        }
+    }
+
+    @Override
+    public void onUInt32(long value) {
+        if (isNested()) {
+            nested.onUInt32(value);
+        } else {
+            properties.putLong(key, value);
+        }
+    }
+
+    @Override
+    public void onFloat(float value) {
+        if (isNested()) {
+            nested.onFloat(value);
+        } else {
+            properties.putFloat(key, value);
+        }
+    }
+
+    @Override
+    public void onDouble(double value) {
+        if (isNested()) {
+            nested.onDouble(value);
+        } else {
+            properties.putDouble(key, value);
+        }
+    }
+
+    @Override
+    public void onString(String value) {
+        if (isNested()) {
+            nested.onString(value);
+        } else {
+            properties.put(key, value);
+        }
+    }
+
+    @Override
+    public void onBinary(ByteBuf value) {
+        if (isNested()) {
+            nested.onBinary(value);
+        } else {
+            byte[] bytes = new byte[value.readableBytes()];
+            value.getBytes(value.readerIndex(), bytes);
+            properties.put(key, bytes);
+        }
+    }
+
+    @Override
+    public void onArrayStart(int size) {
+        startNested();
+        nested.onArrayStart(size);
+    }
+
+    @Override
+    public void onArrayEnd() {
+        nested.onArrayEnd();
+        endNested();
+    }
+
+    @Override
+    public void onObjectStart(int size) {
+        if (depth == 0) {
+            properties = new PrimitivePropertyMap(size);
+            depth++;
+            return;
+        }
+        startNested();
+        nested.onObjectStart(size);
+    }
+
+    @Override
+    public void onKey(String key) {
+        if (isNested()) {
+            nested.onKey(key);
+        } else {
+            this.key = key;
+        }
+    }
+
+    @Override
+    public void onObjectEnd() {
+        if (depth == 1) {
+            depth--;
+            return;
+        }
+        nested.onObjectEnd();
+        endNested();
+    }
+}
@@ -0,0 +1,114 @@
+package org.jetlinks.protocol.official.binary;
+
+import com.google.common.cache.CacheBuilder;
+import org.jetlinks.core.metadata.DeviceMetadata;
+import org.jetlinks.core.metadata.PropertyMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 属性字典,上报属性时使用属性在物模型中的序号代替属性ID,见{@link BinaryMessageType#reportPropertyIndexed}.
+ * <p>
+ * 序号为属性在物模型属性列表中的位置(从0开始),设备与平台使用相同的物模型即可得到相同的字典.
+ * 报文中包含字典的指纹{@link #getFingerprint()},物模型变更后设备未同步时指纹不一致,平台将拒绝该报文,避免属性错位.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class PropertyDictionary {
+
+    //以物模型对象作为key(弱引用,按对象地址比较),同一产品的设备共用一个字典,物模型变更后将使用新的物模型对象重新构造
+    private static final Map<DeviceMetadata, PropertyDictionary> CACHE = CacheBuilder
+            .newBuilder()
+            .weakKeys()
+            .<DeviceMetadata, PropertyDictionary>build()
+            .asMap();
+
+    private final String[] keys;
+
+    private final Map<String, Integer> indexes;
+
+    private final int fingerprint;
+
+    public PropertyDictionary(List<String> keys) {
+        this.keys = keys.toArray(new String[0]);
+        this.indexes = new HashMap<>(keys.size() * 2);
+        for (int i = 0; i < this.keys.length; i++) {
+            indexes.putIfAbsent(this.keys[i], i);
+        }
+        this.fingerprint = fingerprint(this.keys);
+    }
+
+    /**
+     * 计算字典指纹: 按顺序使用逗号连接全部属性ID,UTF-8编码后的CRC32,空字典为0.
+     *
+     * @param keys 属性ID
+     * @return 指纹
+     */
+    public static int fingerprint(String... keys) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                crc.update(',');
+            }
+            crc.update(keys[i].getBytes(StandardCharsets.UTF_8));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 获取物模型对应的属性字典
+     *
+     * @param metadata 物模型
+     * @return 属性字典
+     */
+    public static PropertyDictionary of(DeviceMetadata metadata) {
+        return CACHE.computeIfAbsent(metadata, PropertyDictionary::create);
+    }
+
+    private static PropertyDictionary create(DeviceMetadata metadata) {
+        List<PropertyMetadata> properties = metadata.getProperties();
+        List<String> keys = new ArrayList<>(properties.size());
+        for (PropertyMetadata property : properties) {
+            keys.add(property.getId());
+        }
+        return new PropertyDictionary(keys);
+    }
+
+    /**
+     * @param key 属性ID
+     * @return 序号, 不存在时返回-1
+     */
+    public int indexOf(String key) {
+        Integer index = indexes.get(key);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index 序号
+     * @return 属性ID
+     * @throws IllegalArgumentException 序号不存在时,如设备与平台的物模型不一致
+     */
+    public String getKey(int index) {
+        if (index < 0 || index >= keys.length) {
+            throw new IllegalArgumentException("unknown property index: " + index);
+        }
+        return keys[index];
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return 字典指纹, 见{@link #fingerprint(String...)}
+     */
+    public int getFingerprint() {
+        return fingerprint;
+    }
+}
@@ -0,0 +1,147 @@
+package org.jetlinks.protocol.official.binary;
+
+import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将流式读取的数据构造为对象,结果与{@link DataType#readFrom(ByteBuf)}一致.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+class ValueBuilder implements DataTypeVisitor {
+
+    private final Deque<Container> containers = new ArrayDeque<>();
+
+    private Object value;
+
+    Object getValue() {
+        return value;
+    }
+
+    boolean isCompleted() {
+        return containers.isEmpty();
+    }
+
+    @SuppressWarnings("all")
+    private void add(Object val) {
+        Container container = containers.peek();
+        if (container == null) {
+            value = val;
+        } else if (container.value instanceof List) {
+            ((List<Object>) container.value).add(val);
+        } else {
+            ((Map<String, Object>) container.value).put(container.key, val);
+        }
+    }
+
+    @Override
+    public void onNull() {
+        add(null);
+    }
+
+    @Override
+    public void onBoolean(boolean value) {
+        add(value);
+    }
+
+    @Override
+    public void onInt8(byte value) {
+        add(value);
+    }
+
+    @Override
+    public void onInt16(short value) {
+        add(value);
+    }
+
+    @Override
+    public void onInt32(int value) {
+        add(value);
+    }
+
+    @Override
+    public void onInt64(long value) {
+        add(value);
+    }
+
+    @Override
+    public void onUInt8(short value) {
+        add(value);
+    }
+
+    @Override
+    public void onUInt16(int value) {
+        add(value);
+    }
+
+    @Override
+    public void onUInt32(long value) {
+        add(value);
+    }
+
+    @Override
+    public void onFloat(float value) {
+        add(value);
+    }
+
+    @Override
+    public void onDouble(double value) {
+        add(value);
+    }
+
+    @Override
+    public void onString(String value) {
+        add(value);
+    }
+
+    @Override
+    public void onBinary(ByteBuf value) {
+        add(ByteBufUtil.getBytes(value));
+    }
+
+    @Override
+    public void onArrayStart(int size) {
+        List<Object> array = new ArrayList<>(size);
+        add(array);
+        containers.push(new Container(array));
+    }
+
+    @Override
+    public void onArrayEnd() {
+        containers.pop();
+    }
+
+    @Override
+    public void onObjectStart(int size) {
+        Map<String, Object> object = Maps.newLinkedHashMapWithExpectedSize(size);
+        add(object);
+        containers.push(new Container(object));
+    }
+
+    @Override
+    public void onKey(String key) {
+        containers.element().key = key;
+    }
+
+    @Override
+    public void onObjectEnd() {
+        containers.pop();
+    }
+
+    private static class Container {
+        private final Object value;
+        private String key;
+
+        private Container(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.jetlinks.protocol.official.cipher;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * 按密钥缓存已初始化的{@link Cipher},避免每次加解密时都查找Provider以及扩展密钥.
+ * <p>
+ * Cipher不是线程安全的,所以此缓存只能在单个线程中使用,见{@link Ciphers}中的ThreadLocal.
+ *
+ * @author zhouhao
+ * @see KeyedLruCache
+ * @since 3.0.0
+ */
+class CipherCache extends KeyedLruCache<Cipher> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String algorithm;
+
+    private final String transformation;
+
+    private final int mode;
+
+    CipherCache(String algorithm, String transformation, int mode, int maxSize) {
+        super(maxSize);
+        this.algorithm = algorithm;
+        this.transformation = transformation;
+        this.mode = mode;
+    }
+
+    @Override
+    protected Cipher create() throws GeneralSecurityException {
+        return Cipher.getInstance(transformation);
+    }
+
+    @Override
+    protected void init(Cipher cipher, String key) throws GeneralSecurityException {
+        cipher.init(mode, new SecretKeySpec(key.getBytes(), algorithm));
+    }
+}
@@ -1,37 +1,103 @@
 package org.jetlinks.protocol.official.cipher;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import lombok.SneakyThrows;
 import org.apache.commons.codec.binary.Base64;
 
 import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.util.Optional;
 
 public enum Ciphers {
     AES {
         @SneakyThrows
         public byte[] encrypt(byte[] src, String key) {
-            if (key == null || key.length() != 16) {
-                throw new IllegalArgumentException("illegal key");
+            checkKey(key);
+            CipherCache cache = AES_ENCRYPT.get();
+            Cipher cipher = cache.take(key);
+            try {
+                return cipher.doFinal(src);
+            } catch (GeneralSecurityException e) {
+                cache.invalidate(key);
+                throw e;
             }
-            SecretKeySpec skeySpec = new SecretKeySpec(key.getBytes(), "AES");
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, skeySpec);
-            return cipher.doFinal(src);
         }
 
         @SneakyThrows
         public byte[] decrypt(byte[] src, String key) {
-            if (key == null || key.length() != 16) {
-                throw new IllegalArgumentException("illegal key");
+            checkKey(key);
+            CipherCache cache = AES_DECRYPT.get();
+            Cipher cipher = cache.take(key);
+            try {
+                return cipher.doFinal(src);
+            } catch (GeneralSecurityException e) {
+                cache.invalidate(key);
+                throw e;
+            }
+        }
+
+        @SneakyThrows
+        public ByteBuf decrypt(ByteBuf src, String key) {
+            checkKey(key);
+            if (src.isReadOnly()) {
+                byte[] data = new byte[src.readableBytes()];
+                src.getBytes(src.readerIndex(), data);
+                return Unpooled.wrappedBuffer(decrypt(data, key));
+            }
+            CipherCache cache = AES_DECRYPT.get();
+            Cipher cipher = cache.take(key);
+            int index = src.readerIndex();
+            int len;
+            try {
+                if (src.hasArray()) {
+                    //同一个数组作为输入和输出,解密后的数据不会比原始数据长
+                    byte[] array = src.array();
+                    int offset = src.arrayOffset() + index;
+                    len = cipher.doFinal(array, offset, src.readableBytes(), array, offset);
+                } else {
+                    ByteBuffer input = src.nioBuffer(index, src.readableBytes());
+                    ByteBuffer output = src.nioBuffer(index, src.readableBytes());
+                    len = cipher.doFinal(input, output);
+                }
+            } catch (GeneralSecurityException e) {
+                cache.invalidate(key);
+                throw e;
+            }
+            return src.slice(index, len);
+        }
+
+        @SneakyThrows
+        public ByteBuf decrypt(ByteBuf src, String key, ByteBufAllocator allocator) {
+            checkKey(key);
+            CipherCache cache = AES_DECRYPT.get();
+            Cipher cipher = cache.take(key);
+            int length = src.readableBytes();
+            ByteBuf output = allocator.heapBuffer(cipher.getOutputSize(length));
+            try {
+                int len = cipher.doFinal(src.nioBuffer(src.readerIndex(), length),
+                                         output.nioBuffer(0, output.capacity()));
+                return output.writerIndex(len);
+            } catch (Throwable e) {
+                output.release();
+                if (e instanceof GeneralSecurityException) {
+                    cache.invalidate(key);
+                }
+                throw e;
             }
-            SecretKeySpec skeySpec = new SecretKeySpec(key.getBytes(), "AES");
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, skeySpec);
-            return cipher.doFinal(src);
         }
     };
 
+    //每个线程最多缓存的密钥数量
+    private static final int CACHE_SIZE = 128;
+
+    private static final ThreadLocal<CipherCache> AES_ENCRYPT = ThreadLocal
+            .withInitial(() -> new CipherCache("AES", "AES/ECB/PKCS5Padding", Cipher.ENCRYPT_MODE, CACHE_SIZE));
+
+    private static final ThreadLocal<CipherCache> AES_DECRYPT = ThreadLocal
+            .withInitial(() -> new CipherCache("AES", "AES/ECB/PKCS5Padding", Cipher.DECRYPT_MODE, CACHE_SIZE));
 
     public static Optional<Ciphers> of(String name) {
         try {
@@ -41,10 +107,39 @@ public enum Ciphers {
         }
     }
 
+    private static void checkKey(String key) {
+        if (key == null || key.length() != 16) {
+            throw new IllegalArgumentException("illegal key");
+        }
+    }
+
     public abstract byte[] encrypt(byte[] src, String key);
 
     public abstract byte[] decrypt(byte[] src, String key);
 
+    /**
+     * 直接在ByteBuf中解密,解密后的数据会覆盖ByteBuf中的原始数据,不会修改src的readerIndex.
+     * 如果ByteBuf是只读的,则会复制数据后再解密.
+     * <p>
+     * 解密失败时src中的数据可能已被部分覆盖,只能用于调用方自己分配的ByteBuf,
+     * 其他情况使用{@link #decrypt(ByteBuf, String, ByteBufAllocator)}.
+     *
+     * @param src 密文
+     * @param key 密钥
+     * @return 与src共享内存的明文
+     */
+    public abstract ByteBuf decrypt(ByteBuf src, String key);
+
+    /**
+     * 解密到使用allocator分配的ByteBuf中,不会修改src的内容和readerIndex,解密失败时会释放已分配的ByteBuf.
+     *
+     * @param src       密文
+     * @param key       密钥
+     * @param allocator ByteBufAllocator
+     * @return 明文, 使用完后需要调用方释放
+     */
+    public abstract ByteBuf decrypt(ByteBuf src, String key, ByteBufAllocator allocator);
+
     String encryptBase64(String src, String key) {
         return Base64.encodeBase64String(encrypt(src.getBytes(), key));
     }
@@ -0,0 +1,82 @@
+package org.jetlinks.protocol.official.cipher;
+
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按密钥缓存已初始化的对象(如{@link javax.crypto.Cipher},{@link javax.crypto.Mac}),避免每次使用时都查找Provider以及初始化密钥.
+ * <p>
+ * 缓存的对象通常不是线程安全的,所以此缓存只能在单个线程中使用,通过ThreadLocal为每个线程创建缓存.
+ * 超过最大数量时淘汰最久未使用的密钥,被淘汰的对象会在下一次初始化新密钥时复用.
+ *
+ * @param <T> 缓存的对象类型
+ * @author zhouhao
+ * @since 3.0.0
+ */
+abstract class KeyedLruCache<T> extends LinkedHashMap<String, T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    private transient T evicted;
+
+    KeyedLruCache(int maxSize) {
+        super(16, 0.75F, true);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 创建新的对象
+     *
+     * @return 未初始化的对象
+     * @throws GeneralSecurityException 创建失败
+     */
+    protected abstract T create() throws GeneralSecurityException;
+
+    /**
+     * 使用密钥初始化对象,复用被淘汰的对象时也会调用
+     *
+     * @param value 对象
+     * @param key   密钥
+     * @throws GeneralSecurityException 初始化失败
+     */
+    protected abstract void init(T value, String key) throws GeneralSecurityException;
+
+    /**
+     * 获取指定密钥已初始化的对象
+     *
+     * @param key 密钥
+     * @return 已初始化的对象
+     * @throws GeneralSecurityException 初始化失败
+     */
+    T take(String key) throws GeneralSecurityException {
+        T value = get(key);
+        if (value == null) {
+            value = evicted == null ? create() : evicted;
+            evicted = null;
+            init(value, key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 使用失败后对象状态不确定,需要移除后重新初始化.
+     *
+     * @param key 密钥
+     */
+    void invalidate(String key) {
+        remove(key);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+        if (size() > maxSize) {
+            evicted = eldest.getValue();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,37 @@
+package org.jetlinks.protocol.official.cipher;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * 按密钥缓存已初始化的{@link Mac},避免每次签名时都调用{@link Mac#getInstance(String)}以及初始化密钥.
+ * <p>
+ * Mac不是线程安全的,所以此缓存只能在单个线程中使用,见{@link Signers}中的ThreadLocal.
+ *
+ * @author zhouhao
+ * @see KeyedLruCache
+ * @since 3.0.0
+ */
+class MacCache extends KeyedLruCache<Mac> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String algorithm;
+
+    MacCache(String algorithm, int maxSize) {
+        super(maxSize);
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    protected Mac create() throws GeneralSecurityException {
+        return Mac.getInstance(algorithm);
+    }
+
+    @Override
+    protected void init(Mac mac, String key) throws GeneralSecurityException {
+        mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), algorithm));
+    }
+}
@@ -0,0 +1,88 @@
+package org.jetlinks.protocol.official.cipher;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import javax.crypto.Mac;
+
+/**
+ * 消息签名,每个线程按密钥缓存已初始化的{@link Mac},签名时不复制数据.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public enum Signers {
+    HMAC_SHA256("HmacSHA256", 32);
+
+    //每个线程最多缓存的密钥数量
+    private static final int CACHE_SIZE = 128;
+
+    private final ThreadLocal<MacCache> macs;
+
+    //签名结果,避免每次签名都创建数组
+    private final ThreadLocal<byte[]> results;
+
+    /**
+     * 签名长度(字节)
+     */
+    @Getter
+    private final int length;
+
+    Signers(String algorithm, int length) {
+        this.length = length;
+        this.macs = ThreadLocal.withInitial(() -> new MacCache(algorithm, CACHE_SIZE));
+        this.results = ThreadLocal.withInitial(() -> new byte[length]);
+    }
+
+    /**
+     * 对data中的可读数据签名,写入到out的指定位置,不会修改data和out的读写位置.
+     *
+     * @param data     数据
+     * @param key      密钥
+     * @param out      签名输出
+     * @param outIndex 签名写入的位置
+     */
+    public void sign(ByteBuf data, String key, ByteBuf out, int outIndex) {
+        out.setBytes(outIndex, doSign(data, key));
+    }
+
+    /**
+     * 校验data中可读数据的签名,不会修改data和signature的读写位置.比较时间与内容无关.
+     *
+     * @param data           数据
+     * @param key            密钥
+     * @param signature      签名所在的ByteBuf
+     * @param signatureIndex 签名的位置
+     * @return 签名是否正确
+     */
+    public boolean verify(ByteBuf data, String key, ByteBuf signature, int signatureIndex) {
+        byte[] result = doSign(data, key);
+        int diff = 0;
+        for (int i = 0; i < length; i++) {
+            diff |= result[i] ^ signature.getByte(signatureIndex + i);
+        }
+        return diff == 0;
+    }
+
+    @SneakyThrows
+    private byte[] doSign(ByteBuf data, String key) {
+        MacCache cache = macs.get();
+        Mac mac = cache.take(key);
+        byte[] result = results.get();
+        try {
+            int index = data.readerIndex(), len = data.readableBytes();
+            if (data.hasArray()) {
+                mac.update(data.array(), data.arrayOffset() + index, len);
+            } else {
+                mac.update(data.nioBuffer(index, len));
+            }
+            mac.doFinal(result, 0);
+        } catch (Throwable e) {
+            //签名失败后Mac中可能残留数据
+            cache.invalidate(key);
+            throw e;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,176 @@
+package org.jetlinks.protocol.official.http;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.TooLongFrameException;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.protocol.official.ParsedTopic;
+import org.jetlinks.protocol.official.TopicMessageCodec;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * HTTP批量上报解码器,请求地址为/{productId}/{deviceId}/batch,请求体为换行分隔的JSON(NDJSON),每行一条消息:
+ * <pre>
+ * {"topic":"/properties/report","message":{"properties":{"temp":36.5}}}
+ * {"topic":"/event/fire_alarm","message":{"data":{"level":1}}}
+ * </pre>
+ * topic为设备ID之后的topic,与MQTT上行topic一致,message为对应topic的消息体,通过{@link TopicMessageCodec}解码.
+ * <p>
+ * 解码时不会复制请求体,所有行都解码成功后才返回消息,任意一行格式错误时返回错误且不返回任何消息,
+ * 避免部分消息已处理后再响应失败.请求体大小或者消息数量超过限制时返回{@link TooLongFrameException}.
+ * <p>
+ * 请求体大小在网络组件聚合完整个请求体后才校验,只用于限制单次批量上报的数据量,
+ * 无法避免接收过大的请求体,需要在HTTP服务中配置请求体大小限制.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class BatchMessageDecoder {
+
+    public static final String BATCH_PATH = "batch";
+
+    public static final MediaType CONTENT_TYPE = new MediaType("application", "x-ndjson");
+
+    public static final int DEFAULT_MAX_MESSAGES = 1000;
+
+    public static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+    private final int maxMessages;
+
+    private final int maxBodySize;
+
+    /**
+     * @param maxMessages 单个请求最多包含的消息数量
+     * @param maxBodySize 请求体最大字节数,在请求体聚合后校验
+     */
+    public BatchMessageDecoder(int maxMessages, int maxBodySize) {
+        this.maxMessages = maxMessages;
+        this.maxBodySize = maxBodySize;
+    }
+
+    public BatchMessageDecoder() {
+        this(DEFAULT_MAX_MESSAGES, DEFAULT_MAX_BODY_SIZE);
+    }
+
+    /**
+     * 判断是否为批量上报的地址
+     *
+     * @param paths 移除了产品信息的地址
+     * @return 是否为批量上报
+     */
+    public static boolean isBatch(ParsedTopic paths) {
+        return paths.size() == 3 && paths.levelEquals(2, BATCH_PATH);
+    }
+
+    /**
+     * 解码请求体,不会修改body的readerIndex,调用方需要保证在解码完成前body不会被释放.
+     * 所有行都解码成功后才会下发消息,任意一行失败时只返回错误.
+     *
+     * @param mapper   ObjectMapper
+     * @param deviceId 设备ID
+     * @param body     请求体
+     * @return 设备消息
+     */
+    public Flux<DeviceMessage> decode(ObjectMapper mapper, String deviceId, ByteBuf body) {
+        return Flux.defer(() -> {
+            if (body.readableBytes() > maxBodySize) {
+                return Flux.error(new TooLongFrameException("request body is larger than " + maxBodySize + " bytes"));
+            }
+            List<ByteBuf> lines = splitLines(body);
+            if (lines.size() > maxMessages) {
+                return Flux.error(new TooLongFrameException("request contains more than " + maxMessages + " messages"));
+            }
+            //全部解码成功后再返回,失败时不会下发部分消息
+            return Flux
+                    .fromIterable(lines)
+                    .concatMap(line -> decodeLine(mapper, deviceId, line))
+                    .collectList()
+                    .flatMapIterable(Function.identity());
+        });
+    }
+
+    //按换行拆分,忽略空行
+    static List<ByteBuf> splitLines(ByteBuf body) {
+        List<ByteBuf> lines = new ArrayList<>();
+        int index = body.readerIndex(), end = body.writerIndex();
+        while (index < end) {
+            int lineEnd = body.indexOf(index, end, (byte) '\n');
+            if (lineEnd < 0) {
+                lineEnd = end;
+            }
+            int start = index, last = lineEnd;
+            while (start < last && isWhitespace(body.getByte(start))) {
+                start++;
+            }
+            while (last > start && isWhitespace(body.getByte(last - 1))) {
+                last--;
+            }
+            if (last > start) {
+                lines.add(body.slice(start, last - start));
+            }
+            index = lineEnd + 1;
+        }
+        return lines;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\r' || b == '\t';
+    }
+
+    private Flux<DeviceMessage> decodeLine(ObjectMapper mapper, String deviceId, ByteBuf line) {
+        String topic = null;
+        int start = -1, end = -1;
+        try (JsonParser parser = createParser(mapper, line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "batch message must be a json object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("topic".equals(name)) {
+                    topic = parser.getValueAsString();
+                } else if ("message".equals(name) && token == JsonToken.START_OBJECT) {
+                    //记录消息体的位置,直接使用原始数据解码
+                    start = (int) parser.getTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    end = (int) parser.getCurrentLocation().getByteOffset();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            return Flux.error(e);
+        }
+        if (topic == null || start < 0) {
+            return Flux.error(new IllegalArgumentException("batch message requires topic and message"));
+        }
+        if (!topic.startsWith("/")) {
+            topic = "/".concat(topic);
+        }
+        return TopicMessageCodec.decode(mapper,
+                                        ParsedTopic.of("/".concat(deviceId).concat(topic)),
+                                        line.slice(line.readerIndex() + start, end - start));
+    }
+
+    private static JsonParser createParser(ObjectMapper mapper, ByteBuf line) throws IOException {
+        if (line.hasArray()) {
+            return mapper
+                    .getFactory()
+                    .createParser(line.array(), line.arrayOffset() + line.readerIndex(), line.readableBytes());
+        }
+        return mapper
+                .getFactory()
+                .createParser((InputStream) new ByteBufInputStream(line.duplicate()));
+    }
+}
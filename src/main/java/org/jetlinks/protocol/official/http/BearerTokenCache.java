@@ -0,0 +1,164 @@
+package org.jetlinks.protocol.official.http;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AllArgsConstructor;
+import lombok.SneakyThrows;
+import org.jetlinks.core.device.DeviceOperator;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * HTTP,WebSocket Bearer Token认证缓存,缓存设备最近一次认证通过的Token的SHA-256摘要,
+ * 设备再次使用相同的Token认证时不再从设备注册中心获取配置.
+ * <p>
+ * 缓存有数量上限,写入后超过有效期自动失效.设备重新注册(如修改Token后重新激活)或者注销时需要调用{@link #invalidate(String)},
+ * 失效后旧Token将无法再认证通过.修改Token后未重新注册时,缓存超过重新校验时间后会重新获取配置,
+ * 旧Token最多在此时间内仍可以认证通过.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class BearerTokenCache {
+
+    public static final String CONFIG_KEY_BEARER_TOKEN = "bearer_token";
+
+    private static final Mono<Boolean> SUCCESS = Mono.just(true), FAILED = Mono.just(false);
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(BearerTokenCache::createSha256);
+
+    //设备ID -> sha256(token)
+    private final Cache<String, Entry> cache;
+
+    private final Ticker ticker;
+
+    private final long revalidateNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maximumSize 最大缓存设备数量,小于等于0时不缓存
+     * @param ttl         缓存有效期
+     * @param revalidate  重新校验时间,缓存写入超过此时间后重新获取配置
+     */
+    public BearerTokenCache(long maximumSize, Duration ttl, Duration revalidate) {
+        this(maximumSize, ttl, revalidate, Ticker.systemTicker());
+    }
+
+    public BearerTokenCache(long maximumSize, Duration ttl) {
+        this(maximumSize, ttl, ttl);
+    }
+
+    BearerTokenCache(long maximumSize, Duration ttl, Duration revalidate, Ticker ticker) {
+        this.cache = CacheBuilder
+                .newBuilder()
+                .maximumSize(Math.max(0, maximumSize))
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+        this.ticker = ticker;
+        this.revalidateNanos = revalidate.toNanos();
+    }
+
+    public BearerTokenCache() {
+        this(100_000, Duration.ofMinutes(10));
+    }
+
+    @SneakyThrows
+    private static MessageDigest createSha256() {
+        return MessageDigest.getInstance("SHA-256");
+    }
+
+    private static byte[] digest(String token) {
+        return SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 校验设备的Token
+     *
+     * @param deviceId     设备ID
+     * @param token        设备请求中的Token
+     * @param deviceGetter 缓存未命中时获取设备
+     * @return 是否认证通过, 设备不存在时返回{@link Mono#empty()}
+     */
+    public Mono<Boolean> verify(String deviceId,
+                                String token,
+                                Function<String, Mono<DeviceOperator>> deviceGetter) {
+        if (deviceId == null || token == null) {
+            return FAILED;
+        }
+        byte[] hash = digest(token);
+        Entry cached = cache.getIfPresent(deviceId);
+        //比较时间与内容无关,超过重新校验时间后重新获取配置
+        if (cached != null
+                && ticker.read() - cached.verifyTime < revalidateNanos
+                && MessageDigest.isEqual(cached.hash, hash)) {
+            hits.increment();
+            return SUCCESS;
+        }
+        misses.increment();
+        return deviceGetter
+                .apply(deviceId)
+                .flatMap(device -> device
+                        .getConfig(CONFIG_KEY_BEARER_TOKEN)
+                        .flatMap(value -> Mono.justOrEmpty(value.asString()))
+                        .map(configured -> {
+                            if (MessageDigest.isEqual(digest(configured), hash)) {
+                                cache.put(deviceId, new Entry(hash, ticker.read()));
+                                return true;
+                            }
+                            return false;
+                        })
+                        //未配置token
+                        .switchIfEmpty(Mono.fromSupplier(() -> {
+                            cache.invalidate(deviceId);
+                            return false;
+                        })));
+    }
+
+    /**
+     * 使设备的认证缓存失效
+     *
+     * @param deviceId 设备ID
+     */
+    public void invalidate(String deviceId) {
+        cache.invalidate(deviceId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return 缓存命中次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return 缓存未命中次数, 包括Token与缓存不一致时
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final byte[] hash;
+        private final long verifyTime;
+    }
+}
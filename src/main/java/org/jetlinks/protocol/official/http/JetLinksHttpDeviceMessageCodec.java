@@ -1,14 +1,13 @@
 package org.jetlinks.protocol.official.http;
 
-import com.alibaba.fastjson.JSONObject;
 import com.fasterxml.jackson.core.JsonParseException;
-import io.netty.buffer.ByteBufUtil;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.TooLongFrameException;
 import lombok.extern.slf4j.Slf4j;
 import org.jetlinks.core.defaults.Authenticator;
 import org.jetlinks.core.device.*;
 import org.jetlinks.core.message.DeviceMessage;
-import org.jetlinks.core.message.MessageType;
 import org.jetlinks.core.message.codec.*;
 import org.jetlinks.core.message.codec.http.Header;
 import org.jetlinks.core.message.codec.http.HttpExchangeMessage;
@@ -21,6 +20,7 @@ import org.jetlinks.core.metadata.types.PasswordType;
 import org.jetlinks.core.trace.DeviceTracer;
 import org.jetlinks.core.trace.FluxTracer;
 import org.jetlinks.protocol.official.ObjectMappers;
+import org.jetlinks.protocol.official.ParsedTopic;
 import org.jetlinks.protocol.official.TopicMessageCodec;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -29,7 +29,8 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.annotation.Nonnull;
-import java.util.Objects;
+import java.io.IOException;
+import java.util.function.Function;
 
 /**
  * Http 的消息编解码器
@@ -46,8 +47,38 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
 
     private final Transport transport;
 
-    public JetLinksHttpDeviceMessageCodec(Transport transport) {
+    private final ByteBufAllocator allocator;
+
+    private final BearerTokenCache tokenCache;
+
+    private final BatchMessageDecoder batchDecoder;
+
+    /**
+     * @param transport    传输协议
+     * @param allocator    编码时使用的ByteBufAllocator,编码后的ByteBuf在发送给设备后由网络层释放
+     * @param tokenCache   Token认证缓存
+     * @param batchDecoder 批量上报解码器
+     */
+    public JetLinksHttpDeviceMessageCodec(Transport transport,
+                                          ByteBufAllocator allocator,
+                                          BearerTokenCache tokenCache,
+                                          BatchMessageDecoder batchDecoder) {
         this.transport = transport;
+        this.allocator = allocator;
+        this.tokenCache = tokenCache;
+        this.batchDecoder = batchDecoder;
+    }
+
+    public JetLinksHttpDeviceMessageCodec(Transport transport, ByteBufAllocator allocator, BearerTokenCache tokenCache) {
+        this(transport, allocator, tokenCache, new BatchMessageDecoder());
+    }
+
+    public JetLinksHttpDeviceMessageCodec(Transport transport, ByteBufAllocator allocator) {
+        this(transport, allocator, new BearerTokenCache());
+    }
+
+    public JetLinksHttpDeviceMessageCodec(Transport transport) {
+        this(transport, PooledByteBufAllocator.DEFAULT);
     }
 
     public JetLinksHttpDeviceMessageCodec() {
@@ -62,11 +93,10 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
     @Nonnull
     public Mono<EncodedMessage> encode(@Nonnull MessageEncodeContext context) {
 
-        JSONObject json = context.getMessage().toJson();
-        //通过websocket下发
-        return Mono.just(DefaultWebSocketMessage.of(
+        //通过websocket下发,直接序列化到ByteBuf中
+        return Mono.fromCallable(() -> DefaultWebSocketMessage.of(
                 WebSocketMessage.Type.TEXT,
-                Unpooled.wrappedBuffer(json.toJSONString().getBytes())));
+                ObjectMappers.writeValue(ObjectMappers.JSON_MAPPER, allocator, context.getMessage())));
     }
 
     private static SimpleHttpResponseMessage unauthorized(String msg) {
@@ -79,6 +109,15 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
     }
 
 
+    private static SimpleHttpResponseMessage payloadTooLarge() {
+        return SimpleHttpResponseMessage
+                .builder()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"success\":false,\"code\":\"payload_too_large\"}")
+                .status(413)
+                .build();
+    }
+
     private static SimpleHttpResponseMessage badRequest() {
         return SimpleHttpResponseMessage
                 .builder()
@@ -104,11 +143,12 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
 
     private Flux<DeviceMessage> decodeWebsocket(MessageDecodeContext context) {
         WebSocketSessionMessage msg = ((WebSocketSessionMessage) context.getMessage());
-
-        return Mono
-                .justOrEmpty(MessageType.convertMessage(msg.payloadAsJson()))
-                .cast(DeviceMessage.class)
-                .flux();
+        //直接解码,支持JSON数组格式的多条消息
+        try {
+            return Flux.fromIterable(WebSocketMessageDecoder.decode(ObjectMappers.JSON_MAPPER, msg.getPayload()));
+        } catch (IOException e) {
+            return Flux.error(e);
+        }
 
     }
 
@@ -132,18 +172,17 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
         }
         String basicToken = token[1];
 
-        String[] paths = TopicMessageCodec.removeProductPath(message.getPath());
-        if (paths.length < 1) {
+        ParsedTopic paths = ParsedTopic.of(message.getPath()).removeProductPath();
+        if (paths.size() < 2) {
             return message
                     .response(badRequest())
                     .thenMany(Mono.empty());
         }
-        String deviceId = paths[1];
-        return context
-                .getDevice(deviceId)
-                .flatMap(device -> device.getConfig("bearer_token"))
+        String deviceId = paths.get(1);
+        return tokenCache
+                .verify(deviceId, basicToken, context::getDevice)
                 //校验token
-                .filter(value -> Objects.equals(value.asString(), basicToken))
+                .filter(Boolean::booleanValue)
                 //设备或者配置不对
                 .switchIfEmpty(Mono.defer(() -> message
                         .response(unauthorized("Device no register or token not match"))
@@ -155,6 +194,11 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
                     //有结果则认为成功
                     if (s.hasValue()) {
                         handler = message.ok("{\"success\":true}");
+                    } else if (s.getThrowable() instanceof TooLongFrameException) {
+                        //批量上报超过限制
+                        return message
+                                .response(payloadTooLarge())
+                                .then(Mono.empty());
                     } else {
                         return message
                                 .response(badRequest())
@@ -172,13 +216,15 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
 
     }
 
-    private Flux<DeviceMessage> doDecode(HttpExchangeMessage message, String[] paths) {
+    private Flux<DeviceMessage> doDecode(HttpExchangeMessage message, ParsedTopic paths) {
+        if (BatchMessageDecoder.isBatch(paths)) {
+            return message
+                    .payload()
+                    .flatMapMany(buf -> batchDecoder.decode(ObjectMappers.JSON_MAPPER, paths.get(1), buf));
+        }
         return message
                 .payload()
-                .flatMapMany(buf -> {
-                    byte[] body = ByteBufUtil.getBytes(buf);
-                    return TopicMessageCodec.decode(ObjectMappers.JSON_MAPPER, paths, body);
-                });
+                .flatMapMany(buf -> TopicMessageCodec.decode(ObjectMappers.JSON_MAPPER, paths, buf));
     }
 
     public String getErrorMessage(Throwable err) {
@@ -203,13 +249,20 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
             return Mono.just(AuthenticationResponse.error(401, "认证参数错误"));
         }
 
-        return device
-                .getConfig("bearer_token")
+        return authenticate(device.getDeviceId(), token, ignore -> Mono.just(device));
+    }
+
+    private Mono<AuthenticationResponse> authenticate(String deviceId,
+                                                      String token,
+                                                      Function<String, Mono<DeviceOperator>> deviceGetter) {
+        return tokenCache
+                .verify(deviceId, token, deviceGetter)
                 //校验token
-                .filter(value -> Objects.equals(value.asString(), token))
-                .map(ignore -> AuthenticationResponse.success(device.getDeviceId()))
-                //未配置或者配置不对
-                .switchIfEmpty(Mono.fromSupplier(() -> AuthenticationResponse.error(401, "token错误")));
+                .map(success -> success
+                        ? AuthenticationResponse.success(deviceId)
+                        //未配置或者配置不对
+                        : AuthenticationResponse.error(401, "token错误"))
+                .defaultIfEmpty(deviceNotFound);
     }
 
     static AuthenticationResponse deviceNotFound = AuthenticationResponse.error(404, "设备不存在");
@@ -220,15 +273,21 @@ public class JetLinksHttpDeviceMessageCodec implements DeviceMessageCodec, Authe
             return Mono.just(AuthenticationResponse.error(400, "不支持的认证方式"));
         }
         WebsocketAuthenticationRequest req = ((WebsocketAuthenticationRequest) request);
-        String[] paths = TopicMessageCodec.removeProductPath(req.getSocketSession().getPath());
-        if (paths.length < 1) {
+        ParsedTopic paths = ParsedTopic.of(req.getSocketSession().getPath()).removeProductPath();
+        if (paths.size() < 2) {
             return Mono.just(AuthenticationResponse.error(400, "URL格式错误"));
         }
 
-        return registry
-                .getDevice(paths[1])
-                .flatMap(device -> authenticate(request, device))
-                .defaultIfEmpty(deviceNotFound);
+        String token = req
+                .getSocketSession()
+                .getQueryParameters()
+                .get("token");
+
+        if (StringUtils.isEmpty(token)) {
+            return Mono.just(AuthenticationResponse.error(401, "认证参数错误"));
+        }
+        //缓存命中时不再获取设备
+        return authenticate(paths.get(1), token, registry::getDevice);
 
     }
 }
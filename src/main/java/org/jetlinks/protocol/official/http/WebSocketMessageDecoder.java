@@ -0,0 +1,116 @@
+package org.jetlinks.protocol.official.http;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.Message;
+import org.jetlinks.core.message.MessageType;
+import org.jetlinks.protocol.official.TopicMessageCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebSocket文本消息解码器,根据消息中的messageType字段直接将JSON解码为对应的消息类,不会先解析为JSON对象再转换.
+ * <p>
+ * 支持单条消息或者JSON数组格式的多条消息:
+ * <pre>
+ * {"messageType":"REPORT_PROPERTY","properties":{"temp":36.5}}
+ * [{"messageType":"REPORT_PROPERTY","properties":{"temp":36.5}},{"messageType":"EVENT","event":"alarm"}]
+ * </pre>
+ * 消息类与MQTT通过topic解码时一致,见{@link TopicMessageCodec#getMessageClass(String)},
+ * 其他消息类型(如子设备消息,透传消息)使用{@link MessageType#convertMessage(Map)}转换,没有messageType或者不支持的消息将被忽略.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class WebSocketMessageDecoder {
+
+    static final String MESSAGE_TYPE = "messageType";
+
+    /**
+     * 解码消息,不会修改payload的readerIndex.
+     *
+     * @param mapper  ObjectMapper
+     * @param payload 消息内容
+     * @return 设备消息
+     * @throws IOException JSON格式错误时
+     */
+    public static List<DeviceMessage> decode(ObjectMapper mapper, ByteBuf payload) throws IOException {
+        try (JsonParser parser = createParser(mapper, payload)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                DeviceMessage message = readMessage(mapper, parser);
+                return message == null ? Collections.emptyList() : Collections.singletonList(message);
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "websocket message must be a json object or array");
+            }
+            List<DeviceMessage> messages = new ArrayList<>();
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                DeviceMessage message = readMessage(mapper, parser);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            if (token != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "websocket message array must contain json objects");
+            }
+            return messages;
+        }
+    }
+
+    //当前位置为START_OBJECT,读取完成后位置为对应的END_OBJECT
+    @SuppressWarnings("unchecked")
+    private static DeviceMessage readMessage(ObjectMapper mapper, JsonParser parser) throws IOException {
+        //messageType之前的字段
+        TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (!MESSAGE_TYPE.equals(parser.getCurrentName())) {
+                buffer.copyCurrentStructure(parser);
+                continue;
+            }
+            JsonToken token = parser.nextToken();
+            String messageType = parser.getValueAsString();
+            if (token.isStructStart()) {
+                parser.skipChildren();
+            }
+            buffer.writeStringField(MESSAGE_TYPE, messageType);
+            //已读取的字段和剩余的字段作为一个对象继续解码
+            JsonParser sequence = JsonParserSequence.createFlattened(false, buffer.asParser(parser), parser);
+
+            Class<? extends DeviceMessage> type = messageType == null ? null : TopicMessageCodec.getMessageClass(messageType);
+            if (type != null) {
+                return mapper.readValue(sequence, type);
+            }
+            //其他消息类型
+            Map<String, Object> map = mapper.readValue(sequence, Map.class);
+            Message message = MessageType.convertMessage(map).orElse(null);
+            return message instanceof DeviceMessage ? (DeviceMessage) message : null;
+        }
+        //没有messageType
+        return null;
+    }
+
+    private static JsonParser createParser(ObjectMapper mapper, ByteBuf payload) throws IOException {
+        if (payload.hasArray()) {
+            return mapper
+                    .getFactory()
+                    .createParser(payload.array(), payload.arrayOffset() + payload.readerIndex(), payload.readableBytes());
+        }
+        return mapper
+                .getFactory()
+                .createParser((InputStream) new ByteBufInputStream(payload.duplicate()));
+    }
+}
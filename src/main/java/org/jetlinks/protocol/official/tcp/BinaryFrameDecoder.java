@@ -0,0 +1,145 @@
+package org.jetlinks.protocol.official.tcp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.function.Consumer;
+
+/**
+ * 二进制协议TCP报文拆包,报文格式为: [消息长度:INT32,消息内容].
+ * <p>
+ * 一次读取中包含多个完整报文(粘包)时,直接使用读取到的缓冲区切片,不复制数据.
+ * 只有报文被拆分到多次读取(半包)时,才分配一个报文大小的缓冲区暂存剩余数据.
+ * <p>
+ * 非线程安全,每个连接使用一个实例,连接断开后需要调用{@link BinaryFrameDecoder#release()}.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class BinaryFrameDecoder {
+
+    //长度字段字节数
+    public static final int LENGTH_FIELD_SIZE = 4;
+
+    //默认最大报文长度:1MB
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+
+    private final int maxFrameLength;
+
+    private final ByteBufAllocator allocator;
+
+    //未读取完整的报文
+    private ByteBuf cumulation;
+
+    /**
+     * @param maxFrameLength 最大报文长度(不含长度字段),超过时抛出{@link TooLongFrameException}
+     * @param allocator      暂存半包数据时使用的ByteBufAllocator
+     */
+    public BinaryFrameDecoder(int maxFrameLength, ByteBufAllocator allocator) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be positive: " + maxFrameLength);
+        }
+        this.maxFrameLength = maxFrameLength;
+        this.allocator = allocator;
+    }
+
+    public BinaryFrameDecoder(ByteBufAllocator allocator) {
+        this(DEFAULT_MAX_FRAME_LENGTH, allocator);
+    }
+
+    /**
+     * 解码读取到的数据,每个完整的报文(包含4字节长度字段)调用一次handler.
+     * <p>
+     * 传给handler的报文只在回调中有效,需要在回调之外使用时请调用{@link ByteBuf#retain()}.
+     * 读取到的数据不会被释放,由调用者释放.
+     * <p>
+     * 报文长度不合法时抛出{@link TooLongFrameException}并丢弃暂存的数据,此时数据流已无法继续解析,应断开连接.
+     *
+     * @param in      读取到的数据
+     * @param handler 报文处理器
+     */
+    public void decode(ByteBuf in, Consumer<ByteBuf> handler) {
+        if (cumulation != null) {
+            //补全上一次未读取完整的报文
+            if (!fill(in)) {
+                return;
+            }
+            ByteBuf frame = cumulation;
+            cumulation = null;
+            try {
+                handler.accept(frame);
+            } finally {
+                frame.release();
+            }
+        }
+        //完整的报文直接切片
+        int readable;
+        while ((readable = in.readableBytes()) >= LENGTH_FIELD_SIZE) {
+            int frameSize = LENGTH_FIELD_SIZE + frameLength(in.getInt(in.readerIndex()));
+            if (readable < frameSize) {
+                break;
+            }
+            ByteBuf frame = in.slice(in.readerIndex(), frameSize);
+            in.skipBytes(frameSize);
+            handler.accept(frame);
+        }
+        if (in.isReadable()) {
+            //半包,已知长度时一次分配整个报文的空间
+            int capacity = readable >= LENGTH_FIELD_SIZE
+                    ? LENGTH_FIELD_SIZE + frameLength(in.getInt(in.readerIndex()))
+                    : LENGTH_FIELD_SIZE;
+            cumulation = allocator.buffer(capacity);
+            cumulation.writeBytes(in);
+        }
+    }
+
+    /**
+     * @return 是否有未读取完整的报文
+     */
+    public boolean isPending() {
+        return cumulation != null;
+    }
+
+    /**
+     * 释放暂存的数据
+     */
+    public void release() {
+        if (cumulation != null) {
+            ByteBuf buf = cumulation;
+            cumulation = null;
+            buf.release();
+        }
+    }
+
+    //将数据写入暂存区,返回报文是否已完整
+    private boolean fill(ByteBuf in) {
+        int readable = cumulation.readableBytes();
+        if (readable < LENGTH_FIELD_SIZE) {
+            int len = Math.min(LENGTH_FIELD_SIZE - readable, in.readableBytes());
+            cumulation.writeBytes(in, len);
+            if (cumulation.readableBytes() < LENGTH_FIELD_SIZE) {
+                return false;
+            }
+            int length;
+            try {
+                length = frameLength(cumulation.getInt(cumulation.readerIndex()));
+            } catch (TooLongFrameException e) {
+                release();
+                throw e;
+            }
+            cumulation.ensureWritable(length);
+        }
+        int frameSize = LENGTH_FIELD_SIZE + cumulation.getInt(cumulation.readerIndex());
+        int len = Math.min(frameSize - cumulation.readableBytes(), in.readableBytes());
+        cumulation.writeBytes(in, len);
+        return cumulation.readableBytes() == frameSize;
+    }
+
+    private int frameLength(int length) {
+        if (length < 0 || length > maxFrameLength) {
+            throw new TooLongFrameException("frame length " + (length & 0xFFFFFFFFL) + " exceeds " + maxFrameLength);
+        }
+        return length;
+    }
+}
@@ -1,24 +1,27 @@
 package org.jetlinks.protocol.official.tcp;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.handler.codec.TooLongFrameException;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.net.NetClientOptions;
 import io.vertx.core.net.NetSocket;
-import io.vertx.core.parsetools.RecordParser;
 import lombok.SneakyThrows;
 import org.jetlinks.core.message.AcknowledgeDeviceMessage;
 import org.jetlinks.core.message.DeviceMessage;
 import org.jetlinks.core.message.DeviceOnlineMessage;
 import org.jetlinks.core.message.property.ReadPropertyMessage;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
 import org.jetlinks.core.message.property.WritePropertyMessage;
 import org.jetlinks.protocol.official.binary.BinaryDeviceOnlineMessage;
 import org.jetlinks.protocol.official.binary.BinaryMessageType;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -30,6 +33,8 @@ public class TcpDevice {
         int start = args.length > 0 ? Integer.parseInt(args[0]) : 1;
         int count = args.length > 1 ? Integer.parseInt(args[1]) : 8000;
         String[] hosts = args.length > 2 ? args[2].split(",") : new String[]{"0.0.0.0"};
+        //每秒批量上报的属性数量,0为不上报
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 0;
 
         Flux.range(start, count)
             .flatMap(i -> Mono
@@ -44,30 +49,14 @@ public class TcpDevice {
                                              sink.success();
                                          })
                                          .onSuccess(socket -> {
-                                             RecordParser parser = RecordParser.newFixed(4);
-                                             AtomicReference<Buffer> buffer = new AtomicReference<>();
-                                             parser.handler(buf -> {
-                                                 buffer.accumulateAndGet(buf, (a, b) -> {
-                                                     if (a == null) {
-                                                         parser.fixedSizeMode(buf.getInt(0));
-                                                         return b;
-                                                     }
-                                                     parser.fixedSizeMode(4);
-
-                                                     sink.success("tcp-off-" + i + ":" + socket.localAddress());
-
-                                                     BinaryMessageType
-                                                             .read(b.getByteBuf(),
-                                                                   null,
-                                                                   (downstream, seq) -> {
-                                                                       handleDownStream(downstream, seq, socket);
-                                                                       return null;
-                                                                   });
-                                                     return null;
-                                                 });
-                                             });
+                                             AtomicReference<Long> timer = new AtomicReference<>();
+                                             BinaryFrameDecoder decoder = new BinaryFrameDecoder(UnpooledByteBufAllocator.DEFAULT);
                                              socket
                                                      .closeHandler((s) -> {
+                                                         if (timer.get() != null) {
+                                                             vertx.cancelTimer(timer.get());
+                                                         }
+                                                         decoder.release();
                                                          System.out.println("tcp-off-" + i + ":" + socket.localAddress() + "closed");
                                                          sink.success();
                                                      })
@@ -75,13 +64,36 @@ public class TcpDevice {
                                                          System.out.println("tcp-off-" + i + ":" + socket.localAddress() + " " + er.getMessage());
                                                          sink.success();
                                                      })
-                                                     .handler(parser);
+                                                     .handler(buffer -> {
+                                                         try {
+                                                             decoder.decode(buffer.getByteBuf(), frame -> {
+                                                                 sink.success("tcp-off-" + i + ":" + socket.localAddress());
+                                                                 frame.skipBytes(BinaryFrameDecoder.LENGTH_FIELD_SIZE);
+                                                                 BinaryMessageType
+                                                                         .read(frame,
+                                                                               null,
+                                                                               (downstream, seq) -> {
+                                                                                   handleDownStream(downstream, seq, socket);
+                                                                                   return null;
+                                                                               });
+                                                             });
+                                                         } catch (TooLongFrameException e) {
+                                                             System.out.println("tcp-off-" + i + ":" + socket.localAddress() + " " + e.getMessage());
+                                                             socket.close();
+                                                         }
+                                                     });
 
                                              DeviceOnlineMessage message = new DeviceOnlineMessage();
                                              message.addHeader(BinaryDeviceOnlineMessage.loginToken, "test");
                                              message.setDeviceId("tcp-off-" + i);
 
-                                             socket.write(Buffer.buffer(TcpDeviceMessageCodec.wrapByteByf(BinaryMessageType.write(message, Unpooled.buffer()))));
+                                             socket.write(Buffer.buffer(TcpDeviceMessageCodec.encodeMessage(message, UnpooledByteBufAllocator.DEFAULT)));
+
+                                             if (batchSize > 0) {
+                                                 timer.set(vertx.setPeriodic(1000, id -> socket.write(
+                                                         Buffer.buffer(reportBatch(message.getDeviceId(), batchSize))
+                                                 )));
+                                             }
 
                                          });
                              }),
@@ -93,6 +105,24 @@ public class TcpDevice {
         System.in.read();
     }
 
+    //模拟设备缓存1秒内的采样数据后批量上报
+    protected static ByteBuf reportBatch(String deviceId, int batchSize) {
+        long now = System.currentTimeMillis();
+        List<DeviceMessage> messages = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ReportPropertyMessage message = new ReportPropertyMessage();
+            message.setProperties(Collections.singletonMap(
+                    "temp0",
+                    ThreadLocalRandom
+                            .current()
+                            .nextFloat() * 100
+            ));
+            message.setTimestamp(now - (batchSize - i) * 1000L / batchSize);
+            messages.add(message);
+        }
+        return TcpDeviceMessageCodec.encodeBatch(deviceId, messages, UnpooledByteBufAllocator.DEFAULT);
+    }
+
     protected static void handleDownStream(DeviceMessage downstream, int seq, NetSocket socket) {
 
         if (!(downstream instanceof AcknowledgeDeviceMessage)) {
@@ -118,9 +148,7 @@ public class TcpDevice {
         }
         if (reply != null) {
             socket.write(
-                    Buffer.buffer(TcpDeviceMessageCodec.wrapByteByf(BinaryMessageType.write(
-                            reply
-                            , seq, Unpooled.buffer())))
+                    Buffer.buffer(TcpDeviceMessageCodec.encodeMessage(reply, seq, UnpooledByteBufAllocator.DEFAULT))
             );
         }
     }
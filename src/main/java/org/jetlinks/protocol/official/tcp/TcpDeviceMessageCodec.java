@@ -1,20 +1,37 @@
 package org.jetlinks.protocol.official.tcp;
 
+import com.google.common.cache.CacheBuilder;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.TooLongFrameException;
 import lombok.NonNull;
+import org.jetlinks.core.device.DeviceOperator;
+import org.jetlinks.core.enums.ErrorCode;
+import org.jetlinks.core.exception.DeviceOperationException;
 import org.jetlinks.core.message.*;
 import org.jetlinks.core.message.codec.*;
 import org.jetlinks.core.metadata.DefaultConfigMetadata;
+import org.jetlinks.core.metadata.DeviceConfigScope;
+import org.jetlinks.core.metadata.types.BooleanType;
 import org.jetlinks.core.metadata.types.PasswordType;
+import org.jetlinks.core.server.session.DeviceSession;
 import org.jetlinks.protocol.official.binary.AckCode;
+import org.jetlinks.protocol.official.binary.AuthenticationCache;
 import org.jetlinks.protocol.official.binary.BinaryAcknowledgeDeviceMessage;
 import org.jetlinks.protocol.official.binary.BinaryDeviceOnlineMessage;
 import org.jetlinks.protocol.official.binary.BinaryMessageType;
+import org.jetlinks.protocol.official.binary.MessageSequenceTable;
 import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class TcpDeviceMessageCodec implements DeviceMessageCodec {
 
@@ -23,8 +40,68 @@ public class TcpDeviceMessageCodec implements DeviceMessageCodec {
     public static final DefaultConfigMetadata tcpConfig = new DefaultConfigMetadata(
             "TCP认证配置"
             , "")
-            .add(CONFIG_KEY_SECURE_KEY, "secureKey", "密钥", new PasswordType());
+            .add(CONFIG_KEY_SECURE_KEY, "secureKey", "密钥", new PasswordType())
+            .add(BinaryMessageType.CONFIG_KEY_COMPACT, "紧凑编码", "设备支持紧凑编码时开启,平台下发的数据将使用更短的编码", new BooleanType(),
+                 DeviceConfigScope.product, DeviceConfigScope.device);
 
+    //默认每个设备最大未回复的指令数量
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    private final ByteBufAllocator allocator;
+
+    //每个设备最大未回复的指令数量
+    private final int maxInFlight;
+
+    private final AuthenticationCache authenticationCache;
+
+    private final int maxFrameLength = BinaryFrameDecoder.DEFAULT_MAX_FRAME_LENGTH;
+
+    //存在半包的连接对应的解码器,连接断开(会话被回收)或者长时间未收到后续数据时释放暂存的数据
+    private final Map<DeviceSession, BinaryFrameDecoder> pending = CacheBuilder
+            .newBuilder()
+            .weakKeys()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .<DeviceSession, BinaryFrameDecoder>removalListener(notification -> {
+                if (notification.wasEvicted() && notification.getValue() != null) {
+                    notification.getValue().release();
+                }
+            })
+            .build()
+            .asMap();
+
+    /**
+     * @param allocator   编码时使用的ByteBufAllocator,编码后的ByteBuf在发送给设备后由网络层释放
+     * @param maxInFlight 每个设备最大未回复的指令数量,超过时下发将返回错误{@link ErrorCode#SERVER_NOT_AVAILABLE},
+     *                    未回复的指令在30秒后自动释放.小于等于0时使用{@link #DEFAULT_MAX_IN_FLIGHT},
+     *                    不能超过{@link BinaryMessageType#getSequenceCapacity()}
+     * @param authenticationCache 设备连接时的认证缓存
+     * @throws IllegalArgumentException maxInFlight超过每个设备最多记录的指令数量时
+     */
+    public TcpDeviceMessageCodec(ByteBufAllocator allocator, int maxInFlight, AuthenticationCache authenticationCache) {
+        int capacity = BinaryMessageType.getSequenceCapacity();
+        if (maxInFlight > capacity) {
+            throw new IllegalArgumentException("max-in-flight [" + maxInFlight + "] must not be greater than sequence capacity [" + capacity
+                                                       + "], see " + BinaryMessageType.CONFIG_KEY_SEQUENCE_CAPACITY);
+        }
+        this.allocator = allocator;
+        this.maxInFlight = maxInFlight <= 0 ? Math.min(DEFAULT_MAX_IN_FLIGHT, capacity) : maxInFlight;
+        this.authenticationCache = authenticationCache;
+    }
+
+    public TcpDeviceMessageCodec(ByteBufAllocator allocator, int maxInFlight) {
+        this(allocator, maxInFlight, new AuthenticationCache());
+    }
+
+    /**
+     * @param allocator 编码时使用的ByteBufAllocator,编码后的ByteBuf在发送给设备后由网络层释放
+     */
+    public TcpDeviceMessageCodec(ByteBufAllocator allocator) {
+        this(allocator, 0);
+    }
+
+    public TcpDeviceMessageCodec() {
+        this(PooledByteBufAllocator.DEFAULT);
+    }
 
     @Override
     public Transport getSupportTransport() {
@@ -34,16 +111,85 @@ public class TcpDeviceMessageCodec implements DeviceMessageCodec {
     @NonNull
     @Override
     public Publisher<? extends Message> decode(@NonNull MessageDecodeContext context) {
+        List<ByteBuf> frames;
+        try {
+            frames = readFrames(context);
+        } catch (TooLongFrameException error) {
+            //报文长度错误,后续数据已无法解析,断开连接
+            ((FromDeviceMessageContext) context).getSession().close();
+            return Mono.error(error);
+        }
+        if (frames.size() == 1) {
+            return decodeFrameAndRelease(frames.get(0), context.getDevice(), context);
+        }
+        //一次读取中包含多个报文时按顺序处理,与认证报文一起读取到的报文在认证通过后使用认证的设备处理
+        AtomicReference<DeviceOperator> device = new AtomicReference<>(context.getDevice());
+        return Flux
+                .fromIterable(frames)
+                .concatMap(frame -> {
+                    DeviceOperator current = device.get();
+                    Flux<DeviceMessage> messages = decodeFrameAndRelease(frame, current, context);
+                    if (current != null) {
+                        return messages;
+                    }
+                    //认证通过时返回上线消息
+                    return messages.concatMap(message -> context
+                            .getDevice(message.getDeviceId())
+                            .doOnNext(device::set)
+                            .thenReturn(message));
+                })
+                .doOnDiscard(ByteBuf.class, ByteBuf::release);
+    }
+
+    private Flux<DeviceMessage> decodeFrameAndRelease(ByteBuf frame, DeviceOperator device, MessageDecodeContext context) {
+        return Flux
+                .defer(() -> decodeFrame(frame, device, context))
+                .doFinally(ignore -> frame.release());
+    }
 
+    //拆分报文,网络组件已按长度拆包时只有一个报文.返回的报文需要在处理后释放
+    private List<ByteBuf> readFrames(MessageDecodeContext context) {
         ByteBuf payload = context.getMessage().getPayload();
+        DeviceSession session = ((FromDeviceMessageContext) context).getSession();
+
+        //只有存在半包的连接才会缓存解码器
+        BinaryFrameDecoder decoder = pending.remove(session);
+        if (decoder == null) {
+            decoder = new BinaryFrameDecoder(maxFrameLength, allocator);
+        }
+        List<ByteBuf> frames = new ArrayList<>(1);
+        try {
+            decoder.decode(payload, frame -> frames.add(frame.retain()));
+        } catch (Throwable error) {
+            for (ByteBuf frame : frames) {
+                frame.release();
+            }
+            throw error;
+        }
+        if (decoder.isPending()) {
+            pending.put(session, decoder);
+        }
+        return frames;
+    }
+
+    private Flux<DeviceMessage> decodeFrame(ByteBuf payload, DeviceOperator device, MessageDecodeContext context) {
         //read index
         payload.readInt();
 
         //处理tcp连接后的首次消息
-        if (context.getDevice() == null) {
-            return handleLogin(payload, context);
+        if (device == null) {
+            return handleLogin(payload, context).flux();
+        }
+        if (BinaryMessageType.isDictionaryRequired(payload)) {
+            //使用物模型对应的属性字典读取,读取完成前保留缓冲区
+            payload.retain();
+            return BinaryMessageType
+                    .getDictionary(device)
+                    .flatMapIterable(dictionary -> BinaryMessageType.readAll(payload, device.getDeviceId(), dictionary))
+                    .doFinally(ignore -> payload.release());
         }
-        return Mono.justOrEmpty(BinaryMessageType.read(payload, context.getDevice().getDeviceId()));
+        //批量报文中包含多条消息
+        return Flux.fromIterable(BinaryMessageType.readAll(payload, device.getDeviceId()));
     }
 
     private Mono<DeviceMessage> handleLogin(ByteBuf payload, MessageDecodeContext context) {
@@ -53,19 +199,15 @@ public class TcpDeviceMessageCodec implements DeviceMessageCodec {
                     .getHeader(BinaryDeviceOnlineMessage.loginToken)
                     .orElse(null);
 
-            String deviceId = message.getDeviceId();
-            return context
-                    .getDevice(deviceId)
-                    .flatMap(device -> device
-                            .getConfig(CONFIG_KEY_SECURE_KEY)
-                            .flatMap(config -> {
-                                if (Objects.equals(config.asString(), token)) {
-                                    return ack(message, AckCode.ok, context)
-                                            .thenReturn(message);
-                                }
-                                return Mono.empty();
-                            }))
-                    .switchIfEmpty(Mono.defer(() -> ack(message, AckCode.noAuth, context)));
+            return authenticationCache
+                    .authenticate(message.getDeviceId(), token, context::getDevice)
+                    .flatMap(success -> {
+                        if (success) {
+                            return ack(message, AckCode.ok, context)
+                                    .thenReturn(message);
+                        }
+                        return ack(message, AckCode.noAuth, context);
+                    });
 
         } else {
             return ack(message, AckCode.noAuth, context);
@@ -79,6 +221,52 @@ public class TcpDeviceMessageCodec implements DeviceMessageCodec {
                 payload);
     }
 
+    /**
+     * 编码消息,前4字节为消息长度.
+     * 编码前先计算消息长度并预留长度字段,只分配一次缓冲区,写出后回填长度.
+     *
+     * @param message   消息
+     * @param allocator 缓冲区分配器
+     * @return 编码后的数据
+     */
+    public static ByteBuf encodeMessage(DeviceMessage message, ByteBufAllocator allocator) {
+        return writeLength(BinaryMessageType.write(message, allocator, 4));
+    }
+
+    public static ByteBuf encodeMessage(DeviceMessage message, int msgId, ByteBufAllocator allocator) {
+        return encodeMessage(message, msgId, false, allocator);
+    }
+
+    /**
+     * 编码消息,前4字节为消息长度.
+     *
+     * @param message   消息
+     * @param msgId     消息序号
+     * @param compact   是否使用紧凑编码,见{@link BinaryMessageType#CONFIG_KEY_COMPACT}
+     * @param allocator 缓冲区分配器
+     * @return 编码后的数据
+     */
+    public static ByteBuf encodeMessage(DeviceMessage message, int msgId, boolean compact, ByteBufAllocator allocator) {
+        return writeLength(BinaryMessageType.write(message, msgId, compact, allocator, 4));
+    }
+
+    /**
+     * 将同一个设备的多条消息编码为一个批量报文,前4字节为消息长度.
+     *
+     * @param deviceId  设备ID
+     * @param messages  消息
+     * @param allocator 缓冲区分配器
+     * @return 编码后的数据
+     * @see org.jetlinks.protocol.official.binary.BinaryBatchMessage
+     */
+    public static ByteBuf encodeBatch(String deviceId, List<? extends DeviceMessage> messages, ByteBufAllocator allocator) {
+        return writeLength(BinaryMessageType.writeBatch(deviceId, messages, 0, allocator, 4));
+    }
+
+    private static ByteBuf writeLength(ByteBuf buf) {
+        return buf.setInt(0, buf.writerIndex() - 4);
+    }
+
     private <T> Mono<T> ack(DeviceMessage source, AckCode code, MessageDecodeContext context) {
         if(source==null){
             return Mono.empty();
@@ -93,11 +281,13 @@ public class TcpDeviceMessageCodec implements DeviceMessageCodec {
         source.getHeader(BinaryMessageType.HEADER_MSG_SEQ)
               .ifPresent(seq -> message.addHeader(BinaryMessageType.HEADER_MSG_SEQ, seq));
 
-        return ((FromDeviceMessageContext) context)
-                .getSession()
-                .send(EncodedMessage.simple(
-                        wrapByteByf(BinaryMessageType.write(message, Unpooled.buffer()))
-                ))
+        //订阅时才分配缓冲区,发送后由网络层释放
+        return Mono
+                .defer(() -> ((FromDeviceMessageContext) context)
+                        .getSession()
+                        .send(EncodedMessage.simple(
+                                encodeMessage(message, allocator)
+                        )))
                 .then(Mono.fromRunnable(() -> {
                     if (source instanceof DeviceOnlineMessage && code != AckCode.ok) {
                         ((FromDeviceMessageContext) context).getSession().close();
@@ -110,13 +300,28 @@ public class TcpDeviceMessageCodec implements DeviceMessageCodec {
     public Publisher<? extends EncodedMessage> encode(@NonNull MessageEncodeContext context) {
         DeviceMessage deviceMessage = ((DeviceMessage) context.getMessage());
         if (deviceMessage instanceof DisconnectDeviceMessage) {
+            BinaryMessageType.release(deviceMessage.getDeviceId());
             return Mono.empty();
         }
-        return Mono.just(EncodedMessage.simple(
-                wrapByteByf(
-                        BinaryMessageType.write(deviceMessage, Unpooled.buffer())
-                )
-        ));
+        //设备支持时才使用紧凑编码
+        return BinaryMessageType
+                .isCompact(context.getDevice())
+                .flatMap(compact -> {
+                    int msgId = BinaryMessageType.nextMsgId(deviceMessage, maxInFlight);
+                    //未回复的指令过多
+                    if (msgId == MessageSequenceTable.REJECTED) {
+                        return Mono.error(new DeviceOperationException(ErrorCode.SERVER_NOT_AVAILABLE));
+                    }
+                    try {
+                        return Mono.just(EncodedMessage.simple(
+                                encodeMessage(deviceMessage, msgId, compact, allocator)
+                        ));
+                    } catch (Throwable error) {
+                        //编码失败时释放消息序号,避免占用未回复的指令数量
+                        BinaryMessageType.releaseMsgId(deviceMessage, msgId);
+                        throw error;
+                    }
+                });
     }
 
 
@@ -0,0 +1,115 @@
+package org.jetlinks.protocol.official.udp;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 签名报文的防重放窗口,根据报文头中的时间戳和消息序号判断报文是否重复.
+ * <p>
+ * 时间戳与平台时间相差超过窗口大小的报文将被拒绝.窗口内每个设备记录最近{@link #RECENT_SIZE}个报文的时间戳和序号,
+ * 重复的报文以及比已淘汰的记录更早的报文将被拒绝,所以设备上报时时间戳和序号需要递增.
+ * <p>
+ * 有记录的设备即为使用签名认证的设备,平台下发指令时同样使用签名,见{@link #contains(String)}.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class ReplayWindow {
+
+    //每个设备记录的报文数量
+    static final int RECENT_SIZE = 16;
+
+    private final long window;
+
+    private final LongSupplier clock;
+
+    private final Cache<String, Recent> devices;
+
+    /**
+     * @param window      时间窗口
+     * @param idleTimeout 设备多久没有上报后移除记录,不小于窗口的2倍
+     */
+    public ReplayWindow(Duration window, Duration idleTimeout) {
+        this(window.toMillis(), idleTimeout.toMillis(), System::currentTimeMillis);
+    }
+
+    ReplayWindow(long window, long idleTimeout, LongSupplier clock) {
+        this.window = window;
+        this.clock = clock;
+        //记录被移除后,窗口内的报文仍然需要通过记录判断是否重复
+        this.devices = CacheBuilder
+                .newBuilder()
+                .expireAfterAccess(Math.max(idleTimeout, window * 2), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 判断报文是否可以接收,可以接收时记录报文.应该在校验签名通过后调用.
+     *
+     * @param deviceId  设备ID
+     * @param timestamp 报文头中的时间戳
+     * @param seq       报文头中的消息序号
+     * @return 是否可以接收
+     */
+    public boolean accept(String deviceId, long timestamp, int seq) {
+        if (Math.abs(clock.getAsLong() - timestamp) > window) {
+            return false;
+        }
+        return devices
+                .asMap()
+                .computeIfAbsent(deviceId, ignore -> new Recent())
+                .accept((timestamp << 16) | (seq & 0xFFFF));
+    }
+
+    /**
+     * @param deviceId 设备ID
+     * @return 设备最近是否上报过签名报文
+     */
+    public boolean contains(String deviceId) {
+        return devices.getIfPresent(deviceId) != null;
+    }
+
+    public void remove(String deviceId) {
+        devices.invalidate(deviceId);
+    }
+
+    private static class Recent {
+        private final long[] keys = new long[RECENT_SIZE];
+        private int size;
+        //已淘汰的最大记录
+        private long floor = Long.MIN_VALUE;
+
+        synchronized boolean accept(long key) {
+            if (key <= floor) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return false;
+                }
+            }
+            if (size < RECENT_SIZE) {
+                keys[size++] = key;
+                return true;
+            }
+            //淘汰最小的记录
+            int min = 0;
+            for (int i = 1; i < RECENT_SIZE; i++) {
+                if (keys[i] < keys[min]) {
+                    min = i;
+                }
+            }
+            if (key < keys[min]) {
+                floor = key;
+                return true;
+            }
+            floor = keys[min];
+            keys[min] = key;
+            return true;
+        }
+    }
+}
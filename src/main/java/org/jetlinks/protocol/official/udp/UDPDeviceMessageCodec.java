@@ -1,19 +1,25 @@
 package org.jetlinks.protocol.official.udp;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import lombok.NonNull;
-import org.jetlinks.core.device.DeviceOperator;
 import org.jetlinks.core.message.*;
 import org.jetlinks.core.message.codec.*;
 import org.jetlinks.core.metadata.DefaultConfigMetadata;
+import org.jetlinks.core.metadata.DeviceConfigScope;
+import org.jetlinks.core.metadata.types.BooleanType;
 import org.jetlinks.core.metadata.types.PasswordType;
 import org.jetlinks.protocol.official.binary.*;
+import org.jetlinks.protocol.official.cipher.Signers;
 import org.reactivestreams.Publisher;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Objects;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
 
 public class UDPDeviceMessageCodec implements DeviceMessageCodec {
 
@@ -22,8 +28,58 @@ public class UDPDeviceMessageCodec implements DeviceMessageCodec {
     public static final DefaultConfigMetadata udpConfig = new DefaultConfigMetadata(
             "UDP认证配置"
             , "")
-            .add(CONFIG_KEY_SECURE_KEY, "secureKey", "密钥", new PasswordType());
+            .add(CONFIG_KEY_SECURE_KEY, "secureKey", "密钥", new PasswordType())
+            .add(BinaryMessageType.CONFIG_KEY_COMPACT, "紧凑编码", "设备支持紧凑编码时开启,平台下发的数据将使用更短的编码", new BooleanType(),
+                 DeviceConfigScope.product, DeviceConfigScope.device);
 
+    //认证类型: 报文中包含密钥
+    public static final byte AUTH_TYPE_TOKEN = 0x00;
+
+    //认证类型: 报文中包含消息内容的签名
+    public static final byte AUTH_TYPE_SIGN = 0x01;
+
+    //认证类型: 报文中包含会话ID,会话ID为0时为握手报文,后面紧跟密钥
+    public static final byte AUTH_TYPE_SESSION = 0x02;
+
+    private final ByteBufAllocator allocator;
+
+    private final AuthenticationCache authenticationCache;
+
+    private final UDPSessionTable sessions;
+
+    //签名报文的时间窗口
+    private final ReplayWindow replayWindow;
+
+    /**
+     * @param allocator           编码时使用的ByteBufAllocator,编码后的ByteBuf在发送给设备后由网络层释放
+     * @param authenticationCache 每个报文的认证缓存
+     * @param sessionTimeout      会话模式下会话的超时时间
+     */
+    public UDPDeviceMessageCodec(ByteBufAllocator allocator, AuthenticationCache authenticationCache, Duration sessionTimeout) {
+        this.allocator = allocator;
+        this.authenticationCache = authenticationCache;
+        this.sessions = new UDPSessionTable(sessionTimeout);
+        this.replayWindow = new ReplayWindow(Duration.ofMinutes(5), sessionTimeout);
+    }
+
+    /**
+     * @param allocator           编码时使用的ByteBufAllocator,编码后的ByteBuf在发送给设备后由网络层释放
+     * @param authenticationCache 每个报文的认证缓存
+     */
+    public UDPDeviceMessageCodec(ByteBufAllocator allocator, AuthenticationCache authenticationCache) {
+        this(allocator, authenticationCache, Duration.ofMinutes(30));
+    }
+
+    /**
+     * @param allocator 编码时使用的ByteBufAllocator,编码后的ByteBuf在发送给设备后由网络层释放
+     */
+    public UDPDeviceMessageCodec(ByteBufAllocator allocator) {
+        this(allocator, new AuthenticationCache());
+    }
+
+    public UDPDeviceMessageCodec() {
+        this(PooledByteBufAllocator.DEFAULT);
+    }
 
     @Override
     public Transport getSupportTransport() {
@@ -36,27 +92,157 @@ public class UDPDeviceMessageCodec implements DeviceMessageCodec {
 
         ByteBuf payload = context.getMessage().getPayload();
 
-        //todo 认证类型, 0 token,1 sign
+        //认证类型, 0 token,1 sign,2 session
         byte authType = payload.readByte();
 
+        if (authType == AUTH_TYPE_SESSION) {
+            return decodeSession(payload, context);
+        }
+        if (authType == AUTH_TYPE_SIGN) {
+            return decodeSigned(payload, context);
+        }
+
         //前面是token
         String token = (String) DataType.STRING.read(payload);
 
-        //接下来是消息
-        DeviceMessage message = BinaryMessageType.read(payload);
+        //接下来是消息,批量报文中包含同一个设备的多条消息
+        return read(payload, null, context, this::encodeAck, messages -> handle(token, messages, context));
+    }
+
+    private Flux<DeviceMessage> decodeSession(ByteBuf payload, MessageDecodeContext context) {
+        int sessionId = payload.readInt();
+        //握手
+        if (sessionId == UDPSessionTable.NO_SESSION) {
+            String token = (String) DataType.STRING.read(payload);
+            return read(payload, null, context, this::encodeNoSession, messages -> handshake(token, messages, context));
+        }
+        //报文中可以不包含设备ID,使用会话对应的设备
+        String deviceId = sessions.getDeviceId(sessionId);
+        return read(payload, deviceId, context, this::encodeNoSession, messages -> handleSession(sessionId, deviceId, messages, context));
+    }
+
+    private Flux<DeviceMessage> decodeSigned(ByteBuf payload, MessageDecodeContext context) {
+        int signIndex = payload.readerIndex();
+        payload.skipBytes(Signers.HMAC_SHA256.getLength());
+        //签名的内容为后续的全部报文数据
+        ByteBuf data = payload.slice();
+        long timestamp = BinaryMessageType.peekTimestamp(data);
+
+        //获取密钥后才能校验签名,校验完成前保留缓冲区
+        payload.retain();
+        return read(payload, null, context, this::encodeAck, messages -> handleSigned(payload, signIndex, data, timestamp, messages, context))
+                .doFinally(ignore -> payload.release());
+    }
+
+    private Flux<DeviceMessage> read(ByteBuf payload,
+                                     String deviceId,
+                                     MessageDecodeContext context,
+                                     Function<DeviceMessage, EncodedMessage> noAuthEncoder,
+                                     Function<List<DeviceMessage>, Flux<DeviceMessage>> handler) {
+        if (BinaryMessageType.isDictionaryRequired(payload)) {
+            String targetId = deviceId != null ? deviceId : BinaryMessageType.peekDeviceId(payload);
+            //使用物模型对应的属性字典读取,读取完成前保留缓冲区
+            payload.retain();
+            return context
+                    .getDevice(targetId)
+                    .flatMap(BinaryMessageType::getDictionary)
+                    .map(dictionary -> handler.apply(BinaryMessageType.readAll(payload, deviceId, dictionary)))
+                    //设备不存在
+                    .switchIfEmpty(Mono.fromSupplier(() -> this.<DeviceMessage>ack(
+                            unknownDevice(targetId, payload), AckCode.noAuth, context, noAuthEncoder).flux()))
+                    .flatMapMany(Function.identity())
+                    .doFinally(ignore -> payload.release());
+        }
+        return handler.apply(BinaryMessageType.readAll(payload, deviceId));
+    }
+
+    private Flux<DeviceMessage> handle(String token, List<DeviceMessage> messages, MessageDecodeContext context) {
+        if (messages.isEmpty()) {
+            return Flux.empty();
+        }
+        DeviceMessage message = messages.get(0);
+
+        //已认证过的设备直接使用缓存中的密钥校验
+        return authenticationCache
+                .authenticate(message.getDeviceId(), token, context::getDevice)
+                .flatMap(success -> {
+                    if (success) {
+                        return ack(message, AckCode.ok, context, this::encodeAck)
+                                .thenReturn(messages);
+                    }
+                    return ack(message, AckCode.noAuth, context, this::encodeAck);
+                })
+                .flatMapIterable(Function.identity());
+    }
+
+    private Flux<DeviceMessage> handshake(String token, List<DeviceMessage> messages, MessageDecodeContext context) {
+        if (messages.isEmpty()) {
+            return Flux.empty();
+        }
+        DeviceMessage message = messages.get(0);
+
+        //认证通过后分配会话,通过回复报文中的会话ID告知设备
+        return authenticationCache
+                .authenticate(message.getDeviceId(), token, context::getDevice)
+                .flatMap(success -> {
+                    if (success) {
+                        int sessionId = sessions.create(message.getDeviceId());
+                        return ack(message, AckCode.ok, context, reply -> doEncode(reply, sessionId, false))
+                                .thenReturn(messages);
+                    }
+                    return ack(message, AckCode.noAuth, context, this::encodeNoSession);
+                })
+                .flatMapIterable(Function.identity());
+    }
+
+    private Flux<DeviceMessage> handleSession(int sessionId,
+                                              String deviceId,
+                                              List<DeviceMessage> messages,
+                                              MessageDecodeContext context) {
+        if (messages.isEmpty()) {
+            return Flux.empty();
+        }
+        DeviceMessage message = messages.get(0);
+        //会话已失效或者报文中的设备与会话不一致,设备需要重新握手
+        if (deviceId == null || !deviceId.equals(message.getDeviceId())) {
+            return this.<DeviceMessage>ack(message, AckCode.noAuth, context, this::encodeNoSession).flux();
+        }
+        return ack(message, AckCode.ok, context, reply -> doEncode(reply, sessionId, false))
+                .thenMany(Flux.fromIterable(messages));
+    }
+
+    private Flux<DeviceMessage> handleSigned(ByteBuf payload,
+                                             int signIndex,
+                                             ByteBuf data,
+                                             long timestamp,
+                                             List<DeviceMessage> messages,
+                                             MessageDecodeContext context) {
+        if (messages.isEmpty()) {
+            return Flux.empty();
+        }
+        DeviceMessage message = messages.get(0);
+        String deviceId = message.getDeviceId();
+        int seq = message.getHeader(BinaryMessageType.HEADER_MSG_SEQ).orElse(0);
+
+        return authenticationCache
+                .authenticate(deviceId,
+                              key -> Signers.HMAC_SHA256.verify(data, key, payload, signIndex),
+                              context::getDevice)
+                //签名正确后再判断是否重放,避免伪造的报文影响记录
+                .filter(ignore -> replayWindow.accept(deviceId, timestamp, seq))
+                .flatMap(key -> ack(message, AckCode.ok, context, reply -> doEncode(reply, key, true, false))
+                        .thenReturn(messages))
+                //回复时没有密钥,不签名
+                .switchIfEmpty(Mono.defer(() -> ack(message, AckCode.noAuth, context, this::encodeAck)))
+                .flatMapIterable(Function.identity());
+    }
 
-        return context
-                .getDevice(message.getDeviceId())
-                .flatMap(device -> device
-                        .getConfig(CONFIG_KEY_SECURE_KEY)
-                        .flatMap(config -> {
-                            if (Objects.equals(config.asString(), token)) {
-                                return ack(message, AckCode.ok, context)
-                                        .thenReturn(message);
-                            }
-                            return Mono.empty();
-                        }))
-                .switchIfEmpty(Mono.defer(() -> ack(message, AckCode.noAuth, context)));
+    //无法读取报文时用于回复的消息
+    private static DeviceMessage unknownDevice(String deviceId, ByteBuf payload) {
+        AcknowledgeDeviceMessage message = new AcknowledgeDeviceMessage();
+        message.setDeviceId(deviceId);
+        message.addHeader(BinaryMessageType.HEADER_MSG_SEQ, BinaryMessageType.peekMsgId(payload));
+        return message;
     }
 
     public static ByteBuf wrapByteByf(ByteBuf payload) {
@@ -64,7 +250,10 @@ public class UDPDeviceMessageCodec implements DeviceMessageCodec {
         return payload;
     }
 
-    private <T> Mono<T> ack(DeviceMessage source, AckCode code, MessageDecodeContext context) {
+    private <T> Mono<T> ack(DeviceMessage source,
+                            AckCode code,
+                            MessageDecodeContext context,
+                            Function<DeviceMessage, EncodedMessage> encoder) {
         AcknowledgeDeviceMessage message = new AcknowledgeDeviceMessage();
         message.addHeader(BinaryAcknowledgeDeviceMessage.codeHeader, code.name());
         message.setDeviceId(source.getDeviceId());
@@ -75,9 +264,11 @@ public class UDPDeviceMessageCodec implements DeviceMessageCodec {
         source.getHeader(BinaryMessageType.HEADER_MSG_SEQ)
               .ifPresent(seq -> message.addHeader(BinaryMessageType.HEADER_MSG_SEQ, seq));
 
-        return ((FromDeviceMessageContext) context)
-                .getSession()
-                .send(doEncode(message, ""))
+        //订阅时才分配缓冲区,发送后由网络层释放
+        return Mono
+                .defer(() -> ((FromDeviceMessageContext) context)
+                        .getSession()
+                        .send(encoder.apply(message)))
                 .then(Mono.fromRunnable(() -> {
                     if (source instanceof DeviceOnlineMessage && code != AckCode.ok) {
                         ((FromDeviceMessageContext) context).getSession().close();
@@ -90,25 +281,66 @@ public class UDPDeviceMessageCodec implements DeviceMessageCodec {
     public Publisher<? extends EncodedMessage> encode(@NonNull MessageEncodeContext context) {
         DeviceMessage deviceMessage = ((DeviceMessage) context.getMessage());
         if (deviceMessage instanceof DisconnectDeviceMessage) {
+            sessions.remove(deviceMessage.getDeviceId());
             return Mono.empty();
         }
+        //会话模式下使用会话ID,不需要获取密钥
+        int sessionId = sessions.getSessionId(deviceMessage.getDeviceId());
+        if (sessionId != UDPSessionTable.NO_SESSION) {
+            return BinaryMessageType
+                    .isCompact(context.getDevice())
+                    .map(compact -> doEncode(deviceMessage, sessionId, compact));
+        }
+        //设备使用签名认证时,下发的指令同样签名,不发送密钥
+        boolean signed = replayWindow.contains(deviceMessage.getDeviceId());
+
+        return authenticationCache
+                .getSecureKey(deviceMessage.getDeviceId(), context::getDevice)
+                .flatMap(key -> BinaryMessageType
+                        .isCompact(context.getDevice())
+                        .map(compact -> doEncode(deviceMessage, key, signed, compact)));
+    }
 
-        return context
-                .getDevice(deviceMessage.getDeviceId())
-                .flatMap(device -> device
-                        .getConfig(CONFIG_KEY_SECURE_KEY)
-                        .map(config -> doEncode(deviceMessage, config.asString())));
+    //ack中没有动态类型的数据,不需要紧凑编码
+    private EncodedMessage encodeAck(DeviceMessage message) {
+        return doEncode(message, "", false);
     }
 
-    private EncodedMessage doEncode(DeviceMessage message, String token) {
-        ByteBuf buf = Unpooled.buffer();
-        //todo 认证类型, 0 token,1 sign
-        buf.writeByte(0);
+    private EncodedMessage encodeNoSession(DeviceMessage message) {
+        return doEncode(message, UDPSessionTable.NO_SESSION, false);
+    }
+
+    private EncodedMessage doEncode(DeviceMessage message, String key, boolean signed, boolean compact) {
+        if (!signed) {
+            return doEncode(message, key, compact);
+        }
+        //预留认证类型和签名的位置,写出后对消息内容签名
+        int reserved = 1 + Signers.HMAC_SHA256.getLength();
+        ByteBuf buf = BinaryMessageType.write(message, compact, allocator, reserved);
+        buf.setByte(0, AUTH_TYPE_SIGN);
+        Signers.HMAC_SHA256.sign(buf.slice(reserved, buf.writerIndex() - reserved), key, buf, 1);
+        return EncodedMessage.simple(wrapByteByf(buf));
+    }
+
+    private EncodedMessage doEncode(DeviceMessage message, String token, boolean compact) {
+        //指令,预留认证类型和token的位置,只分配一次缓冲区
+        ByteBuf buf = BinaryMessageType.write(message, compact, allocator, 1 + DataType.STRING.size(token));
+        int writerIndex = buf.writerIndex();
+        buf.writerIndex(0);
+        buf.writeByte(AUTH_TYPE_TOKEN);
         //token
         DataType.STRING.write(buf, token);
-        //指令
-        return EncodedMessage.simple(wrapByteByf(BinaryMessageType.write(message, buf)));
+        buf.writerIndex(writerIndex);
+        return EncodedMessage.simple(wrapByteByf(buf));
+
+    }
 
+    private EncodedMessage doEncode(DeviceMessage message, int sessionId, boolean compact) {
+        //预留认证类型和会话ID的位置
+        ByteBuf buf = BinaryMessageType.write(message, compact, allocator, 5);
+        buf.setByte(0, AUTH_TYPE_SESSION);
+        buf.setInt(1, sessionId);
+        return EncodedMessage.simple(wrapByteByf(buf));
     }
 
 }
@@ -0,0 +1,130 @@
+package org.jetlinks.protocol.official.udp;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UDP会话表,设备通过密钥握手后分配一个4字节的会话ID,后续报文只需要携带会话ID,平台根据会话ID找到对应的设备.
+ * <p>
+ * 会话ID为随机的正整数,会话在一段时间内没有收发报文后失效,设备重新握手后之前的会话立即失效.
+ *
+ * @author zhouhao
+ * @since 3.0.0
+ */
+public class UDPSessionTable {
+
+    //无会话
+    public static final int NO_SESSION = 0;
+
+    private final Random random = new SecureRandom();
+
+    //会话ID -> 会话
+    private final Cache<Integer, Session> sessions;
+
+    //设备ID -> 会话,下发指令时使用
+    private final ConcurrentMap<String, Session> devices = new ConcurrentHashMap<>();
+
+    /**
+     * @param timeout 会话超时时间
+     */
+    public UDPSessionTable(Duration timeout) {
+        this(timeout, Ticker.systemTicker());
+    }
+
+    UDPSessionTable(Duration timeout, Ticker ticker) {
+        this.sessions = CacheBuilder
+                .newBuilder()
+                .expireAfterAccess(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .<Integer, Session>removalListener(notification -> {
+                    Session session = notification.getValue();
+                    if (session != null && notification.getCause() != RemovalCause.REPLACED) {
+                        devices.remove(session.deviceId, session);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 创建会话,设备之前的会话将失效
+     *
+     * @param deviceId 设备ID
+     * @return 会话ID
+     */
+    public int create(String deviceId) {
+        Map<Integer, Session> map = sessions.asMap();
+        Session session;
+        do {
+            session = new Session(random.nextInt() & 0x7FFFFFFF, deviceId);
+        } while (session.id == NO_SESSION || map.putIfAbsent(session.id, session) != null);
+
+        Session old = devices.put(deviceId, session);
+        if (old != null) {
+            sessions.invalidate(old.id);
+        }
+        return session.id;
+    }
+
+    /**
+     * 获取会话对应的设备ID,并刷新会话的有效期
+     *
+     * @param sessionId 会话ID
+     * @return 设备ID, 会话不存在或者已失效时返回null
+     */
+    public String getDeviceId(int sessionId) {
+        Session session = sessions.getIfPresent(sessionId);
+        return session == null ? null : session.deviceId;
+    }
+
+    /**
+     * 获取设备当前的会话ID
+     *
+     * @param deviceId 设备ID
+     * @return 会话ID, 没有会话时返回{@link #NO_SESSION}
+     */
+    public int getSessionId(String deviceId) {
+        Session session = devices.get(deviceId);
+        //会话可能已失效但还未清理
+        if (session == null || sessions.getIfPresent(session.id) != session) {
+            return NO_SESSION;
+        }
+        return session.id;
+    }
+
+    /**
+     * 移除设备的会话
+     *
+     * @param deviceId 设备ID
+     */
+    public void remove(String deviceId) {
+        Session session = devices.remove(deviceId);
+        if (session != null) {
+            sessions.invalidate(session.id);
+        }
+    }
+
+    public long size() {
+        sessions.cleanUp();
+        return sessions.size();
+    }
+
+    private static class Session {
+        private final int id;
+        private final String deviceId;
+
+        private Session(int id, String deviceId) {
+            this.id = id;
+            this.deviceId = deviceId;
+        }
+    }
+}
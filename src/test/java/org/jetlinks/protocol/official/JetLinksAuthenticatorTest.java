@@ -0,0 +1,126 @@
+package org.jetlinks.protocol.official;
+
+import com.google.common.base.Ticker;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetlinks.core.defaults.CompositeProtocolSupports;
+import org.jetlinks.core.device.*;
+import org.jetlinks.core.message.codec.DefaultTransport;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JetLinksAuthenticatorTest {
+
+    private TestDeviceRegistry registry;
+
+    @Before
+    public void init() {
+        registry = new TestDeviceRegistry(new CompositeProtocolSupports(), new StandaloneDeviceMessageBroker());
+        registry.register(ProductInfo.builder()
+                                     .id("product1")
+                                     .protocol("jetlinks")
+                                     .build())
+                .then(registry.register(DeviceInfo.builder()
+                                                  .id("device1")
+                                                  .productId("product1")
+                                                  .build()))
+                .flatMap(device -> device.setConfig("secureId", "test")
+                                         .then(device.setConfig("secureKey", "test-key")))
+                .block();
+    }
+
+    private AuthenticationResponse authenticate(JetLinksAuthenticator authenticator, String username, String password) {
+        return authenticator
+                .authenticate(new MqttAuthenticationRequest("device1", username, password, DefaultTransport.MQTT), registry)
+                .block();
+    }
+
+    @Test
+    public void testAuthenticate() {
+        JetLinksAuthenticator authenticator = new JetLinksAuthenticator();
+        String username = "test|" + System.currentTimeMillis();
+        String password = DigestUtils.md5Hex(username + "|test-key");
+
+        Assert.assertTrue(authenticate(authenticator, username, password).isSuccess());
+        //使用缓存
+        Assert.assertTrue(authenticate(authenticator, username, password).isSuccess());
+
+        Assert.assertFalse(authenticate(authenticator, username, password.toUpperCase()).isSuccess());
+        Assert.assertFalse(authenticate(authenticator, username, DigestUtils.md5Hex(username + "|test")).isSuccess());
+        Assert.assertFalse(authenticate(authenticator, username, null).isSuccess());
+
+        String otherId = "other|" + System.currentTimeMillis();
+        Assert.assertFalse(authenticate(authenticator, otherId, DigestUtils.md5Hex(otherId + "|test-key")).isSuccess());
+    }
+
+    @Test
+    public void testUsernameFormat() {
+        JetLinksAuthenticator authenticator = new JetLinksAuthenticator();
+
+        Assert.assertFalse(authenticate(authenticator, "test", "").isSuccess());
+        Assert.assertFalse(authenticate(authenticator, "test|", "").isSuccess());
+        Assert.assertFalse(authenticate(authenticator, "test|abc", "").isSuccess());
+        Assert.assertFalse(authenticate(authenticator, null, "").isSuccess());
+        //时间不同步
+        String expired = "test|" + (System.currentTimeMillis() - Duration.ofMinutes(10).toMillis());
+        Assert.assertFalse(authenticate(authenticator, expired, DigestUtils.md5Hex(expired + "|test-key")).isSuccess());
+
+        //时间戳后可以有其他内容
+        String username = "test|" + System.currentTimeMillis() + "|ext";
+        Assert.assertTrue(authenticate(authenticator, username, DigestUtils.md5Hex(username + "|test-key")).isSuccess());
+    }
+
+    @Test
+    public void testInvalidate() {
+        JetLinksAuthenticator authenticator = new JetLinksAuthenticator();
+        String username = "test|" + System.currentTimeMillis();
+        String password = DigestUtils.md5Hex(username + "|test-key");
+        Assert.assertTrue(authenticate(authenticator, username, password).isSuccess());
+
+        registry.getDevice("device1")
+                .flatMap(device -> device.setConfig("secureKey", "new-key"))
+                .block();
+        //缓存有效期内仍然可以使用旧密码
+        Assert.assertTrue(authenticate(authenticator, username, password).isSuccess());
+
+        authenticator.invalidate("device1");
+        Assert.assertFalse(authenticate(authenticator, username, password).isSuccess());
+    }
+
+    @Test
+    public void testRevalidate() {
+        AtomicLong nanos = new AtomicLong();
+        JetLinksAuthenticator authenticator = new JetLinksAuthenticator(10, Duration.ofMinutes(1), Duration.ofSeconds(10), new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+        String username = "test|" + System.currentTimeMillis();
+        String password = DigestUtils.md5Hex(username + "|test-key");
+        Assert.assertTrue(authenticate(authenticator, username, password).isSuccess());
+
+        //修改配置后未重新激活
+        registry.getDevice("device1")
+                .flatMap(device -> device.setConfig("secureKey", "new-key"))
+                .block();
+        Assert.assertTrue(authenticate(authenticator, username, password).isSuccess());
+
+        //超过重新校验时间后旧密码失效
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        Assert.assertFalse(authenticate(authenticator, username, password).isSuccess());
+        Assert.assertTrue(authenticate(authenticator, username, DigestUtils.md5Hex(username + "|new-key")).isSuccess());
+    }
+
+    @Test
+    public void testVerify() {
+        String username = "test|123";
+        Assert.assertTrue(JetLinksAuthenticator.verify(username, "key", DigestUtils.md5Hex(username + "|key")));
+        Assert.assertFalse(JetLinksAuthenticator.verify(username, "key", DigestUtils.md5Hex(username + "|key1")));
+        Assert.assertFalse(JetLinksAuthenticator.verify(username, "key", "abc"));
+    }
+}
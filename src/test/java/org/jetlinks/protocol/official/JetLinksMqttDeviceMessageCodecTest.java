@@ -1,12 +1,16 @@
 package org.jetlinks.protocol.official;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import org.jetlinks.core.defaults.CompositeProtocolSupports;
+import org.jetlinks.core.device.DeviceConfigKey;
 import org.jetlinks.core.device.DeviceInfo;
 import org.jetlinks.core.device.DeviceOperator;
 import org.jetlinks.core.device.ProductInfo;
 import org.jetlinks.core.device.StandaloneDeviceMessageBroker;
 import org.jetlinks.core.message.ChildDeviceMessage;
+import org.jetlinks.core.message.DeviceMessage;
 import org.jetlinks.core.message.DerivedMetadataMessage;
 import org.jetlinks.core.message.Message;
 import org.jetlinks.core.message.codec.*;
@@ -19,6 +23,7 @@ import org.jetlinks.core.server.session.DeviceSession;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.annotation.Nonnull;
@@ -66,6 +71,70 @@ public class JetLinksMqttDeviceMessageCodecTest {
         System.out.println(encodedMessage.getPayload().toString(StandardCharsets.UTF_8));
     }
 
+    @Test
+    public void testEncodeWithAllocator() {
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+        JetLinksMqttDeviceMessageCodec codec = new JetLinksMqttDeviceMessageCodec(DefaultTransport.MQTT, allocator);
+
+        ReadPropertyMessage message = new ReadPropertyMessage();
+        message.setDeviceId("device1");
+        message.setMessageId("test");
+        message.setProperties(Arrays.asList("name", "sn"));
+        MqttMessage encodedMessage = codec.encode(createMessageContext(message)).block();
+
+        Assert.assertNotNull(encodedMessage);
+        //消息体直接序列化到分配的ByteBuf中
+        Assert.assertEquals(1, allocator.getAllocated());
+        Assert.assertEquals(TopicMessageCodec.encode(ObjectMappers.JSON_MAPPER, message).getPayload().length,
+                            encodedMessage.getPayload().readableBytes());
+
+        encodedMessage.getPayload().release();
+        allocator.assertReleased();
+    }
+
+    @Test
+    public void testTopicPrefixCache() {
+        TopicPrefixCache cache = new TopicPrefixCache();
+        JetLinksMqttDeviceMessageCodec codec = new JetLinksMqttDeviceMessageCodec(DefaultTransport.MQTT, PooledByteBufAllocator.DEFAULT, cache);
+
+        ReadPropertyMessage message = new ReadPropertyMessage();
+        message.setDeviceId("device1");
+        message.setMessageId("test");
+        message.setProperties(Arrays.asList("name", "sn"));
+
+        Assert.assertEquals("/product1/device1/properties/read", encodeTopic(codec, message));
+        Assert.assertEquals(1, cache.size());
+
+        registry.getDevice("device1")
+                .flatMap(device -> device.setConfig(DeviceConfigKey.productId, "product2"))
+                .block();
+        //设备重新注册前仍然使用缓存
+        Assert.assertEquals("/product1/device1/properties/read", encodeTopic(codec, message));
+
+        cache.invalidate("device1");
+        Assert.assertEquals("/product2/device1/properties/read", encodeTopic(codec, message));
+
+        cache.invalidateProduct("product2");
+        Assert.assertEquals(0, cache.size());
+
+        //消息头中指定的产品ID优先
+        message.addHeader("productId", "product3");
+        Assert.assertEquals("/product3/device1/properties/read", encodeTopic(codec, message));
+
+        //设备不存在时不缓存
+        ReadPropertyMessage notExists = new ReadPropertyMessage();
+        notExists.setDeviceId("device2");
+        Assert.assertEquals("/null/device2/properties/read", encodeTopic(codec, notExists));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private String encodeTopic(JetLinksMqttDeviceMessageCodec codec, Message message) {
+        MqttMessage encodedMessage = codec.encode(createMessageContext(message)).block();
+        Assert.assertNotNull(encodedMessage);
+        encodedMessage.getPayload().release();
+        return encodedMessage.getTopic();
+    }
+
     @Test
     public void testReadChildProperty() {
         ReadPropertyMessage message = new ReadPropertyMessage();
@@ -85,6 +154,24 @@ public class JetLinksMqttDeviceMessageCodecTest {
         System.out.println(encodedMessage.getPayload().toString(StandardCharsets.UTF_8));
     }
 
+    @Test
+    public void testDecodeAfterPayloadReleased() {
+        ByteBuf payload = Unpooled.buffer();
+        payload.writeCharSequence("{\"messageId\":\"test\",\"properties\":{\"sn\":\"test\"}}", StandardCharsets.UTF_8);
+
+        Flux<DeviceMessage> decoded = codec.decode(createMessageContext(SimpleMqttMessage.builder()
+                                                                                         .topic("/product1/device1/properties/read/reply")
+                                                                                         .payload(payload)
+                                                                                         .build()));
+        //网络层在订阅前释放消息体
+        payload.release();
+        Assert.assertEquals(1, payload.refCnt());
+
+        Message message = decoded.blockFirst();
+        Assert.assertTrue(message instanceof ReadPropertyMessageReply);
+        Assert.assertEquals(0, payload.refCnt());
+    }
+
     @Test
     public void testReadPropertyReply() {
         Message message = codec.decode(createMessageContext(SimpleMqttMessage.builder()
@@ -332,6 +419,27 @@ public class JetLinksMqttDeviceMessageCodecTest {
         System.out.println(reply);
     }
 
+    @Test
+    public void testPropertiesReportDirectBuffer() {
+        byte[] json = "{\"messageId\":\"test\",\"properties\":{\"sn\":\"test\"}}".getBytes();
+        ByteBuf payload = Unpooled.directBuffer().writeBytes(json);
+
+        Message message = codec.decode(createMessageContext(
+                                       SimpleMqttMessage
+                                               .builder()
+                                               .topic("/product1/device1/properties/report")
+                                               .payload(payload)
+                                               .build()))
+                               .blockFirst();
+
+        Assert.assertTrue(message instanceof ReportPropertyMessage);
+        ReportPropertyMessage reply = ((ReportPropertyMessage) message);
+        Assert.assertEquals(reply.getDeviceId(), "device1");
+        Assert.assertEquals(reply.getProperties(), Collections.singletonMap("sn", "test"));
+        //解码不应该修改ByteBuf的读取位置
+        Assert.assertEquals(json.length, payload.readableBytes());
+        payload.release();
+    }
 
     @Test
     public void testChildPropertiesReport() {
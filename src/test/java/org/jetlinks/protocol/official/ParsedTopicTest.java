@@ -0,0 +1,46 @@
+package org.jetlinks.protocol.official;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParsedTopicTest {
+
+    @Test
+    public void testParse() {
+        String[] topics = {
+                "/product/device/properties/report",
+                "/product/device/child/child-device/event/alarm/",
+                "/product//device",
+                ""
+        };
+        for (String topic : topics) {
+            assertArrayEquals(topic, topic.split("/"), ParsedTopic.of(topic).toArray());
+        }
+    }
+
+    @Test
+    public void testNoLeadingSlash() {
+        ParsedTopic topic = ParsedTopic.of("product/device/properties/report");
+        assertEquals(5, topic.size());
+        assertEquals("", topic.get(0));
+        assertEquals("product", topic.get(1));
+        assertEquals("/product/device/properties/report", topic.toString());
+    }
+
+    @Test
+    public void testRemoveProductPath() {
+        String topic = "/product/device/child/child-device/properties/report";
+
+        ParsedTopic parsed = ParsedTopic.of(topic).removeProductPath();
+        assertArrayEquals(TopicMessageCodec.removeProductPath(topic), parsed.toArray());
+        assertTrue(parsed.levelEquals(0, ""));
+        assertTrue(parsed.levelEquals(2, "child"));
+        assertFalse(parsed.levelEquals(2, "chil"));
+        assertEquals("/device/child/child-device/properties/report", parsed.toString());
+
+        ParsedTopic child = parsed.sub(2);
+        assertArrayEquals(new String[]{"", "child-device", "properties", "report"}, child.toArray());
+        assertEquals("/child-device/properties/report", child.toString());
+    }
+}
@@ -5,8 +5,12 @@ import org.jetlinks.core.codec.defaults.TopicPayloadCodec;
 import org.jetlinks.core.message.ChildDeviceMessage;
 import org.jetlinks.core.message.DeviceMessage;
 import org.jetlinks.core.message.event.EventMessage;
+import org.jetlinks.core.message.firmware.UpgradeFirmwareMessage;
+import org.jetlinks.core.message.function.FunctionInvokeMessage;
+import org.jetlinks.core.message.property.ReadPropertyMessage;
 import org.jetlinks.core.message.property.ReportPropertyMessage;
 import org.jetlinks.core.route.Route;
+import org.jetlinks.core.utils.TopicUtils;
 import org.junit.Test;
 import reactor.test.StepVerifier;
 
@@ -55,6 +59,35 @@ public class TopicMessageCodecTest {
         testChild(ObjectMappers.CBOR_MAPPER);
     }
 
+    @Test
+    public void testFromTopic() {
+        String[] topics = {
+                "/device/properties/report",
+                "/device/properties/read/reply",
+                "/device/event/fire_alarm",
+                "/device/function/invoke/reply",
+                "/device/child/child-device",
+                "/device/child/child-device/properties/report",
+                "/device/child-reply/child-device/function/invoke/reply",
+                "/device/firmware/upgrade/progress",
+                "/device/state-check/reply",
+                "/device/unknown",
+                "/device/event",
+                ""
+        };
+        for (String topic : topics) {
+            String[] topicArr = topic.split("/");
+            TopicMessageCodec expect = null;
+            for (TopicMessageCodec value : TopicMessageCodec.values()) {
+                if (TopicUtils.match(value.getPattern(), topicArr)) {
+                    expect = value;
+                    break;
+                }
+            }
+            assertEquals(topic, expect, TopicMessageCodec.fromTopic(ParsedTopic.of(topic)).orElse(null));
+        }
+    }
+
     @Test
     public void testEvent() {
         EventMessage eventMessage = new EventMessage();
@@ -71,4 +104,19 @@ public class TopicMessageCodecTest {
                 .blockLast();
         assertEquals(msg.toJson(), eventMessage.toJson());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTopicTemplate() {
+        ReadPropertyMessage read = new ReadPropertyMessage();
+        read.setDeviceId("test-device");
+        assertEquals("/test-device/properties/read", TopicMessageCodec.encode(ObjectMappers.JSON_MAPPER, read).getTopic());
+
+        FunctionInvokeMessage invoke = new FunctionInvokeMessage();
+        invoke.setDeviceId("test-device");
+        assertEquals("/test-device/function/invoke", TopicMessageCodec.encode(ObjectMappers.JSON_MAPPER, invoke).getTopic());
+
+        UpgradeFirmwareMessage upgrade = new UpgradeFirmwareMessage();
+        upgrade.setDeviceId("test-device");
+        assertEquals("/test-device/firmware/upgrade", TopicMessageCodec.encode(ObjectMappers.JSON_MAPPER, upgrade).getTopic());
+    }
+}
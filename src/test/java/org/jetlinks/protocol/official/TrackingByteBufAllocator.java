@@ -0,0 +1,57 @@
+package org.jetlinks.protocol.official;
+
+import io.netty.buffer.*;
+import org.junit.Assert;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * 记录所有分配的ByteBuf,用于在测试中检查编码后的ByteBuf是否都被释放.
+ * <p>
+ * 配合<code>mvn -Pleak-detection test</code>使用时,netty会以PARANOID级别检测所有ByteBuf的泄漏.
+ */
+public class TrackingByteBufAllocator extends AbstractByteBufAllocator {
+
+    private final List<ByteBuf> allocated = new CopyOnWriteArrayList<>();
+
+    public TrackingByteBufAllocator() {
+        super(false);
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        return track(new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity));
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        return track(new UnpooledDirectByteBuf(this, initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return false;
+    }
+
+    private ByteBuf track(ByteBuf buf) {
+        allocated.add(buf);
+        return buf;
+    }
+
+    public int getAllocated() {
+        return allocated.size();
+    }
+
+    public List<ByteBuf> getUnreleased() {
+        return allocated
+                .stream()
+                .filter(buf -> buf.refCnt() > 0)
+                .collect(Collectors.toList());
+    }
+
+    public void assertReleased() {
+        Assert.assertEquals("unreleased buffers", 0, getUnreleased().size());
+    }
+}
@@ -0,0 +1,70 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import org.jetlinks.core.defaults.CompositeProtocolSupports;
+import org.jetlinks.core.device.*;
+import org.jetlinks.protocol.official.TestDeviceRegistry;
+import org.jetlinks.protocol.official.binary.AuthenticationCache;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟100000个TCP,UDP设备断线后同时重连时的认证性能.
+ * <p>
+ * registry: 每次认证都从设备注册中心获取密钥;cache: 使用{@link AuthenticationCache}.
+ * 测试使用内存中的{@link TestDeviceRegistry},实际使用redis等存储配置时差距更大.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthenticationCacheBenchmark {
+
+    private static final int DEVICES = 100_000;
+
+    @Param({"registry", "cache"})
+    public String mode;
+
+    private TestDeviceRegistry registry;
+
+    private AuthenticationCache cache;
+
+    private String[] deviceIds;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        registry = new TestDeviceRegistry(new CompositeProtocolSupports(), new StandaloneDeviceMessageBroker());
+        deviceIds = new String[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            deviceIds[i] = "device-" + i;
+        }
+        Flux.fromArray(deviceIds)
+            .flatMap(id -> registry
+                    .register(DeviceInfo.builder()
+                                        .id(id)
+                                        .productId("product1")
+                                        .build())
+                    .flatMap(device -> device.setConfig(AuthenticationCache.CONFIG_KEY_SECURE_KEY, "key-" + id)))
+            .blockLast();
+
+        //缓存有效期内重连,所有设备已认证过
+        cache = "cache".equals(mode) ? new AuthenticationCache(DEVICES, Duration.ofMinutes(10)) : new AuthenticationCache(0, Duration.ofMinutes(10));
+        Flux.fromArray(deviceIds)
+            .flatMap(id -> cache.authenticate(id, "key-" + id, registry::getDevice))
+            .blockLast();
+    }
+
+    @Benchmark
+    public Boolean reconnect() {
+        String deviceId = deviceIds[index++ % DEVICES];
+        return cache
+                .authenticate(deviceId, "key-" + deviceId, registry::getDevice)
+                .block();
+    }
+}
@@ -0,0 +1,95 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.protocol.official.binary.BinaryMessageType;
+import org.jetlinks.protocol.official.tcp.TcpDeviceMessageCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量报文与逐条报文上报相同数量属性时的编解码性能,每次调用处理<code>size</code>条消息.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryBatchBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int size;
+
+    private List<DeviceMessage> messages;
+
+    private List<ByteBuf> singles;
+
+    private ByteBuf batch;
+
+    @Setup
+    public void setup() {
+        long timestamp = System.currentTimeMillis();
+        messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ReportPropertyMessage message = new ReportPropertyMessage();
+            message.setDeviceId("device1");
+            message.setProperties(Collections.singletonMap("temperature", 20 + i % 10 * 0.5D));
+            message.setTimestamp(timestamp + i * 100L);
+            //固定消息序号,避免记录消息ID
+            message.addHeader(BinaryMessageType.HEADER_MSG_SEQ, 1);
+            messages.add(message);
+        }
+        singles = new ArrayList<>(size);
+        int singleBytes = 0;
+        for (DeviceMessage message : messages) {
+            ByteBuf buf = TcpDeviceMessageCodec.encodeMessage(message, PooledByteBufAllocator.DEFAULT);
+            singleBytes += buf.readableBytes();
+            singles.add(buf);
+        }
+        batch = TcpDeviceMessageCodec.encodeBatch("device1", messages, PooledByteBufAllocator.DEFAULT);
+        System.out.printf("%nsingle frames: %d bytes, batch frame: %d bytes%n", singleBytes, batch.readableBytes());
+    }
+
+    @TearDown
+    public void tearDown() {
+        singles.forEach(ByteBuf::release);
+        batch.release();
+    }
+
+    @Benchmark
+    public void encodeSingle(Blackhole blackhole) {
+        for (DeviceMessage message : messages) {
+            ByteBuf buf = TcpDeviceMessageCodec.encodeMessage(message, PooledByteBufAllocator.DEFAULT);
+            blackhole.consume(buf);
+            buf.release();
+        }
+    }
+
+    @Benchmark
+    public ByteBuf encodeBatch() {
+        ByteBuf buf = TcpDeviceMessageCodec.encodeBatch("device1", messages, PooledByteBufAllocator.DEFAULT);
+        buf.release();
+        return buf;
+    }
+
+    @Benchmark
+    public void decodeSingle(Blackhole blackhole) {
+        for (ByteBuf buf : singles) {
+            buf.readerIndex(4);
+            blackhole.consume(BinaryMessageType.readAll(buf, "device1"));
+        }
+    }
+
+    @Benchmark
+    public List<DeviceMessage> decodeBatch() {
+        return BinaryMessageType.readAll(batch.readerIndex(4), "device1");
+    }
+}
@@ -0,0 +1,125 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.DeviceOnlineMessage;
+import org.jetlinks.core.message.event.EventMessage;
+import org.jetlinks.core.message.function.FunctionInvokeMessage;
+import org.jetlinks.core.message.property.ReadPropertyMessage;
+import org.jetlinks.core.message.property.ReadPropertyMessageReply;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.protocol.official.binary.BinaryDeviceOnlineMessage;
+import org.jetlinks.protocol.official.binary.BinaryMessageType;
+import org.jetlinks.protocol.official.tcp.TcpDeviceMessageCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BinaryMessageType}按消息类型的编解码性能
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryMessageTypeBenchmark {
+
+    @Param({"online", "reportProperty", "readProperty", "readPropertyReply", "function", "event"})
+    public String type;
+
+    private DeviceMessage message;
+
+    private ByteBuf encoded;
+
+    private ByteBuf buffer;
+
+    @Setup
+    public void setup() {
+        message = createMessage(BinaryMessageType.valueOf(type));
+        //固定消息序号,避免记录消息ID
+        message.addHeader(BinaryMessageType.HEADER_MSG_SEQ, 1);
+        encoded = BinaryMessageType.write(message, Unpooled.buffer());
+        buffer = Unpooled.buffer(encoded.readableBytes());
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoded.release();
+        buffer.release();
+    }
+
+    @Benchmark
+    public ByteBuf write() {
+        return BinaryMessageType.write(message, buffer.clear());
+    }
+
+    //可扩容缓冲区写出后,再通过组合缓冲区添加长度字段(旧实现)
+    @Benchmark
+    public ByteBuf encodeComposite() {
+        ByteBuf buf = TcpDeviceMessageCodec.wrapByteByf(BinaryMessageType.write(message, Unpooled.buffer()));
+        buf.release();
+        return buf;
+    }
+
+    //预先计算长度,一次分配并回填长度字段
+    @Benchmark
+    public ByteBuf encodeSized() {
+        ByteBuf buf = TcpDeviceMessageCodec.encodeMessage(message, PooledByteBufAllocator.DEFAULT);
+        buf.release();
+        return buf;
+    }
+
+    @Benchmark
+    public DeviceMessage read() {
+        return BinaryMessageType.read(encoded.readerIndex(0), "device1");
+    }
+
+    static DeviceMessage createMessage(BinaryMessageType type) {
+        switch (type) {
+            case online: {
+                DeviceOnlineMessage online = new DeviceOnlineMessage();
+                online.setDeviceId("device1");
+                online.addHeader(BinaryDeviceOnlineMessage.loginToken, "test-token");
+                return online;
+            }
+            case readProperty: {
+                ReadPropertyMessage read = new ReadPropertyMessage();
+                read.setDeviceId("device1");
+                read.setProperties(Arrays.asList("temperature", "humidity", "status"));
+                return read;
+            }
+            case readPropertyReply: {
+                ReadPropertyMessageReply reply = new ReadPropertyMessageReply();
+                reply.setDeviceId("device1");
+                reply.setProperties(TopicMessageCodecBenchmark.createProperties());
+                return reply;
+            }
+            case function: {
+                FunctionInvokeMessage invoke = new FunctionInvokeMessage();
+                invoke.setDeviceId("device1");
+                invoke.setFunctionId("restart");
+                invoke.addInput("delay", 10);
+                invoke.addInput("force", true);
+                return invoke;
+            }
+            case event: {
+                EventMessage event = new EventMessage();
+                event.setDeviceId("device1");
+                event.setEvent("fire_alarm");
+                event.setData(TopicMessageCodecBenchmark.createProperties());
+                return event;
+            }
+            default: {
+                ReportPropertyMessage report = new ReportPropertyMessage();
+                report.setDeviceId("device1");
+                report.setProperties(TopicMessageCodecBenchmark.createProperties());
+                return report;
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import org.jetlinks.protocol.official.cipher.Ciphers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CoAP使用的{@link Ciphers#AES}解密性能
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CiphersBenchmark {
+
+    //明文长度
+    @Param({"64", "1024"})
+    public int size;
+
+    private final String key = "1234567890abcdef";
+
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() {
+        byte[] payload = new byte[size];
+        ThreadLocalRandom.current().nextBytes(payload);
+        encrypted = Ciphers.AES.encrypt(payload, key);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return Ciphers.AES.decrypt(encrypted, key);
+    }
+}
@@ -0,0 +1,82 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.jetlinks.protocol.official.binary.DataType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DataType}嵌套对象的编解码性能
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataTypeBenchmark {
+
+    //对象中属性的数量
+    @Param({"8", "64"})
+    public int properties;
+
+    private Map<String, Object> value;
+
+    private ByteBuf encoded;
+
+    private ByteBuf buffer;
+
+    @Setup
+    public void setup() {
+        value = new HashMap<>();
+        for (int i = 0; i < properties; i++) {
+            switch (i % 4) {
+                case 0:
+                    value.put("int_" + i, i);
+                    break;
+                case 1:
+                    value.put("float_" + i, i * 1.5F);
+                    break;
+                case 2:
+                    value.put("string_" + i, "value_" + i);
+                    break;
+                default:
+                    Map<String, Object> nested = new HashMap<>();
+                    List<Object> array = new ArrayList<>();
+                    array.add(i);
+                    array.add((long) i);
+                    array.add(i * 0.1D);
+                    nested.put("array", array);
+                    nested.put("enabled", true);
+                    value.put("object_" + i, nested);
+            }
+        }
+        encoded = Unpooled.buffer();
+        DataType.writeTo(value, encoded);
+        buffer = Unpooled.buffer(encoded.readableBytes());
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoded.release();
+        buffer.release();
+    }
+
+    @Benchmark
+    public ByteBuf writeTo() {
+        ByteBuf buf = buffer.clear();
+        DataType.writeTo(value, buf);
+        return buf;
+    }
+
+    @Benchmark
+    public Object readFrom() {
+        return DataType.readFrom(encoded.readerIndex(0));
+    }
+}
@@ -0,0 +1,104 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetlinks.core.defaults.CompositeProtocolSupports;
+import org.jetlinks.core.device.*;
+import org.jetlinks.core.message.codec.DefaultTransport;
+import org.jetlinks.protocol.official.JetLinksAuthenticator;
+import org.jetlinks.protocol.official.TestDeviceRegistry;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQTT连接时{@link JetLinksAuthenticator}的认证性能,使用内存中的{@link TestDeviceRegistry}.
+ * <p>
+ * authenticate为单个设备重复认证,reconnect模拟broker重启后100000个设备使用相同的用户名密码重连.
+ * cacheSize为0时每次都获取配置并计算签名,否则使用认证缓存.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JetLinksAuthenticatorBenchmark {
+
+    private static final int DEVICES = 100_000;
+
+    @Param({"0", "100000"})
+    public int cacheSize;
+
+    private JetLinksAuthenticator authenticator;
+
+    private TestDeviceRegistry registry;
+
+    private MqttAuthenticationRequest request;
+
+    private MqttAuthenticationRequest[] reconnectRequests;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        registry = new TestDeviceRegistry(new CompositeProtocolSupports(), new StandaloneDeviceMessageBroker());
+        authenticator = new JetLinksAuthenticator(cacheSize, Duration.ofMinutes(1));
+        registry.register(ProductInfo.builder()
+                                     .id("product1")
+                                     .protocol("jetlinks")
+                                     .build())
+                .then(registry.register(DeviceInfo.builder()
+                                                  .id("device1")
+                                                  .productId("product1")
+                                                  .build()))
+                .flatMap(device -> device.setConfig("secureId", "test")
+                                         .then(device.setConfig("secureKey", "test-key")))
+                .block();
+
+        Flux.range(0, DEVICES)
+            .flatMap(i -> registry
+                    .register(DeviceInfo.builder()
+                                        .id("device-" + i)
+                                        .productId("product1")
+                                        .build())
+                    .flatMap(device -> device.setConfig("secureId", "test")
+                                             .then(device.setConfig("secureKey", "key-" + i))))
+            .blockLast();
+    }
+
+    //认证时会校验时间戳,每轮重新生成
+    @Setup(Level.Iteration)
+    public void createRequest() {
+        String username = "test|" + System.currentTimeMillis();
+        String password = DigestUtils.md5Hex(username + "|test-key");
+        request = new MqttAuthenticationRequest("device1", username, password, DefaultTransport.MQTT);
+
+        reconnectRequests = new MqttAuthenticationRequest[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            reconnectRequests[i] = new MqttAuthenticationRequest("device-" + i,
+                                                                 username,
+                                                                 DigestUtils.md5Hex(username + "|key-" + i),
+                                                                 DefaultTransport.MQTT);
+        }
+        //重启前已认证过
+        Flux.fromArray(reconnectRequests)
+            .flatMap(reconnect -> authenticator.authenticate(reconnect, registry))
+            .blockLast();
+    }
+
+    @Benchmark
+    public AuthenticationResponse authenticate() {
+        return authenticator
+                .authenticate(request, registry)
+                .block();
+    }
+
+    @Benchmark
+    public AuthenticationResponse reconnect() {
+        return authenticator
+                .authenticate(reconnectRequests[index++ % DEVICES], registry)
+                .block();
+    }
+}
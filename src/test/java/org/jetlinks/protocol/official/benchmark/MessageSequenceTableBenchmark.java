@@ -0,0 +1,112 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import com.google.common.cache.CacheBuilder;
+import org.jetlinks.protocol.official.binary.BinaryMessageType;
+import org.jetlinks.protocol.official.binary.MessageSequenceTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * 100万设备各有一条下发消息时,{@link MessageSequenceTable}与之前基于Guava Cache实现的内存占用.
+ *
+ * <pre>
+ *     guava : 每个设备一个Guava Cache记录消息序号(旧实现)
+ *     table : MessageSequenceTable,使用默认的表大小{@link BinaryMessageType#DEFAULT_SEQUENCE_CAPACITY}
+ * </pre>
+ * 每次迭代结束时输出每个设备占用的内存(retained bytes/device),分配情况见<code>-prof gc</code>的gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class MessageSequenceTableBenchmark {
+
+    private static final int DEVICES = 1_000_000;
+
+    @Param({"guava", "table"})
+    public String impl;
+
+    private String[] deviceIds;
+
+    private Object retained;
+
+    private long baseline;
+
+    @Setup
+    public void setup() {
+        deviceIds = new String[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            deviceIds[i] = "device-" + i;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void before() {
+        retained = null;
+        baseline = usedMemory();
+    }
+
+    @TearDown(Level.Iteration)
+    public void after() {
+        long used = usedMemory() - baseline;
+        System.out.printf("%n%s retained bytes/device: %d%n", impl, used / DEVICES);
+        retained = null;
+    }
+
+    @Benchmark
+    public Object populate() {
+        BiFunction<String, String, Integer> next;
+        if ("guava".equals(impl)) {
+            Map<String, GuavaHolder> cache = CacheBuilder
+                    .newBuilder()
+                    .expireAfterWrite(Duration.ofHours(1))
+                    .<String, GuavaHolder>build()
+                    .asMap();
+            retained = cache;
+            next = (deviceId, messageId) -> cache
+                    .computeIfAbsent(deviceId, ignore -> new GuavaHolder())
+                    .next(messageId);
+        } else {
+            MessageSequenceTable table = new MessageSequenceTable(BinaryMessageType.DEFAULT_SEQUENCE_CAPACITY, Duration.ofSeconds(30), Duration.ofHours(1));
+            retained = table;
+            next = table::next;
+        }
+        for (String deviceId : deviceIds) {
+            next.apply(deviceId, deviceId);
+        }
+        return retained;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    //之前BinaryMessageType中的实现
+    static class GuavaHolder {
+        private int msgId = 0;
+        private final Map<Integer, String> cached = CacheBuilder
+                .newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(30))
+                .<Integer, String>build()
+                .asMap();
+
+        int next(String id) {
+            do {
+                if (msgId++ < 0) {
+                    msgId = 0;
+                }
+            } while (cached.putIfAbsent(msgId, id) != null);
+            return msgId;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.jetlinks.core.defaults.CompositeProtocolSupports;
+import org.jetlinks.core.device.*;
+import org.jetlinks.core.message.Message;
+import org.jetlinks.core.message.codec.DefaultTransport;
+import org.jetlinks.core.message.codec.MessageEncodeContext;
+import org.jetlinks.core.message.codec.MqttMessage;
+import org.jetlinks.core.message.function.FunctionInvokeMessage;
+import org.jetlinks.protocol.official.JetLinksMqttDeviceMessageCodec;
+import org.jetlinks.protocol.official.TestDeviceRegistry;
+import org.jetlinks.protocol.official.TopicPrefixCache;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向100000个设备批量下发功能调用指令时{@link JetLinksMqttDeviceMessageCodec}的编码性能.
+ * <p>
+ * cacheSize为0时每条消息都从设备注册中心获取产品ID,否则使用{@link TopicPrefixCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MqttDownlinkBenchmark {
+
+    private static final int DEVICES = 100_000;
+
+    @Param({"0", "100000"})
+    public int cacheSize;
+
+    private JetLinksMqttDeviceMessageCodec codec;
+
+    private TestDeviceRegistry registry;
+
+    private MessageEncodeContext[] contexts;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        registry = new TestDeviceRegistry(new CompositeProtocolSupports(), new StandaloneDeviceMessageBroker());
+        codec = new JetLinksMqttDeviceMessageCodec(DefaultTransport.MQTT,
+                                                   PooledByteBufAllocator.DEFAULT,
+                                                   new TopicPrefixCache(cacheSize, Duration.ofMinutes(30)));
+        registry.register(ProductInfo.builder()
+                                     .id("product1")
+                                     .protocol("jetlinks")
+                                     .build())
+                .block();
+        Flux.range(0, DEVICES)
+            .flatMap(i -> registry.register(DeviceInfo.builder()
+                                                      .id("device-" + i)
+                                                      .productId("product1")
+                                                      .build()))
+            .blockLast();
+
+        contexts = new MessageEncodeContext[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            FunctionInvokeMessage message = new FunctionInvokeMessage();
+            message.setDeviceId("device-" + i);
+            message.setMessageId("1000");
+            message.setFunctionId("restart");
+            contexts[i] = createContext(message);
+        }
+    }
+
+    private MessageEncodeContext createContext(Message message) {
+        return new MessageEncodeContext() {
+            @Nonnull
+            @Override
+            public Message getMessage() {
+                return message;
+            }
+
+            @Override
+            public DeviceOperator getDevice() {
+                return null;
+            }
+
+            @Override
+            public Mono<DeviceOperator> getDevice(String deviceId) {
+                return registry.getDevice(deviceId);
+            }
+        };
+    }
+
+    @Benchmark
+    public String encode() {
+        MqttMessage message = codec.encode(contexts[index++ % DEVICES]).block();
+        message.getPayload().release();
+        return message.getTopic();
+    }
+}
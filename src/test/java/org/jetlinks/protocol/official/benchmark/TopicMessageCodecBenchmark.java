@@ -0,0 +1,104 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jetlinks.core.message.ChildDeviceMessage;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.event.EventMessage;
+import org.jetlinks.core.message.function.FunctionInvokeMessageReply;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.protocol.official.ObjectMappers;
+import org.jetlinks.protocol.official.ParsedTopic;
+import org.jetlinks.protocol.official.TopicMessageCodec;
+import org.jetlinks.protocol.official.TopicPayload;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TopicMessageCodec}按topic分类的编解码性能
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicMessageCodecBenchmark {
+
+    @Param({"reportProperty", "event", "functionInvokeReply", "child"})
+    public String family;
+
+    private final ObjectMapper mapper = ObjectMappers.JSON_MAPPER;
+
+    private DeviceMessage message;
+
+    private ParsedTopic topic;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        message = createMessage(family);
+        TopicPayload encoded = TopicMessageCodec.encode(mapper, message);
+        topic = ParsedTopic.of(encoded.getTopic());
+        payload = encoded.getPayload();
+    }
+
+    @Benchmark
+    public DeviceMessage decode() {
+        return TopicMessageCodec
+                .decode(mapper, topic, payload)
+                .blockLast();
+    }
+
+    @Benchmark
+    public TopicPayload encode() {
+        return TopicMessageCodec.encode(mapper, message);
+    }
+
+    static Map<String, Object> createProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("temperature", 36.5);
+        properties.put("humidity", 60);
+        properties.put("status", "running");
+        properties.put("voltage", 220.1F);
+        return properties;
+    }
+
+    static DeviceMessage createMessage(String family) {
+        switch (family) {
+            case "event": {
+                EventMessage event = new EventMessage();
+                event.setDeviceId("device1");
+                event.setEvent("fire_alarm");
+                event.setData(createProperties());
+                return event;
+            }
+            case "functionInvokeReply": {
+                FunctionInvokeMessageReply reply = new FunctionInvokeMessageReply();
+                reply.setDeviceId("device1");
+                reply.setMessageId("1000");
+                reply.setFunctionId("restart");
+                reply.setOutput(createProperties());
+                return reply;
+            }
+            case "child": {
+                ReportPropertyMessage report = new ReportPropertyMessage();
+                report.setDeviceId("child1");
+                report.setProperties(createProperties());
+                ChildDeviceMessage child = new ChildDeviceMessage();
+                child.setDeviceId("device1");
+                child.setChildDeviceMessage(report);
+                return child;
+            }
+            default: {
+                ReportPropertyMessage report = new ReportPropertyMessage();
+                report.setDeviceId("device1");
+                report.setProperties(createProperties());
+                return report;
+            }
+        }
+    }
+}
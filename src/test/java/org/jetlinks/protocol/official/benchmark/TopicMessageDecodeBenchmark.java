@@ -0,0 +1,101 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hswebframework.web.bean.FastBeanCopier;
+import org.jetlinks.core.device.DeviceThingType;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.event.EventMessage;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.protocol.official.ObjectMappers;
+import org.jetlinks.protocol.official.ParsedTopic;
+import org.jetlinks.protocol.official.TopicMessageCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比解码时通过{@link FastBeanCopier}设置设备ID和直接调用DeviceMessage.thingId的吞吐量.
+ *
+ * <pre>
+ *     beanCopier : 解析JSON后使用FastBeanCopier设置设备ID(旧实现)
+ *     thingId    : 解析JSON后直接设置设备ID(当前实现)
+ *     decode     : TopicMessageCodec.decode 完整解码
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicMessageDecodeBenchmark {
+
+    @Param({"reportProperty", "event", "child"})
+    public String topicType;
+
+    private final ObjectMapper mapper = ObjectMappers.JSON_MAPPER;
+
+    private ParsedTopic topic;
+
+    private byte[] payload;
+
+    //实际解析的消息类型以及设备ID,子设备消息为子设备的消息
+    private Class<? extends DeviceMessage> type;
+    private String deviceId;
+
+    @Setup
+    public void setup() {
+        switch (topicType) {
+            case "event":
+                topic = ParsedTopic.of("/device1/event/fire_alarm");
+                payload = "{\"messageId\":\"1\",\"data\":{\"temp\":36.5,\"level\":3}}".getBytes();
+                type = EventMessage.class;
+                deviceId = "device1";
+                break;
+            case "child":
+                topic = ParsedTopic.of("/device1/child/child1/properties/report");
+                payload = "{\"messageId\":\"1\",\"properties\":{\"temp\":36.5,\"humidity\":60}}".getBytes();
+                type = ReportPropertyMessage.class;
+                deviceId = "child1";
+                break;
+            default:
+                topic = ParsedTopic.of("/device1/properties/report");
+                payload = "{\"messageId\":\"1\",\"properties\":{\"temp\":36.5,\"humidity\":60}}".getBytes();
+                type = ReportPropertyMessage.class;
+                deviceId = "device1";
+        }
+    }
+
+    @Benchmark
+    public DeviceMessage beanCopier() throws IOException {
+        DeviceMessage message = mapper.readValue(payload, type);
+        FastBeanCopier.copy(Collections.singletonMap("deviceId", deviceId), message);
+        return message;
+    }
+
+    @Benchmark
+    public DeviceMessage thingId() throws IOException {
+        DeviceMessage message = mapper.readValue(payload, type);
+        message.thingId(DeviceThingType.device, deviceId);
+        return message;
+    }
+
+    @Benchmark
+    public DeviceMessage decode() {
+        return TopicMessageCodec
+                .decode(mapper, topic, payload)
+                .blockLast();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(TopicMessageDecodeBenchmark.class.getSimpleName())
+                           .build())
+                .run();
+    }
+}
@@ -0,0 +1,54 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.MessageType;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.protocol.official.ObjectMappers;
+import org.jetlinks.protocol.official.http.WebSocketMessageDecoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket文本消息的解码性能.
+ * <p>
+ * fastjson为原来的解析为JSONObject后使用{@link MessageType#convertMessage}转换,jackson为{@link WebSocketMessageDecoder}直接解码.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketDecodeBenchmark {
+
+    @Param({"fastjson", "jackson"})
+    public String mode;
+
+    private ByteBuf payload;
+
+    @Setup
+    public void setup() {
+        ReportPropertyMessage report = new ReportPropertyMessage();
+        report.setDeviceId("device1");
+        report.setMessageId("1000");
+        report.setProperties(TopicMessageCodecBenchmark.createProperties());
+        payload = Unpooled.wrappedBuffer(report.toJson().toJSONString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        if ("jackson".equals(mode)) {
+            return WebSocketMessageDecoder.decode(ObjectMappers.JSON_MAPPER, payload);
+        }
+        return MessageType
+                .convertMessage(JSON.parseObject(payload.toString(StandardCharsets.UTF_8)))
+                .map(DeviceMessage.class::cast)
+                .orElse(null);
+    }
+}
@@ -0,0 +1,58 @@
+package org.jetlinks.protocol.official.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.jetlinks.core.message.function.FunctionInvokeMessage;
+import org.jetlinks.protocol.official.ObjectMappers;
+import org.jetlinks.protocol.official.http.JetLinksHttpDeviceMessageCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JetLinksHttpDeviceMessageCodec}通过websocket下发消息时的序列化性能.
+ * <p>
+ * fastjson为原来的toJson().toJSONString()后再写入ByteBuf,jackson为直接序列化到ByteBuf中.
+ * 可以使用<code>-prof gc</code>对比每条消息分配的内存.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketEncodeBenchmark {
+
+    @Param({"fastjson", "jackson"})
+    public String mode;
+
+    private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    private FunctionInvokeMessage message;
+
+    @Setup
+    public void setup() {
+        message = new FunctionInvokeMessage();
+        message.setDeviceId("device1");
+        message.setMessageId("1000");
+        message.setFunctionId("restart");
+        message.addInput("delay", 1000);
+        message.addInput("mode", "safe");
+        message.addHeader("async", true);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        ByteBuf buf = "jackson".equals(mode)
+                ? ObjectMappers.writeValue(ObjectMappers.JSON_MAPPER, allocator, message)
+                : ByteBufUtil.writeUtf8(allocator, message.toJson().toJSONString());
+        try {
+            return buf.readableBytes();
+        } finally {
+            buf.release();
+        }
+    }
+}
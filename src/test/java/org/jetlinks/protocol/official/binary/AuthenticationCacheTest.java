@@ -0,0 +1,166 @@
+package org.jetlinks.protocol.official.binary;
+
+import com.google.common.base.Ticker;
+import org.jetlinks.core.defaults.CompositeProtocolSupports;
+import org.jetlinks.core.device.*;
+import org.jetlinks.protocol.official.TestDeviceRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class AuthenticationCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private TestDeviceRegistry registry;
+
+    private Function<String, Mono<DeviceOperator>> getter;
+
+    @Before
+    public void init() {
+        registry = new TestDeviceRegistry(new CompositeProtocolSupports(), new StandaloneDeviceMessageBroker());
+        registry.register(DeviceInfo.builder()
+                                    .id("device1")
+                                    .productId("product1")
+                                    .build())
+                .flatMap(device -> device.setConfig(AuthenticationCache.CONFIG_KEY_SECURE_KEY, "key1"))
+                .block();
+        getter = deviceId -> {
+            lookups.incrementAndGet();
+            return registry.getDevice(deviceId);
+        };
+    }
+
+    private AuthenticationCache createCache() {
+        return new AuthenticationCache(10, Duration.ofMinutes(1), Duration.ofSeconds(10), new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+    }
+
+    private boolean authenticate(AuthenticationCache cache, String deviceId, String token) {
+        Boolean success = cache.authenticate(deviceId, token, getter).block();
+        Assert.assertNotNull(success);
+        return success;
+    }
+
+    @Test
+    public void testCached() {
+        AuthenticationCache cache = createCache();
+
+        Assert.assertTrue(authenticate(cache, "device1", "key1"));
+        Assert.assertTrue(authenticate(cache, "device1", "key1"));
+        //第二次不再获取设备
+        Assert.assertEquals(1, lookups.get());
+
+        //密钥错误时重新获取
+        Assert.assertFalse(authenticate(cache, "device1", "key2"));
+        Assert.assertEquals(2, lookups.get());
+
+        //设备不存在
+        Assert.assertFalse(authenticate(cache, "device2", "key1"));
+        Assert.assertFalse(authenticate(cache, "device1", null));
+    }
+
+    @Test
+    public void testExpire() {
+        AuthenticationCache cache = createCache();
+
+        Assert.assertTrue(authenticate(cache, "device1", "key1"));
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        Assert.assertTrue(authenticate(cache, "device1", "key1"));
+        Assert.assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testConfigChanged() {
+        AuthenticationCache cache = createCache();
+        Assert.assertTrue(authenticate(cache, "device1", "key1"));
+
+        registry.getDevice("device1")
+                .flatMap(device -> device.setConfig(AuthenticationCache.CONFIG_KEY_SECURE_KEY, "key2"))
+                .block();
+
+        //缓存有效期内旧密钥仍然可以认证
+        Assert.assertTrue(authenticate(cache, "device1", "key1"));
+
+        //重新注册后旧的缓存失效
+        cache.invalidate("device1");
+        Assert.assertFalse(authenticate(cache, "device1", "key1"));
+        Assert.assertTrue(authenticate(cache, "device1", "key2"));
+    }
+
+    @Test
+    public void testRevalidate() {
+        AuthenticationCache cache = createCache();
+        Assert.assertTrue(authenticate(cache, "device1", "key1"));
+
+        //修改配置后未重新注册
+        registry.getDevice("device1")
+                .flatMap(device -> device.setConfig(AuthenticationCache.CONFIG_KEY_SECURE_KEY, "key2"))
+                .block();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+
+        //超过重新校验时间后旧密钥失效
+        Assert.assertFalse(authenticate(cache, "device1", "key1"));
+        Assert.assertEquals("key2", cache.getSecureKey("device1", getter).block());
+        Assert.assertTrue(authenticate(cache, "device1", "key2"));
+        Assert.assertEquals(2, lookups.get());
+
+        //删除密钥配置
+        registry.getDevice("device1")
+                .flatMap(device -> device.removeConfig(AuthenticationCache.CONFIG_KEY_SECURE_KEY))
+                .block();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        Assert.assertFalse(authenticate(cache, "device1", "key2"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNewKey() {
+        AuthenticationCache cache = createCache();
+        Assert.assertTrue(authenticate(cache, "device1", "key1"));
+
+        registry.getDevice("device1")
+                .flatMap(device -> device.setConfig(AuthenticationCache.CONFIG_KEY_SECURE_KEY, "key2"))
+                .block();
+
+        //使用新密钥时重新获取配置,立即生效
+        Assert.assertTrue(authenticate(cache, "device1", "key2"));
+        Assert.assertFalse(authenticate(cache, "device1", "key1"));
+    }
+
+    @Test
+    public void testVerifier() {
+        AuthenticationCache cache = createCache();
+
+        Assert.assertEquals("key1", cache.authenticate("device1", "key1"::equals, getter).block());
+        Assert.assertEquals("key1", cache.authenticate("device1", "key1"::equals, getter).block());
+        Assert.assertEquals(1, lookups.get());
+
+        Assert.assertNull(cache.authenticate("device1", "key2"::equals, getter).block());
+        Assert.assertEquals("key1", cache.getSecureKey("device1", getter).block());
+        Assert.assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testConstantTimeEquals() {
+        Assert.assertTrue(AuthenticationCache.constantTimeEquals("", ""));
+        Assert.assertTrue(AuthenticationCache.constantTimeEquals("key", "key"));
+        Assert.assertFalse(AuthenticationCache.constantTimeEquals("key", ""));
+        Assert.assertFalse(AuthenticationCache.constantTimeEquals("", "key"));
+        Assert.assertFalse(AuthenticationCache.constantTimeEquals("key", "kez"));
+        Assert.assertFalse(AuthenticationCache.constantTimeEquals("key", "key1"));
+    }
+}
@@ -3,15 +3,18 @@ package org.jetlinks.protocol.official.binary;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.jetlinks.core.device.DeviceThingType;
 import org.jetlinks.core.message.DeviceMessage;
 import org.jetlinks.core.message.DeviceOnlineMessage;
+import org.jetlinks.core.message.event.EventMessage;
 import org.jetlinks.core.message.function.FunctionInvokeMessage;
 import org.jetlinks.core.message.function.FunctionInvokeMessageReply;
 import org.jetlinks.core.message.property.*;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.util.Collections;
+import java.util.*;
 
 public class BinaryMessageTypeTest {
 
@@ -95,7 +98,200 @@ public class BinaryMessageTypeTest {
 
     }
 
+    @Test
+    public void testLookup() {
+        Assert.assertEquals(BinaryMessageType.reportProperty, BinaryMessageType.lookup(new ReportPropertyMessage()));
+        //子类使用父类的编码方式
+        Assert.assertEquals(BinaryMessageType.reportProperty, BinaryMessageType.lookup(new ReportPropertyMessage() {
+        }));
+        Assert.assertEquals(BinaryMessageType.functionReply, BinaryMessageType.lookup(new FunctionInvokeMessageReply()));
+    }
+
+    @Test
+    public void testSize() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("name", "温度传感器");
+        properties.put("binary", new byte[]{1, 2, 3});
+        properties.put("array", Arrays.asList(1, 2L, "3"));
+        properties.put("object", Collections.singletonMap("nested", 1.5F));
+        properties.put("null", null);
+
+        ReportPropertyMessage message = new ReportPropertyMessage();
+        message.setDeviceId("设备1");
+        message.setProperties(properties);
+        assertSize(message);
+
+        FunctionInvokeMessageReply reply = new FunctionInvokeMessageReply();
+        reply.setDeviceId("test");
+        reply.setMessageId("test123");
+        reply.error(new IllegalStateException("error"));
+        assertSize(reply);
+    }
+
+    @Test
+    public void testBatch() {
+        long timestamp = System.currentTimeMillis();
+        List<DeviceMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ReportPropertyMessage report = new ReportPropertyMessage();
+            report.setProperties(Collections.singletonMap("temp", 32.88 + i));
+            report.setTimestamp(timestamp + i * 1000);
+            messages.add(report);
+        }
+        EventMessage event = new EventMessage();
+        event.setEvent("alarm");
+        event.setData(Collections.singletonMap("level", 1));
+        //时间戳可以早于上一条消息
+        event.setTimestamp(timestamp - 1000);
+        messages.add(event);
+
+        ByteBuf data = BinaryMessageType.writeBatch("test", messages, 1, UnpooledByteBufAllocator.DEFAULT, 0);
+        Assert.assertEquals(data.capacity(), data.writerIndex());
+
+        //比逐条编码更小
+        int singles = 0;
+        for (DeviceMessage message : messages) {
+            message.addHeader(BinaryMessageType.HEADER_MSG_SEQ, 1);
+            message.thingId(DeviceThingType.device, "test");
+            singles += BinaryMessageType.write(message, Unpooled.buffer()).readableBytes();
+        }
+        Assert.assertTrue(data.readableBytes() < singles);
+
+        List<DeviceMessage> read = BinaryMessageType.readAll(data, null);
+        Assert.assertFalse(data.isReadable());
+        Assert.assertEquals(messages.size(), read.size());
+        for (int i = 0; i < messages.size(); i++) {
+            DeviceMessage expect = messages.get(i), actual = read.get(i);
+            Assert.assertEquals(expect.getClass(), actual.getClass());
+            Assert.assertEquals("test", actual.getDeviceId());
+            Assert.assertEquals(expect.getTimestamp(), actual.getTimestamp());
+        }
+        Assert.assertEquals(((ReportPropertyMessage) messages.get(2)).getProperties(),
+                            ((ReportPropertyMessage) read.get(2)).getProperties());
+        Assert.assertEquals("alarm", ((EventMessage) read.get(3)).getEvent());
+
+        //非批量报文返回单条消息
+        ByteBuf single = BinaryMessageType.write(messages.get(0), Unpooled.buffer());
+        Assert.assertEquals(1, BinaryMessageType.readAll(single, null).size());
+    }
+
+    @Test
+    public void testCompact() {
+        WritePropertyMessage message = new WritePropertyMessage();
+        message.setDeviceId("test");
+        message.setMessageId("test");
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("temp", 25);
+        properties.put("voltage", 3.5F);
+        message.setProperties(properties);
+
+        //默认不使用紧凑编码,不支持紧凑编码的设备可以读取
+        ByteBuf legacy = BinaryMessageType.write(message, 1, UnpooledByteBufAllocator.DEFAULT, 0);
+        Assert.assertArrayEquals(ByteBufUtil.getBytes(legacy),
+                                 ByteBufUtil.getBytes(BinaryMessageType.write(message, 1, false, UnpooledByteBufAllocator.DEFAULT, 0)));
+
+        ByteBuf compact = BinaryMessageType.write(message, 1, true, UnpooledByteBufAllocator.DEFAULT, 0);
+        Assert.assertEquals(compact.capacity(), compact.writerIndex());
+        Assert.assertTrue(compact.readableBytes() < legacy.readableBytes());
+
+        for (ByteBuf buf : Arrays.asList(legacy, compact)) {
+            DeviceMessage read = BinaryMessageType.read(buf, null);
+            Assert.assertTrue(read instanceof WritePropertyMessage);
+            Assert.assertEquals(properties, ((WritePropertyMessage) read).getProperties());
+        }
+    }
+
+    @Test
+    public void testBatchRejectReply() {
+        ReadPropertyMessageReply reply = new ReadPropertyMessageReply();
+        reply.setProperties(Collections.singletonMap("temp", 32.88));
+        ReportPropertyMessage report = new ReportPropertyMessage();
+        report.setProperties(Collections.singletonMap("temp", 32.88));
+
+        //回复需要单独上报才能对应平台下发的消息ID
+        try {
+            BinaryMessageType.writeBatch("test", Arrays.asList(report, reply), 1, UnpooledByteBufAllocator.DEFAULT, 0);
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        ByteBuf data = BinaryMessageType.writeBatch("test", Collections.singletonList(report), 1, UnpooledByteBufAllocator.DEFAULT, 0);
+        //消息类型(1)+时间戳(8)+消息序号(2)+设备ID(2+4)+消息数量(2)
+        data.setByte(19, BinaryMessageType.readPropertyReply.ordinal());
+        try {
+            BinaryMessageType.readAll(data, null);
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testIndexedReport() {
+        List<String> keys = new ArrayList<>();
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            keys.add("temperature_" + i);
+            properties.put("temperature_" + i, 20 + i * 0.5F);
+        }
+        PropertyDictionary dictionary = new PropertyDictionary(keys);
+        //不在字典中的属性
+        properties.put("status", "ok");
+
+        ReportPropertyMessage message = new ReportPropertyMessage();
+        message.setDeviceId("test");
+        message.setProperties(properties);
+
+        ByteBuf origin = BinaryMessageType.write(message, 1, UnpooledByteBufAllocator.DEFAULT, 0);
+        ByteBuf indexed = BinaryMessageType.write(new BinaryIndexedReportPropertyMessage(dictionary, message),
+                                                  1, UnpooledByteBufAllocator.DEFAULT, 0);
+        Assert.assertEquals(indexed.capacity(), indexed.writerIndex());
+        System.out.println("origin: " + origin.readableBytes() + " bytes, indexed: " + indexed.readableBytes() + " bytes");
+        Assert.assertTrue(indexed.readableBytes() * 2 < origin.readableBytes());
+
+        Assert.assertTrue(BinaryMessageType.isDictionaryRequired(indexed));
+        Assert.assertFalse(BinaryMessageType.isDictionaryRequired(origin));
+        Assert.assertEquals("test", BinaryMessageType.peekDeviceId(indexed));
+
+        List<DeviceMessage> read = BinaryMessageType.readAll(indexed, null, dictionary);
+        Assert.assertEquals(1, read.size());
+        Assert.assertTrue(read.get(0) instanceof ReportPropertyMessage);
+        Assert.assertEquals("test", read.get(0).getDeviceId());
+        Assert.assertEquals(properties, ((ReportPropertyMessage) read.get(0)).getProperties());
+    }
+
+    @Test
+    public void testIndexedReportFingerprintMismatch() {
+        PropertyDictionary device = new PropertyDictionary(Arrays.asList("temp", "humidity"));
+        //平台修改了物模型,属性顺序变化
+        PropertyDictionary platform = new PropertyDictionary(Arrays.asList("humidity", "temp"));
+        Assert.assertNotEquals(device.getFingerprint(), platform.getFingerprint());
+        Assert.assertEquals(0, PropertyDictionary.fingerprint());
+
+        ReportPropertyMessage message = new ReportPropertyMessage();
+        message.setDeviceId("test");
+        message.setProperties(Collections.singletonMap("temp", 25));
+        ByteBuf indexed = BinaryMessageType.write(new BinaryIndexedReportPropertyMessage(device, message),
+                                                  1, UnpooledByteBufAllocator.DEFAULT, 0);
+        try {
+            BinaryMessageType.readAll(indexed.duplicate(), null, platform);
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+        Assert.assertEquals(message.getProperties(),
+                            ((ReportPropertyMessage) BinaryMessageType.readAll(indexed, null, device).get(0)).getProperties());
+    }
+
+    //预先计算的长度与实际写出的长度一致,并且与写出到可扩容缓冲区的结果一致
+    private void assertSize(DeviceMessage message) {
+        ByteBuf expect = BinaryMessageType.write(message, 1, Unpooled.buffer());
+        ByteBuf data = BinaryMessageType.write(message, 1, UnpooledByteBufAllocator.DEFAULT, 4);
+
+        Assert.assertEquals(data.capacity(), data.writerIndex());
+        Assert.assertEquals(expect, data.skipBytes(4));
+    }
+
     public void doTest(DeviceMessage message) {
+        assertSize(message);
 
         ByteBuf data = BinaryMessageType.write(message, Unpooled.buffer());
 
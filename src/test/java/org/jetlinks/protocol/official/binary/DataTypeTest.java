@@ -0,0 +1,192 @@
+package org.jetlinks.protocol.official.binary;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class DataTypeTest {
+
+    private Map<String, Object> createProperties() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("bool", true);
+        properties.put("int8", (byte) 1);
+        properties.put("int16", (short) 2);
+        properties.put("int32", 3);
+        properties.put("int64", 4L);
+        properties.put("float", 5.5F);
+        properties.put("double", 6.6D);
+        properties.put("string", "test");
+        properties.put("binary", new byte[]{1, 2, 3});
+        properties.put("null", null);
+        properties.put("array", Arrays.asList(1, "2", Collections.singletonMap("3", 3)));
+        properties.put("object", Collections.singletonMap("nested", Arrays.asList(1L, 2L)));
+        return properties;
+    }
+
+    @Test
+    public void testVisitor() {
+        ByteBuf buf = Unpooled.buffer();
+        Map<String, Object> properties = createProperties();
+        buf.writeByte(DataType.OBJECT.ordinal());
+        DataType.OBJECT.write(buf, properties);
+
+        Object expect = DataType.readFrom(buf.duplicate());
+
+        ValueBuilder builder = new ValueBuilder();
+        DataType.readFrom(buf.duplicate(), builder);
+        assertMapEquals((Map<?, ?>) expect, (Map<?, ?>) builder.getValue());
+
+        buf.readByte();
+        PrimitivePropertyMap map = PropertiesVisitor.read(buf);
+        Assert.assertFalse(buf.isReadable());
+        Assert.assertEquals(new ArrayList<>(properties.keySet()), new ArrayList<>(map.keySet()));
+        assertMapEquals((Map<?, ?>) expect, map);
+    }
+
+    @Test
+    public void testPrimitivePropertyMap() {
+        PrimitivePropertyMap map = new PrimitivePropertyMap(1);
+        map.putInt("a", 1);
+        map.putDouble("b", 2.5D);
+        map.put("c", "3");
+        map.putLong("a", 4L);
+
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals(4L, map.get("a"));
+        Assert.assertEquals(2.5D, map.get("b"));
+        Assert.assertEquals("3", map.get("c"));
+
+        Assert.assertEquals(2.5D, map.remove("b"));
+        Assert.assertEquals(Arrays.asList("a", "c"), new ArrayList<>(map.keySet()));
+
+        Map<String, Object> expect = new HashMap<>();
+        expect.put("a", 4L);
+        expect.put("c", "3");
+        Assert.assertEquals(expect, map);
+        Assert.assertEquals(expect.hashCode(), map.hashCode());
+    }
+
+    @Test
+    public void testCompact() {
+        Object[] values = {
+                0, 1, -1, 63, -64, 64, 1 << 20, -(1 << 20), 1 << 21, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                0L, -1L, 1L << 48, -(1L << 48), 1L << 49, Long.MAX_VALUE, Long.MIN_VALUE,
+                0F, -0F, 1.5F, -2.25F, 65504F, 0x1p-24F, 0.1F, 1e10F, Float.POSITIVE_INFINITY, Float.NaN,
+                "", "test", "温度", repeat('a', 127), repeat('a', 128), repeat('温', 42), repeat('温', 43),
+                new byte[0], new byte[127], new byte[128],
+                Collections.emptyList(), Collections.nCopies(200, 1),
+                Collections.singletonMap("key", "value"),
+        };
+        for (Object value : values) {
+            ByteBuf compact = Unpooled.buffer();
+            DataType.writeTo(value, compact, true);
+            ByteBuf legacy = Unpooled.buffer();
+            DataType.writeTo(value, legacy, false);
+
+            Assert.assertEquals(DataType.sizeOf(value, true), compact.readableBytes());
+            Assert.assertEquals(DataType.sizeOf(value, false), legacy.readableBytes());
+            //紧凑编码不会比原来的编码更长
+            Assert.assertTrue(compact.readableBytes() <= legacy.readableBytes());
+
+            Object read = DataType.readFrom(compact);
+            Assert.assertFalse(compact.isReadable());
+            if (value instanceof byte[]) {
+                Assert.assertArrayEquals((byte[]) value, (byte[]) read);
+            } else {
+                Assert.assertEquals(value, read);
+            }
+        }
+    }
+
+    @Test
+    public void testCompactLongString() {
+        //超过2字节长度的字符串只能使用变长的长度字段
+        String value = repeat('a', 70000);
+        ByteBuf buf = Unpooled.buffer();
+        DataType.writeTo(value, buf, true);
+        Assert.assertEquals(DataType.VSTRING.ordinal(), buf.getByte(0));
+        Assert.assertEquals(value, DataType.readFrom(buf));
+    }
+
+    @Test
+    public void testCompactSize() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("temp", 25);
+        properties.put("humidity", 60L);
+        properties.put("voltage", 3.5F);
+        properties.put("status", "ok");
+        properties.put("values", Arrays.asList(1, 2, 3));
+
+        int legacy = DataType.sizeOf(properties, false);
+        int compact = DataType.sizeOf(properties, true);
+        System.out.println("legacy: " + legacy + " bytes, compact: " + compact + " bytes");
+        Assert.assertTrue(compact < legacy * 0.75);
+
+        //嵌套在原编码的对象中的值也使用紧凑编码
+        ByteBuf buf = Unpooled.buffer();
+        DataType.OBJECT.write(buf, properties, true);
+        Assert.assertEquals(DataType.OBJECT.size(properties, true), buf.readableBytes());
+        Assert.assertEquals(properties, DataType.OBJECT.read(buf));
+
+        ValueBuilder builder = new ValueBuilder();
+        ByteBuf encoded = Unpooled.buffer();
+        DataType.writeTo(properties, encoded, true);
+        DataType.readFrom(encoded, builder);
+        Assert.assertEquals(properties, builder.getValue());
+    }
+
+    @Test
+    public void testHalfFloat() {
+        for (int half = 0; half <= 0xFFFF; half++) {
+            float value = DataType.halfToFloat(half);
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            Assert.assertEquals(half, DataType.floatToHalf(value));
+        }
+        //不能无损转换
+        Assert.assertEquals(-1, DataType.floatToHalf(0.1F));
+        Assert.assertEquals(-1, DataType.floatToHalf(65536F));
+        Assert.assertEquals(-1, DataType.floatToHalf(0x1p-25F));
+        Assert.assertEquals(-1, DataType.floatToHalf(1 + 0x1p-11F));
+    }
+
+    @Test
+    public void testVarInt() {
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            ByteBuf buf = Unpooled.buffer();
+            DataType.writeVarLong(buf, value);
+            Assert.assertEquals(DataType.varLongSize(value), buf.readableBytes());
+            Assert.assertEquals(value, DataType.readVarLong(buf));
+
+            int intValue = (int) value;
+            buf.clear();
+            DataType.writeVarInt(buf, intValue);
+            Assert.assertEquals(DataType.varIntSize(intValue), buf.readableBytes());
+            Assert.assertEquals(intValue, DataType.readVarInt(buf));
+        }
+    }
+
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static void assertMapEquals(Map<?, ?> expect, Map<?, ?> actual) {
+        Assert.assertEquals(expect.size(), actual.size());
+        for (Map.Entry<?, ?> entry : expect.entrySet()) {
+            Assert.assertTrue(actual.containsKey(entry.getKey()));
+            Object value = entry.getValue();
+            if (value instanceof byte[]) {
+                Assert.assertArrayEquals((byte[]) value, (byte[]) actual.get(entry.getKey()));
+            } else {
+                Assert.assertEquals(value, actual.get(entry.getKey()));
+            }
+        }
+    }
+}
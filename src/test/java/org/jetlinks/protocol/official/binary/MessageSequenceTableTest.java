@@ -0,0 +1,215 @@
+package org.jetlinks.protocol.official.binary;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MessageSequenceTableTest {
+
+    private final AtomicLong clock = new AtomicLong(1000);
+
+    private final MessageSequenceTable table = new MessageSequenceTable(4, 30_000, 3600_000, clock::get);
+
+    @Test
+    public void testNextAndTake() {
+        int seq = table.next("device1", "msg1");
+        Assert.assertTrue(seq > 0);
+        Assert.assertNotEquals(seq, table.next("device1", "msg2"));
+
+        Assert.assertEquals("msg1", table.take("device1", seq));
+        Assert.assertNull(table.take("device1", seq));
+        Assert.assertNull(table.take("device2", seq));
+
+        //没有消息ID时不记录
+        Assert.assertEquals(0, table.next("device1", null));
+        Assert.assertNull(table.take("device1", 0));
+    }
+
+    @Test
+    public void testExpire() {
+        int seq = table.next("device1", "msg1");
+        clock.addAndGet(30_000);
+        Assert.assertNull(table.take("device1", seq));
+
+        table.next("device1", "msg2");
+        clock.addAndGet(3600_000);
+        table.sweep();
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testNotOverwrite() {
+        Set<Integer> sequences = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            sequences.add(table.next("device1", "msg" + i));
+        }
+        Assert.assertEquals(4, sequences.size());
+
+        //所有位置都在使用中时不记录,未过期的记录不会被覆盖
+        Assert.assertEquals(0, table.next("device1", "msg4"));
+        Assert.assertEquals(4, table.inFlight("device1"));
+
+        //过期后可以继续记录
+        clock.addAndGet(30_000);
+        int seq = table.next("device1", "msg4");
+        Assert.assertTrue(seq > 0);
+        Assert.assertEquals("msg4", table.take("device1", seq));
+        for (Integer sequence : sequences) {
+            Assert.assertNull(table.take("device1", sequence));
+        }
+    }
+
+    @Test
+    public void testCapacity() {
+        Assert.assertEquals(4, table.getCapacity());
+        Assert.assertEquals(8, new MessageSequenceTable(5, 30_000, 3600_000, clock::get).getCapacity());
+        Assert.assertEquals(MessageSequenceTable.MAX_SEQUENCE + 1,
+                            new MessageSequenceTable(MessageSequenceTable.MAX_SEQUENCE + 1, 30_000, 3600_000, clock::get).getCapacity());
+    }
+
+    @Test
+    public void testInFlightWindow() {
+        int first = table.tryNext("device1", "msg0", 2);
+        int second = table.tryNext("device1", "msg1", 2);
+        Assert.assertTrue(first > 0 && second > 0);
+        Assert.assertEquals(2, table.inFlight("device1"));
+
+        //达到限制
+        Assert.assertEquals(MessageSequenceTable.REJECTED, table.tryNext("device1", "msg2", 2));
+        Assert.assertEquals("msg0", table.take("device1", first));
+
+        //回复后释放
+        int third = table.tryNext("device1", "msg2", 2);
+        Assert.assertTrue(third > 0);
+        Assert.assertEquals(MessageSequenceTable.REJECTED, table.tryNext("device1", "msg3", 2));
+
+        //超时后释放
+        clock.addAndGet(30_000);
+        int fourth = table.tryNext("device1", "msg3", 2);
+        Assert.assertTrue(fourth > 0);
+        Assert.assertEquals(1, table.inFlight("device1"));
+        Assert.assertNull(table.take("device1", second));
+        Assert.assertEquals("msg3", table.take("device1", fourth));
+
+        table.remove("device1");
+        Assert.assertEquals(0, table.inFlight("device1"));
+    }
+
+    @Test
+    public void testInFlightWindowNotOverwrite() {
+        //窗口内的消息不会被覆盖,超过65535条消息后仍然可以对应
+        int pending = table.tryNext("device1", "pending", 4);
+        for (int i = 0; i < MessageSequenceTable.MAX_SEQUENCE * 2; i++) {
+            String messageId = String.valueOf(i);
+            int seq = table.tryNext("device1", messageId, 4);
+            Assert.assertNotEquals(pending, seq);
+            Assert.assertEquals(messageId, table.take("device1", seq));
+        }
+        Assert.assertEquals("pending", table.take("device1", pending));
+    }
+
+    @Test
+    public void testFullSequenceRange() {
+        MessageSequenceTable table = new MessageSequenceTable(MessageSequenceTable.MAX_SEQUENCE + 1, 30_000, 3600_000, clock::get);
+        Set<Integer> sequences = new HashSet<>();
+        for (int i = 0; i < MessageSequenceTable.MAX_SEQUENCE; i++) {
+            sequences.add(table.tryNext("device1", "msg" + i, 0));
+        }
+        Assert.assertEquals(MessageSequenceTable.MAX_SEQUENCE, sequences.size());
+        Assert.assertFalse(sequences.contains(MessageSequenceTable.REJECTED));
+
+        //序号0对应的位置无法使用,其他位置都在使用中时直接拒绝
+        Assert.assertEquals(MessageSequenceTable.REJECTED, table.tryNext("device1", "msg", 0));
+        Assert.assertEquals(0, table.next("device1", "msg"));
+
+        Assert.assertEquals("msg0", table.take("device1", 1));
+        Assert.assertEquals(1, table.tryNext("device1", "msg", 0));
+    }
+
+    @Test
+    public void testWrapAround() {
+        for (int i = 0; i < MessageSequenceTable.MAX_SEQUENCE * 2; i++) {
+            String messageId = String.valueOf(i);
+            int seq = table.next("device1", messageId);
+            Assert.assertTrue(seq > 0 && seq <= MessageSequenceTable.MAX_SEQUENCE);
+            Assert.assertEquals(messageId, table.take("device1", seq));
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        MessageSequenceTable table = new MessageSequenceTable(16, 30_000, 3600_000, System::currentTimeMillis);
+        int threads = 8, loop = 100_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String prefix = "thread" + t + "-";
+                //一半的线程使用相同的设备
+                String deviceId = t % 2 == 0 ? "device" : prefix;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int errors = 0;
+                    for (int i = 0; i < loop; i++) {
+                        String messageId = prefix + i;
+                        int seq = table.next(deviceId, messageId);
+                        if (!messageId.equals(table.take(deviceId, seq))) {
+                            errors++;
+                        }
+                    }
+                    return errors;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                Assert.assertEquals(0, (int) future.get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentInFlightWindow() throws Exception {
+        MessageSequenceTable table = new MessageSequenceTable(16, 30_000, 3600_000, System::currentTimeMillis);
+        int threads = 8, loop = 100_000, window = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String prefix = "thread" + t + "-";
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int errors = 0;
+                    for (int i = 0; i < loop; i++) {
+                        String messageId = prefix + i;
+                        int seq = table.tryNext("device", messageId, window);
+                        if (seq == MessageSequenceTable.REJECTED) {
+                            continue;
+                        }
+                        if (table.inFlight("device") > window || !messageId.equals(table.take("device", seq))) {
+                            errors++;
+                        }
+                    }
+                    return errors;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                Assert.assertEquals(0, (int) future.get(1, TimeUnit.MINUTES));
+            }
+            Assert.assertEquals(0, table.inFlight("device"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.jetlinks.protocol.official.cipher;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.hswebframework.utils.RandomUtil;
+import org.jetlinks.protocol.official.TrackingByteBufAllocator;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CiphersTest {
+
+    @Test
+    public void testDecrypt() {
+        byte[] data = "{\"properties\":{\"temp\":36.5}}".getBytes();
+        //超过缓存数量,验证淘汰后仍然可以正常加解密
+        for (int i = 0; i < 300; i++) {
+            String key = RandomUtil.randomChar(16);
+            byte[] encrypted = Ciphers.AES.encrypt(data, key);
+            assertArrayEquals(data, Ciphers.AES.decrypt(encrypted, key));
+        }
+    }
+
+    @Test
+    public void testDecryptByteBuf() {
+        String key = RandomUtil.randomChar(16);
+        byte[] data = "{\"properties\":{\"temp\":36.5}}".getBytes();
+        byte[] encrypted = Ciphers.AES.encrypt(data, key);
+
+        ByteBuf heap = Unpooled.buffer().writeBytes(encrypted);
+        assertArrayEquals(data, ByteBufUtil.getBytes(Ciphers.AES.decrypt(heap, key)));
+
+        ByteBuf direct = Unpooled.directBuffer().writeBytes(encrypted);
+        assertArrayEquals(data, ByteBufUtil.getBytes(Ciphers.AES.decrypt(direct, key)));
+        direct.release();
+
+        ByteBuf readOnly = Unpooled.wrappedBuffer(encrypted).asReadOnly();
+        assertArrayEquals(data, ByteBufUtil.getBytes(Ciphers.AES.decrypt(readOnly, key)));
+        //只读的ByteBuf不会被修改
+        assertArrayEquals(encrypted, ByteBufUtil.getBytes(readOnly));
+    }
+
+    @Test
+    public void testDecryptToAllocator() {
+        String key = RandomUtil.randomChar(16);
+        byte[] data = "{\"properties\":{\"temp\":36.5}}".getBytes();
+        byte[] encrypted = Ciphers.AES.encrypt(data, key);
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+
+        ByteBuf direct = Unpooled.directBuffer().writeBytes(encrypted);
+        ByteBuf decrypted = Ciphers.AES.decrypt(direct, key, allocator);
+        assertArrayEquals(data, ByteBufUtil.getBytes(decrypted));
+        //原始数据不会被修改
+        assertArrayEquals(encrypted, ByteBufUtil.getBytes(direct));
+        decrypted.release();
+
+        //解密失败时原始数据不变,已分配的ByteBuf被释放
+        try {
+            //长度不是16的整数倍
+            Ciphers.AES.decrypt(direct.slice(0, encrypted.length - 1), key, allocator);
+            fail();
+        } catch (Exception ignore) {
+        }
+        assertArrayEquals(encrypted, ByteBufUtil.getBytes(direct));
+        direct.release();
+        allocator.assertReleased();
+    }
+
+    @Test
+    public void testWrongKey() {
+        byte[] encrypted = Ciphers.AES.encrypt("test".getBytes(), RandomUtil.randomChar(16));
+        String key = RandomUtil.randomChar(16);
+        try {
+            Ciphers.AES.decrypt(encrypted, key);
+        } catch (Exception ignore) {
+        }
+        //失败后缓存的Cipher被移除,可以继续正常使用
+        assertArrayEquals("test".getBytes(), Ciphers.AES.decrypt(Ciphers.AES.encrypt("test".getBytes(), key), key));
+    }
+}
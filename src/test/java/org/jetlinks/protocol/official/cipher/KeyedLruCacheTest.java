@@ -0,0 +1,65 @@
+package org.jetlinks.protocol.official.cipher;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class KeyedLruCacheTest {
+
+    static class TestCache extends KeyedLruCache<StringBuilder> {
+
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger created = new AtomicInteger();
+
+        TestCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected StringBuilder create() {
+            created.incrementAndGet();
+            return new StringBuilder();
+        }
+
+        @Override
+        protected void init(StringBuilder value, String key) {
+            value.setLength(0);
+            value.append(key);
+        }
+    }
+
+    @Test
+    public void testEvictAndReuse() throws Exception {
+        TestCache cache = new TestCache(2);
+
+        StringBuilder a = cache.take("a");
+        assertSame(a, cache.take("a"));
+        StringBuilder b = cache.take("b");
+        //访问a后b为最久未使用
+        cache.take("a");
+        cache.take("c");
+        assertEquals(3, cache.created.get());
+        assertEquals(2, cache.size());
+        assertFalse(cache.containsKey("b"));
+        assertSame(a, cache.take("a"));
+
+        //复用被淘汰的b
+        StringBuilder d = cache.take("d");
+        assertSame(b, d);
+        assertEquals("d", d.toString());
+        assertEquals(3, cache.created.get());
+        assertFalse(cache.containsKey("c"));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        TestCache cache = new TestCache(2);
+        StringBuilder a = cache.take("a");
+        cache.invalidate("a");
+        assertNotSame(a, cache.take("a"));
+        assertEquals(2, cache.created.get());
+    }
+}
@@ -0,0 +1,49 @@
+package org.jetlinks.protocol.official.cipher;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.apache.commons.codec.digest.HmacAlgorithms;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.hswebframework.utils.RandomUtil;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SignersTest {
+
+    @Test
+    public void testSign() {
+        byte[] data = "{\"properties\":{\"temp\":36.5}}".getBytes();
+        //超过缓存数量,验证淘汰后仍然可以正常签名
+        for (int i = 0; i < 300; i++) {
+            String key = RandomUtil.randomChar(16);
+            byte[] expect = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, key.getBytes(StandardCharsets.UTF_8)).hmac(data);
+
+            ByteBuf out = Unpooled.buffer(32).writeZero(32);
+            Signers.HMAC_SHA256.sign(Unpooled.wrappedBuffer(data), key, out, 0);
+            assertArrayEquals(expect, ByteBufUtil.getBytes(out));
+        }
+    }
+
+    @Test
+    public void testVerify() {
+        String key = RandomUtil.randomChar(16);
+        byte[] data = "{\"properties\":{\"temp\":36.5}}".getBytes();
+
+        //[签名,数据]
+        ByteBuf heap = Unpooled.buffer().writeZero(32).writeBytes(data);
+        Signers.HMAC_SHA256.sign(heap.slice(32, data.length), key, heap, 0);
+        assertTrue(Signers.HMAC_SHA256.verify(heap.slice(32, data.length), key, heap, 0));
+        assertFalse(Signers.HMAC_SHA256.verify(heap.slice(32, data.length), key + "1", heap, 0));
+
+        ByteBuf direct = Unpooled.directBuffer().writeBytes(heap);
+        assertTrue(Signers.HMAC_SHA256.verify(direct.slice(32, data.length), key, direct, 0));
+        //篡改数据
+        direct.setByte(40, direct.getByte(40) + 1);
+        assertFalse(Signers.HMAC_SHA256.verify(direct.slice(32, data.length), key, direct, 0));
+        direct.release();
+    }
+}
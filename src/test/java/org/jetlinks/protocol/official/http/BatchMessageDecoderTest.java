@@ -0,0 +1,92 @@
+package org.jetlinks.protocol.official.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.TooLongFrameException;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.event.EventMessage;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.protocol.official.ObjectMappers;
+import org.jetlinks.protocol.official.ParsedTopic;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+
+public class BatchMessageDecoderTest {
+
+    private static final String BODY =
+            "{\"topic\":\"/properties/report\",\"message\":{\"properties\":{\"temp\":36.5}}}\n" +
+                    "\r\n" +
+                    //消息体在topic之前
+                    "  {\"message\":{\"data\":{\"level\":1}},\"topic\":\"event/fire_alarm\"}\r\n" +
+                    "{\"topic\":\"/properties/report\",\"message\":{\"properties\":{\"name\":\"测试}\"}}}";
+
+    private void doTestDecode(ByteBuf body) {
+        new BatchMessageDecoder()
+                .decode(ObjectMappers.JSON_MAPPER, "device1", body)
+                .as(StepVerifier::create)
+                .expectNextMatches(msg -> msg instanceof ReportPropertyMessage
+                        && "device1".equals(msg.getDeviceId())
+                        && ((ReportPropertyMessage) msg).getProperties().get("temp").equals(36.5))
+                .expectNextMatches(msg -> msg instanceof EventMessage
+                        && "device1".equals(msg.getDeviceId())
+                        && "fire_alarm".equals(((EventMessage) msg).getEvent()))
+                .expectNextMatches(msg -> msg instanceof ReportPropertyMessage
+                        && "测试}".equals(((ReportPropertyMessage) msg).getProperties().get("name")))
+                .verifyComplete();
+        //不修改读取位置
+        Assert.assertEquals(0, body.readerIndex());
+    }
+
+    @Test
+    public void testDecode() {
+        byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+        doTestDecode(Unpooled.wrappedBuffer(bytes));
+
+        ByteBuf direct = Unpooled.directBuffer();
+        direct.writeBytes(bytes);
+        try {
+            doTestDecode(direct);
+        } finally {
+            direct.release();
+        }
+    }
+
+    @Test
+    public void testLimit() {
+        ByteBuf body = Unpooled.wrappedBuffer(BODY.getBytes(StandardCharsets.UTF_8));
+
+        new BatchMessageDecoder(2, 1024)
+                .decode(ObjectMappers.JSON_MAPPER, "device1", body)
+                .as(StepVerifier::create)
+                .expectError(TooLongFrameException.class)
+                .verify();
+
+        new BatchMessageDecoder(10, 16)
+                .decode(ObjectMappers.JSON_MAPPER, "device1", body)
+                .as(StepVerifier::create)
+                .expectError(TooLongFrameException.class)
+                .verify();
+    }
+
+    @Test
+    public void testIllegalLine() {
+        ByteBuf body = Unpooled.wrappedBuffer(("{\"topic\":\"/properties/report\",\"message\":{\"properties\":{}}}\n" +
+                "{\"message\":{}}").getBytes(StandardCharsets.UTF_8));
+
+        new BatchMessageDecoder()
+                .decode(ObjectMappers.JSON_MAPPER, "device1", body)
+                .as(StepVerifier::create)
+                //任意一行错误时不返回任何消息
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    public void testIsBatch() {
+        Assert.assertTrue(BatchMessageDecoder.isBatch(ParsedTopic.of("/product1/device1/batch").removeProductPath()));
+        Assert.assertFalse(BatchMessageDecoder.isBatch(ParsedTopic.of("/product1/device1/properties/report").removeProductPath()));
+    }
+}
@@ -0,0 +1,132 @@
+package org.jetlinks.protocol.official.http;
+
+import com.google.common.base.Ticker;
+import org.jetlinks.core.defaults.CompositeProtocolSupports;
+import org.jetlinks.core.device.*;
+import org.jetlinks.protocol.official.TestDeviceRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class BearerTokenCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private TestDeviceRegistry registry;
+
+    private Function<String, Mono<DeviceOperator>> getter;
+
+    @Before
+    public void init() {
+        registry = new TestDeviceRegistry(new CompositeProtocolSupports(), new StandaloneDeviceMessageBroker());
+        registry.register(DeviceInfo.builder()
+                                    .id("device1")
+                                    .productId("product1")
+                                    .build())
+                .flatMap(device -> device.setConfig(BearerTokenCache.CONFIG_KEY_BEARER_TOKEN, "token1"))
+                .block();
+        getter = deviceId -> {
+            lookups.incrementAndGet();
+            return registry.getDevice(deviceId);
+        };
+    }
+
+    private BearerTokenCache createCache() {
+        return new BearerTokenCache(10, Duration.ofMinutes(1), Duration.ofSeconds(10), new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+    }
+
+    private Boolean verify(BearerTokenCache cache, String deviceId, String token) {
+        return cache.verify(deviceId, token, getter).block();
+    }
+
+    @Test
+    public void testCached() {
+        BearerTokenCache cache = createCache();
+
+        Assert.assertTrue(verify(cache, "device1", "token1"));
+        Assert.assertTrue(verify(cache, "device1", "token1"));
+        Assert.assertEquals(1, lookups.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+
+        //token错误时重新获取配置
+        Assert.assertFalse(verify(cache, "device1", "token2"));
+        Assert.assertEquals(2, lookups.get());
+        Assert.assertEquals(2, cache.getMisses());
+
+        //设备不存在
+        Assert.assertNull(verify(cache, "device2", "token1"));
+        Assert.assertFalse(verify(cache, "device1", null));
+    }
+
+    @Test
+    public void testRevoke() {
+        BearerTokenCache cache = createCache();
+        Assert.assertTrue(verify(cache, "device1", "token1"));
+
+        registry.getDevice("device1")
+                .flatMap(device -> device.setConfig(BearerTokenCache.CONFIG_KEY_BEARER_TOKEN, "token2"))
+                .block();
+        //设备重新激活前仍然使用缓存
+        Assert.assertTrue(verify(cache, "device1", "token1"));
+        //新token可以直接认证通过
+        Assert.assertTrue(verify(cache, "device1", "token2"));
+
+        cache.invalidate("device1");
+        Assert.assertFalse(verify(cache, "device1", "token1"));
+        Assert.assertTrue(verify(cache, "device1", "token2"));
+        Assert.assertFalse(verify(cache, "device1", "token1"));
+    }
+
+    @Test
+    public void testConfigChangedWithoutInvalidate() {
+        BearerTokenCache cache = createCache();
+        Assert.assertTrue(verify(cache, "device1", "token1"));
+
+        registry.getDevice("device1")
+                .flatMap(device -> device.setConfig(BearerTokenCache.CONFIG_KEY_BEARER_TOKEN, "token2"))
+                .block();
+        //超过重新校验时间后旧token失效
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        Assert.assertFalse(verify(cache, "device1", "token1"));
+        Assert.assertTrue(verify(cache, "device1", "token2"));
+        Assert.assertTrue(verify(cache, "device1", "token2"));
+        Assert.assertEquals(3, lookups.get());
+
+        //删除token配置
+        registry.getDevice("device1")
+                .flatMap(device -> device.removeConfig(BearerTokenCache.CONFIG_KEY_BEARER_TOKEN))
+                .block();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        Assert.assertFalse(verify(cache, "device1", "token2"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpire() {
+        BearerTokenCache cache = createCache();
+        Assert.assertTrue(verify(cache, "device1", "token1"));
+
+        registry.getDevice("device1")
+                .flatMap(device -> device.removeConfig(BearerTokenCache.CONFIG_KEY_BEARER_TOKEN))
+                .block();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        Assert.assertFalse(verify(cache, "device1", "token1"));
+        Assert.assertEquals(0, cache.size());
+    }
+}
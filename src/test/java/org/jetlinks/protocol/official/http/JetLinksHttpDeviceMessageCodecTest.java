@@ -0,0 +1,85 @@
+package org.jetlinks.protocol.official.http;
+
+import com.alibaba.fastjson.JSON;
+import org.jetlinks.core.device.DeviceOperator;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.Message;
+import org.jetlinks.core.message.MessageType;
+import org.jetlinks.core.message.codec.DefaultTransport;
+import org.jetlinks.core.message.codec.EncodedMessage;
+import org.jetlinks.core.message.codec.MessageEncodeContext;
+import org.jetlinks.core.message.function.FunctionInvokeMessage;
+import org.jetlinks.core.message.property.ReadPropertyMessage;
+import org.jetlinks.protocol.official.TrackingByteBufAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class JetLinksHttpDeviceMessageCodecTest {
+
+    private final TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+
+    private final JetLinksHttpDeviceMessageCodec codec = new JetLinksHttpDeviceMessageCodec(DefaultTransport.WebSocket, allocator);
+
+    @Test
+    public void testEncodeReadProperty() {
+        ReadPropertyMessage message = new ReadPropertyMessage();
+        message.setDeviceId("device1");
+        message.setMessageId("test");
+        message.setProperties(Arrays.asList("name", "sn"));
+
+        doTestEncode(message);
+    }
+
+    @Test
+    public void testEncodeFunction() {
+        FunctionInvokeMessage message = new FunctionInvokeMessage();
+        message.setDeviceId("device1");
+        message.setMessageId("test");
+        message.setFunctionId("restart");
+        message.addInput("delay", 1000);
+        message.addHeader("async", true);
+
+        doTestEncode(message);
+    }
+
+    private void doTestEncode(DeviceMessage message) {
+        EncodedMessage encoded = codec.encode(createContext(message)).block();
+        Assert.assertNotNull(encoded);
+
+        //消息体直接序列化到分配的ByteBuf中
+        Assert.assertEquals(1, allocator.getAllocated());
+        String json = encoded.getPayload().toString(StandardCharsets.UTF_8);
+        Message decoded = MessageType.convertMessage(JSON.parseObject(json)).orElse(null);
+
+        Assert.assertNotNull(decoded);
+        Assert.assertEquals(message.toJson(), decoded.toJson());
+
+        encoded.getPayload().release();
+        allocator.assertReleased();
+    }
+
+    private MessageEncodeContext createContext(Message message) {
+        return new MessageEncodeContext() {
+            @Nonnull
+            @Override
+            public Message getMessage() {
+                return message;
+            }
+
+            @Override
+            public DeviceOperator getDevice() {
+                return null;
+            }
+
+            @Override
+            public Mono<DeviceOperator> getDevice(String deviceId) {
+                return Mono.empty();
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package org.jetlinks.protocol.official.http;
+
+import com.alibaba.fastjson.JSON;
+import com.fasterxml.jackson.core.JsonParseException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.jetlinks.core.message.ChildDeviceMessage;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.MessageType;
+import org.jetlinks.core.message.event.EventMessage;
+import org.jetlinks.core.message.function.FunctionInvokeMessageReply;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.protocol.official.ObjectMappers;
+import org.jetlinks.protocol.official.TopicMessageCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+public class WebSocketMessageDecoderTest {
+
+    private static List<DeviceMessage> decode(String json) throws IOException {
+        ByteBuf payload = Unpooled.wrappedBuffer(json.getBytes(StandardCharsets.UTF_8));
+        List<DeviceMessage> messages = WebSocketMessageDecoder.decode(ObjectMappers.JSON_MAPPER, payload);
+        Assert.assertEquals(0, payload.readerIndex());
+        return messages;
+    }
+
+    @Test
+    public void testDecode() throws IOException {
+        ReportPropertyMessage report = new ReportPropertyMessage();
+        report.setDeviceId("device1");
+        report.setMessageId("1");
+        report.setProperties(Collections.singletonMap("temp", 36.5));
+        String json = report.toJson().toJSONString();
+
+        List<DeviceMessage> messages = decode(json);
+        Assert.assertEquals(1, messages.size());
+        Assert.assertTrue(messages.get(0) instanceof ReportPropertyMessage);
+        //与原来的解码方式结果一致
+        Assert.assertEquals(MessageType.convertMessage(JSON.parseObject(json)).orElse(null).toJson(),
+                            messages.get(0).toJson());
+    }
+
+    @Test
+    public void testChild() throws IOException {
+        //子设备消息不能直接解码为消息类
+        Assert.assertNull(TopicMessageCodec.getMessageClass(MessageType.CHILD.name()));
+        Assert.assertNull(TopicMessageCodec.getMessageClass(MessageType.CHILD_REPLY.name()));
+        Assert.assertNull(TopicMessageCodec.getMessageClass(MessageType.DIRECT.name()));
+
+        String json = "{\"messageType\":\"CHILD\",\"deviceId\":\"gateway1\",\"messageId\":\"1\"," +
+                "\"childDeviceMessage\":{\"messageType\":\"REPORT_PROPERTY\",\"deviceId\":\"child1\",\"properties\":{\"temp\":36.5}}}";
+        List<DeviceMessage> messages = decode(json);
+
+        Assert.assertEquals(1, messages.size());
+        Assert.assertTrue(messages.get(0) instanceof ChildDeviceMessage);
+        ChildDeviceMessage child = (ChildDeviceMessage) messages.get(0);
+        Assert.assertEquals("gateway1", child.getDeviceId());
+        Assert.assertTrue(child.getChildDeviceMessage() instanceof ReportPropertyMessage);
+        Assert.assertEquals("child1", ((ReportPropertyMessage) child.getChildDeviceMessage()).getDeviceId());
+        //与原来的解码方式结果一致
+        Assert.assertEquals(MessageType.convertMessage(JSON.parseObject(json)).orElse(null).toJson(),
+                            child.toJson());
+    }
+
+    @Test
+    public void testEvent() throws IOException {
+        //事件直接解码为消息类
+        Assert.assertEquals(EventMessage.class, TopicMessageCodec.getMessageClass(MessageType.EVENT.name()));
+
+        List<DeviceMessage> messages = decode(
+                "{\"event\":\"alarm\",\"messageType\":\"EVENT\",\"deviceId\":\"device1\",\"data\":{\"level\":1}}");
+        Assert.assertEquals(1, messages.size());
+        EventMessage event = (EventMessage) messages.get(0);
+        Assert.assertEquals("device1", event.getDeviceId());
+        Assert.assertEquals("alarm", event.getEvent());
+        Assert.assertNotNull(event.getData());
+    }
+
+    @Test
+    public void testFieldOrder() throws IOException {
+        List<DeviceMessage> messages = decode(
+                "{\"deviceId\":\"device1\",\"output\":{\"result\":[1,{\"a\":2}]},\"messageType\":\"INVOKE_FUNCTION_REPLY\",\"success\":true}");
+
+        Assert.assertEquals(1, messages.size());
+        FunctionInvokeMessageReply reply = (FunctionInvokeMessageReply) messages.get(0);
+        Assert.assertEquals("device1", reply.getDeviceId());
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertNotNull(reply.getOutput());
+    }
+
+    @Test
+    public void testArray() throws IOException {
+        List<DeviceMessage> messages = decode(
+                "[{\"messageType\":\"REPORT_PROPERTY\",\"deviceId\":\"device1\",\"properties\":{\"temp\":36.5}}," +
+                        //没有messageType的消息被忽略
+                        "{\"deviceId\":\"device1\"}," +
+                        "{\"deviceId\":\"device1\",\"messageType\":\"EVENT\",\"event\":\"alarm\",\"data\":{\"level\":1}}]");
+
+        Assert.assertEquals(2, messages.size());
+        Assert.assertTrue(messages.get(0) instanceof ReportPropertyMessage);
+        Assert.assertEquals("alarm", ((EventMessage) messages.get(1)).getEvent());
+
+        Assert.assertTrue(decode("[]").isEmpty());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testIllegal() throws IOException {
+        decode("[1]");
+    }
+}
@@ -0,0 +1,126 @@
+package org.jetlinks.protocol.official.tcp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.TooLongFrameException;
+import org.jetlinks.protocol.official.TrackingByteBufAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinaryFrameDecoderTest {
+
+    private static ByteBuf frame(int length, int seed) {
+        ByteBuf buf = Unpooled.buffer(4 + length).writeInt(length);
+        for (int i = 0; i < length; i++) {
+            buf.writeByte(seed + i);
+        }
+        return buf;
+    }
+
+    private static List<String> expected(ByteBuf... frames) {
+        List<String> list = new ArrayList<>();
+        for (ByteBuf frame : frames) {
+            list.add(ByteBufUtil.hexDump(frame));
+        }
+        return list;
+    }
+
+    @Test
+    public void testCoalesced() {
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder(1024, allocator);
+
+        ByteBuf f1 = frame(10, 1), f2 = frame(0, 2), f3 = frame(100, 3);
+        ByteBuf stream = Unpooled.wrappedBuffer(f1.copy(), f2.copy(), f3.copy());
+
+        List<String> frames = new ArrayList<>();
+        decoder.decode(stream, frame -> frames.add(ByteBufUtil.hexDump(frame)));
+
+        Assert.assertEquals(expected(f1, f2, f3), frames);
+        Assert.assertFalse(stream.isReadable());
+        Assert.assertFalse(decoder.isPending());
+        //完整的报文不复制数据
+        Assert.assertEquals(0, allocator.getAllocated());
+    }
+
+    @Test
+    public void testFragmented() {
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder(1024, allocator);
+
+        ByteBuf f1 = frame(10, 1), f2 = frame(200, 2);
+        ByteBuf stream = Unpooled.wrappedBuffer(f1.copy(), f2.copy());
+
+        //逐字节读取
+        List<String> frames = new ArrayList<>();
+        while (stream.isReadable()) {
+            decoder.decode(stream.readSlice(1), frame -> frames.add(ByteBufUtil.hexDump(frame)));
+        }
+        Assert.assertEquals(expected(f1, f2), frames);
+        Assert.assertFalse(decoder.isPending());
+        allocator.assertReleased();
+    }
+
+    @Test
+    public void testSplitAtAnyOffset() {
+        ByteBuf f1 = frame(5, 1), f2 = frame(3, 2), f3 = frame(7, 3);
+        ByteBuf stream = Unpooled.wrappedBuffer(f1.copy(), f2.copy(), f3.copy());
+        int total = stream.readableBytes();
+
+        for (int first = 0; first <= total; first++) {
+            for (int second = first; second <= total; second++) {
+                TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+                BinaryFrameDecoder decoder = new BinaryFrameDecoder(1024, allocator);
+                List<String> frames = new ArrayList<>();
+
+                decoder.decode(stream.slice(0, first), frame -> frames.add(ByteBufUtil.hexDump(frame)));
+                decoder.decode(stream.slice(first, second - first), frame -> frames.add(ByteBufUtil.hexDump(frame)));
+                decoder.decode(stream.slice(second, total - second), frame -> frames.add(ByteBufUtil.hexDump(frame)));
+
+                Assert.assertEquals("split at " + first + "," + second, expected(f1, f2, f3), frames);
+                Assert.assertFalse(decoder.isPending());
+                allocator.assertReleased();
+            }
+        }
+    }
+
+    @Test
+    public void testTooLongFrame() {
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder(16, allocator);
+
+        try {
+            decoder.decode(frame(17, 1), frame -> Assert.fail());
+            Assert.fail();
+        } catch (TooLongFrameException ignore) {
+        }
+
+        //长度字段被拆分
+        decoder.decode(Unpooled.buffer().writeShort(0xFFFF), frame -> Assert.fail());
+        Assert.assertTrue(decoder.isPending());
+        try {
+            decoder.decode(Unpooled.buffer().writeShort(0xFFFF), frame -> Assert.fail());
+            Assert.fail();
+        } catch (TooLongFrameException ignore) {
+        }
+        Assert.assertFalse(decoder.isPending());
+        allocator.assertReleased();
+    }
+
+    @Test
+    public void testRelease() {
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder(1024, allocator);
+
+        decoder.decode(frame(10, 1).writerIndex(8), frame -> Assert.fail());
+        Assert.assertTrue(decoder.isPending());
+
+        decoder.release();
+        Assert.assertFalse(decoder.isPending());
+        allocator.assertReleased();
+    }
+}
@@ -0,0 +1,252 @@
+package org.jetlinks.protocol.official.tcp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.TooLongFrameException;
+import org.jetlinks.core.defaults.CompositeProtocolSupports;
+import org.jetlinks.core.device.DeviceInfo;
+import org.jetlinks.core.device.DeviceOperator;
+import org.jetlinks.core.exception.DeviceOperationException;
+import org.jetlinks.core.device.StandaloneDeviceMessageBroker;
+import org.jetlinks.core.message.DeviceMessage;
+import org.jetlinks.core.message.DeviceOnlineMessage;
+import org.jetlinks.core.message.Message;
+import org.jetlinks.core.message.codec.*;
+import org.jetlinks.core.message.property.ReadPropertyMessage;
+import org.jetlinks.core.message.property.ReportPropertyMessage;
+import org.jetlinks.core.server.session.DeviceSession;
+import org.jetlinks.protocol.official.TestDeviceRegistry;
+import org.jetlinks.protocol.official.TrackingByteBufAllocator;
+import org.jetlinks.protocol.official.binary.BinaryDeviceOnlineMessage;
+import org.jetlinks.protocol.official.binary.BinaryMessageType;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TcpDeviceMessageCodecTest {
+
+    @Test
+    public void testEncodeMessage() {
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+
+        ReadPropertyMessage message = new ReadPropertyMessage();
+        message.setDeviceId("device1");
+        message.setMessageId("test");
+        message.setProperties(Arrays.asList("temp", "humidity"));
+
+        ByteBuf buf = TcpDeviceMessageCodec.encodeMessage(message, 1, allocator);
+        //只分配一次缓冲区
+        Assert.assertEquals(1, allocator.getAllocated());
+        Assert.assertEquals(buf.readableBytes() - 4, buf.readInt());
+
+        DeviceMessage read = BinaryMessageType.read(buf, null);
+        Assert.assertTrue(read instanceof ReadPropertyMessage);
+        Assert.assertEquals(message.getProperties(), ((ReadPropertyMessage) read).getProperties());
+        Assert.assertFalse(buf.isReadable());
+
+        buf.release();
+        allocator.assertReleased();
+    }
+
+    @Test
+    public void testMaxInFlight() {
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+        TcpDeviceMessageCodec codec = new TcpDeviceMessageCodec(allocator);
+        for (int i = 0; i < TcpDeviceMessageCodec.DEFAULT_MAX_IN_FLIGHT; i++) {
+            ByteBuf buf = encode(codec, "msg" + i);
+            Assert.assertNotNull(buf);
+            buf.release();
+        }
+        //默认限制未回复的指令数量
+        try {
+            encode(codec, "rejected");
+            Assert.fail();
+        } catch (DeviceOperationException ignore) {
+        }
+        BinaryMessageType.release("max-in-flight");
+        allocator.assertReleased();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxInFlightGreaterThanCapacity() {
+        new TcpDeviceMessageCodec(new TrackingByteBufAllocator(), BinaryMessageType.getSequenceCapacity() + 1);
+    }
+
+    @Test
+    public void testDecodeFramesAfterLogin() {
+        TestDeviceRegistry registry = new TestDeviceRegistry(new CompositeProtocolSupports(), new StandaloneDeviceMessageBroker());
+        registry.register(DeviceInfo.builder().id("device1").protocol("jetlinks").build())
+                .flatMap(device -> device.setConfig(TcpDeviceMessageCodec.CONFIG_KEY_SECURE_KEY, "secure"))
+                .block();
+
+        DeviceOnlineMessage online = new DeviceOnlineMessage();
+        online.setDeviceId("device1");
+        online.addHeader(BinaryDeviceOnlineMessage.loginToken, "secure");
+        ReportPropertyMessage report = new ReportPropertyMessage();
+        report.setDeviceId("device1");
+        report.setProperties(Collections.singletonMap("temp", 25));
+
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+        //认证报文与属性上报在同一次读取中
+        ByteBuf payload = Unpooled.wrappedBuffer(TcpDeviceMessageCodec.encodeMessage(online, 1, allocator),
+                                                 TcpDeviceMessageCodec.encodeMessage(report, 2, allocator));
+        MockSession session = new MockSession();
+        List<? extends Message> messages = Flux
+                .from(new TcpDeviceMessageCodec(allocator).decode(createContext(payload, session, registry)))
+                .collectList()
+                .block();
+
+        Assert.assertNotNull(messages);
+        Assert.assertEquals(2, messages.size());
+        Assert.assertTrue(messages.get(0) instanceof DeviceOnlineMessage);
+        Assert.assertTrue(messages.get(1) instanceof ReportPropertyMessage);
+        Assert.assertEquals("device1", messages.get(1).getDeviceId());
+        Assert.assertTrue(((ReportPropertyMessage) messages.get(1)).getProperties().containsKey("temp"));
+        //只回复了认证成功
+        Assert.assertEquals(1, session.sent);
+        Assert.assertFalse(session.closed);
+
+        payload.release();
+        allocator.assertReleased();
+    }
+
+    @Test
+    public void testCloseOnTooLongFrame() {
+        TrackingByteBufAllocator allocator = new TrackingByteBufAllocator();
+        ByteBuf payload = Unpooled.buffer().writeInt(Integer.MAX_VALUE).writeLong(0);
+        MockSession session = new MockSession();
+        try {
+            Flux.from(new TcpDeviceMessageCodec(allocator).decode(createContext(payload, session, null))).blockLast();
+            Assert.fail();
+        } catch (TooLongFrameException ignore) {
+        }
+        //后续数据已无法解析,断开连接
+        Assert.assertTrue(session.closed);
+        allocator.assertReleased();
+    }
+
+    private static MessageDecodeContext createContext(ByteBuf payload, DeviceSession session, TestDeviceRegistry registry) {
+        EncodedMessage message = EncodedMessage.simple(payload);
+        return new FromDeviceMessageContext() {
+            @Nonnull
+            @Override
+            public EncodedMessage getMessage() {
+                return message;
+            }
+
+            @Override
+            public DeviceSession getSession() {
+                return session;
+            }
+
+            @Override
+            public DeviceOperator getDevice() {
+                return null;
+            }
+
+            @Override
+            public Mono<DeviceOperator> getDevice(String deviceId) {
+                return registry == null ? Mono.empty() : registry.getDevice(deviceId);
+            }
+        };
+    }
+
+    static class MockSession implements DeviceSession {
+
+        int sent;
+
+        boolean closed;
+
+        @Override
+        public String getId() {
+            return "test";
+        }
+
+        @Override
+        public String getDeviceId() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public DeviceOperator getOperator() {
+            return null;
+        }
+
+        @Override
+        public long lastPingTime() {
+            return 0;
+        }
+
+        @Override
+        public long connectTime() {
+            return 0;
+        }
+
+        @Override
+        public Mono<Boolean> send(EncodedMessage encodedMessage) {
+            sent++;
+            encodedMessage.getPayload().release();
+            return Mono.just(true);
+        }
+
+        @Override
+        public Transport getTransport() {
+            return DefaultTransport.TCP;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void ping() {
+
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !closed;
+        }
+
+        @Override
+        public void onClose(Runnable call) {
+
+        }
+    }
+
+    private static ByteBuf encode(TcpDeviceMessageCodec codec, String messageId) {
+        ReadPropertyMessage message = new ReadPropertyMessage();
+        message.setDeviceId("max-in-flight");
+        message.setMessageId(messageId);
+        message.setProperties(Collections.singletonList("temp"));
+        EncodedMessage encoded = Mono
+                .from(codec.encode(new MessageEncodeContext() {
+                    @Nonnull
+                    @Override
+                    public Message getMessage() {
+                        return message;
+                    }
+
+                    @Override
+                    public DeviceOperator getDevice() {
+                        return null;
+                    }
+
+                    @Override
+                    public Mono<DeviceOperator> getDevice(String deviceId) {
+                        return Mono.empty();
+                    }
+                }))
+                .block();
+        return encoded == null ? null : encoded.getPayload();
+    }
+}
@@ -0,0 +1,57 @@
+package org.jetlinks.protocol.official.udp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReplayWindowTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private ReplayWindow createWindow() {
+        return new ReplayWindow(60_000, 60_000, now::get);
+    }
+
+    @Test
+    public void testDuplicate() {
+        ReplayWindow window = createWindow();
+        long ts = now.get();
+
+        Assert.assertTrue(window.accept("device1", ts, 1));
+        Assert.assertFalse(window.accept("device1", ts, 1));
+        Assert.assertTrue(window.accept("device1", ts, 2));
+        //不同设备互不影响
+        Assert.assertTrue(window.accept("device2", ts, 1));
+
+        Assert.assertTrue(window.contains("device1"));
+        Assert.assertFalse(window.contains("device3"));
+    }
+
+    @Test
+    public void testTimestamp() {
+        ReplayWindow window = createWindow();
+
+        Assert.assertFalse(window.accept("device1", now.get() - 60_001, 1));
+        Assert.assertFalse(window.accept("device1", now.get() + 60_001, 1));
+        Assert.assertFalse(window.accept("device1", 0, 1));
+        Assert.assertTrue(window.accept("device1", now.get() - 60_000, 1));
+    }
+
+    @Test
+    public void testEvicted() {
+        ReplayWindow window = createWindow();
+        long ts = now.get();
+
+        for (int i = 0; i < ReplayWindow.RECENT_SIZE * 2; i++) {
+            Assert.assertTrue(window.accept("device1", ts + i, 0));
+        }
+        //已淘汰的记录
+        Assert.assertFalse(window.accept("device1", ts, 0));
+        Assert.assertFalse(window.accept("device1", ts + ReplayWindow.RECENT_SIZE - 1, 0));
+        //窗口内的记录
+        Assert.assertFalse(window.accept("device1", ts + ReplayWindow.RECENT_SIZE, 0));
+        //乱序但是比已淘汰的记录新
+        Assert.assertTrue(window.accept("device1", ts + ReplayWindow.RECENT_SIZE, 1));
+    }
+}
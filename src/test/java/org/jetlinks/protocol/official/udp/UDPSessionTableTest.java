@@ -0,0 +1,81 @@
+package org.jetlinks.protocol.official.udp;
+
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UDPSessionTableTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private UDPSessionTable createTable() {
+        return new UDPSessionTable(Duration.ofMinutes(1), new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+    }
+
+    @Test
+    public void testCreate() {
+        UDPSessionTable table = createTable();
+
+        int session1 = table.create("device1");
+        int session2 = table.create("device2");
+        Assert.assertTrue(session1 > 0);
+        Assert.assertNotEquals(session1, session2);
+
+        Assert.assertEquals("device1", table.getDeviceId(session1));
+        Assert.assertEquals("device2", table.getDeviceId(session2));
+        Assert.assertEquals(session1, table.getSessionId("device1"));
+        Assert.assertNull(table.getDeviceId(session1 + session2));
+        Assert.assertEquals(UDPSessionTable.NO_SESSION, table.getSessionId("device3"));
+    }
+
+    @Test
+    public void testRecreate() {
+        UDPSessionTable table = createTable();
+
+        int old = table.create("device1");
+        int session = table.create("device1");
+
+        //重新握手后之前的会话失效
+        Assert.assertNull(table.getDeviceId(old));
+        Assert.assertEquals("device1", table.getDeviceId(session));
+        Assert.assertEquals(session, table.getSessionId("device1"));
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testExpire() {
+        UDPSessionTable table = createTable();
+        int session1 = table.create("device1");
+        int session2 = table.create("device2");
+
+        //收到报文时刷新有效期
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        Assert.assertEquals("device1", table.getDeviceId(session1));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(40));
+
+        Assert.assertEquals("device1", table.getDeviceId(session1));
+        Assert.assertNull(table.getDeviceId(session2));
+        Assert.assertEquals(UDPSessionTable.NO_SESSION, table.getSessionId("device2"));
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testRemove() {
+        UDPSessionTable table = createTable();
+        int session = table.create("device1");
+
+        table.remove("device1");
+        Assert.assertNull(table.getDeviceId(session));
+        Assert.assertEquals(UDPSessionTable.NO_SESSION, table.getSessionId("device1"));
+        Assert.assertEquals(0, table.size());
+    }
+}